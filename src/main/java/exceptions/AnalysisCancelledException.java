@@ -0,0 +1,15 @@
+package exceptions;
+
+/**
+ * Exception to signify an analysis stopped early because it was cancelled, e.g. on running past its time budget.
+ */
+public class AnalysisCancelledException extends AnalysisException {
+
+    /**
+     *
+     * @param message exception message
+     */
+    public AnalysisCancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,39 @@
+package exceptions;
+
+/**
+ * Exception to signify that a query could not be understood, e.g. an unknown field or a value of the wrong kind.
+ */
+public class QueryException extends Exception {
+
+    /**
+     *
+     */
+    public QueryException() {
+        super();
+    }
+
+    /**
+     *
+     * @param message exception message
+     */
+    public QueryException(String message) {
+        super(message);
+    }
+
+    /**
+     *
+     * @param message exception message
+     * @param cause exception cause
+     */
+    public QueryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     *
+     * @param cause exception cause
+     */
+    public QueryException(Throwable cause) {
+        super(cause);
+    }
+}
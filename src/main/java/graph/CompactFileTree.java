@@ -0,0 +1,521 @@
+package graph;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Column oriented store for scanned trees. Rather than an object per file, each attribute is held in its own
+ * primitive array, indexed by node number:
+ * - structure as parent indexes, plus each directory's children as a contiguous run of one shared index array
+ * - size and last modified time as longs, depth as an int and the directory/hidden flags as a byte
+ * - file types as ids into a dictionary of the distinct types
+ * - just the name of each file (the full path for roots) as UTF-8 in one shared byte array, paths being rebuilt
+ *   from the parent chain when asked for
+ *
+ * Nodes can be read by index, or through FileTreeNode views so the existing analysers can run unchanged. Views
+ * are created on demand and hold nothing but their index.
+ */
+public class CompactFileTree {
+
+    public static final int NO_NODE = -1;
+
+    private static final byte FLAG_DIRECTORY = 1;
+    private static final byte FLAG_HIDDEN = 2;
+
+    private final FileTypeDictionary types = new FileTypeDictionary();
+
+    private int size;
+    private int[] parents;
+    private int[] childOffsets = new int[1];
+    private int[] childIndexes = new int[0];
+    private int[] depths;
+    private int[] typeIds;
+    private int[] nameOffsets;
+    private int[] nameLengths;
+    private long[] fileSizes;
+    private long[] lastModified;
+    private byte[] flags;
+
+    private byte[] names;
+    private int namesLength;
+
+    private int[] roots = new int[0];
+
+    // Subtree totals, rolled up on first use
+    private volatile long[] subtreeBytes;
+    private long[] subtreeFiles;
+    private long[] subtreeDirectories;
+    private int[] subtreeMaxDepths;
+    private long[] subtreeNewest;
+
+    private CompactFileTree(int capacity) {
+        parents = new int[capacity];
+        depths = new int[capacity];
+        typeIds = new int[capacity];
+        nameOffsets = new int[capacity];
+        nameLengths = new int[capacity];
+        fileSizes = new long[capacity];
+        lastModified = new long[capacity];
+        flags = new byte[capacity];
+        names = new byte[capacity * 16];
+    }
+
+    /**
+     * Copy existing trees into a compact store.
+     * @param roots the roots of the trees
+     * @return the compact tree
+     */
+    public static CompactFileTree from(List<FileTreeNode> roots) {
+        Builder builder = new Builder();
+        TreeWalker.walk(roots, builder);
+        return builder.build();
+    }
+
+    /**
+     * The number of nodes held.
+     * @return node count
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    public int getChildCount(int node) {
+        return childOffsets[node + 1] - childOffsets[node];
+    }
+
+    /**
+     * Get one of a node's children.
+     * @param node the node index
+     * @param index the child's position, from zero
+     * @return the child's node index
+     */
+    public int getChild(int node, int index) {
+        return childIndexes[childOffsets[node] + index];
+    }
+
+    public int getDepth(int node) {
+        return depths[node];
+    }
+
+    public long getFileSize(int node) {
+        return fileSizes[node];
+    }
+
+    public long getLastModified(int node) {
+        return lastModified[node];
+    }
+
+    public boolean isDirectory(int node) {
+        return (flags[node] & FLAG_DIRECTORY) != 0;
+    }
+
+    public boolean isHidden(int node) {
+        return (flags[node] & FLAG_HIDDEN) != 0;
+    }
+
+    public int getTypeId(int node) {
+        return typeIds[node];
+    }
+
+    public String getFileType(int node) {
+        return types.typeOf(typeIds[node]);
+    }
+
+    /**
+     * The dictionary mapping type ids to file types.
+     * @return the type dictionary
+     */
+    public FileTypeDictionary getTypes() {
+        return types;
+    }
+
+    /**
+     * The stored name of a node: its file name, or the full path for a root.
+     * @param node the node index
+     * @return the name
+     */
+    public String getName(int node) {
+        return new String(names, nameOffsets[node], nameLengths[node], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rebuild the full path of a node from the names of it and its ancestors.
+     * @param node the node index
+     * @return the path
+     */
+    public String getPath(int node) {
+        if (parents[node] == NO_NODE) {
+            return getName(node);
+        }
+        return FileTreeNode.childPath(getPath(parents[node]), getName(node));
+    }
+
+    /**
+     * Totals for everything beneath a node. The first call rolls up every node in one pass over the arrays,
+     * after which each call is a lookup.
+     * @param node the node index
+     * @return the subtree summary
+     */
+    public SubtreeSummary getSubtreeSummary(int node) {
+        if (subtreeBytes == null) {
+            rollUp();
+        }
+        return new SubtreeSummary(subtreeBytes[node], subtreeFiles[node], subtreeDirectories[node],
+                subtreeMaxDepths[node], subtreeNewest[node]);
+    }
+
+    /**
+     * Work out the subtree totals of every node. A parent always has a lower index than its children, so going
+     * through the nodes backwards finishes each node before it is added to its parent.
+     */
+    private synchronized void rollUp() {
+        if (subtreeBytes != null) {
+            return;
+        }
+        long[] bytes = new long[size];
+        long[] files = new long[size];
+        long[] directories = new long[size];
+        int[] maxDepths = Arrays.copyOf(depths, size);
+        long[] newest = Arrays.copyOf(lastModified, size);
+
+        for (int i = size - 1; i >= 0; i--) {
+            if (!isDirectory(i)) {
+                bytes[i] = fileSizes[i];
+                files[i] = 1;
+            }
+            int parent = parents[i];
+            if (parent != NO_NODE) {
+                bytes[parent] += bytes[i];
+                files[parent] += files[i];
+                directories[parent] += directories[i] + (isDirectory(i) ? 1 : 0);
+                maxDepths[parent] = Math.max(maxDepths[parent], maxDepths[i]);
+                newest[parent] = Math.max(newest[parent], newest[i]);
+            }
+        }
+
+        subtreeFiles = files;
+        subtreeDirectories = directories;
+        subtreeMaxDepths = maxDepths;
+        subtreeNewest = newest;
+        subtreeBytes = bytes;
+    }
+
+    /**
+     * The indexes of the nodes at the top of each tree.
+     * @return root indexes
+     */
+    public int[] getRootIndexes() {
+        return roots.clone();
+    }
+
+    /**
+     * FileTreeNode views of the roots, for use with analysers expecting the object model.
+     * @return root views
+     */
+    public List<FileTreeNode> getRoots() {
+        List<FileTreeNode> views = new ArrayList<>(roots.length);
+        for (int root : roots) {
+            views.add(new NodeView(root));
+        }
+        return views;
+    }
+
+    /**
+     * Heap used by this store divided by the number of nodes held, counting the full length of every array.
+     * @return bytes per node
+     */
+    public double bytesPerNode() {
+        if (size == 0) {
+            return 0;
+        }
+        long bytes = 4L * (parents.length + childOffsets.length + childIndexes.length + depths.length +
+                typeIds.length + nameOffsets.length + nameLengths.length + roots.length) +
+                8L * (fileSizes.length + lastModified.length) + flags.length + names.length;
+        return (double) bytes / size;
+    }
+
+    /**
+     * Estimate the heap the same nodes would use as a tree of FileTreeNode objects, for comparison with this store.
+     * Worked out from the arrays, so no object or path is built for it. Assumes a 64 bit JVM with compressed
+     * references and compact strings; a node's id is its path, and each file type string is shared by its nodes.
+     * @return estimated bytes per node
+     */
+    public double estimateObjectBytesPerNode() {
+        if (size == 0) {
+            return 0;
+        }
+        // Parents come before their children, so each path's length builds on its parent's
+        int[] pathLengths = new int[size];
+        long bytes = 0;
+        for (int i = 0; i < size; i++) {
+            int parent = parents[i];
+            if (parent == NO_NODE) {
+                pathLengths[i] = nameLengths[i];
+            } else {
+                // No separator is added after a root that already ends in one
+                boolean separated = parents[parent] == NO_NODE && nameLengths[parent] > 0 &&
+                        names[nameOffsets[parent] + nameLengths[parent] - 1] == File.separatorChar;
+                pathLengths[i] = pathLengths[parent] + (separated ? 0 : 1) + nameLengths[i];
+            }
+            int children = getChildCount(i);
+            // Node: header, primitive fields and six references, padded to a multiple of 8, then its path and
+            // its child array, which is shared when empty
+            bytes += 64 + stringBytes(pathLengths[i]) + ((children == 0) ? 0 : align(16 + 4L * children));
+        }
+        for (int type = 0; type < types.size(); type++) {
+            String fileType = types.typeOf(type);
+            bytes += (fileType == null) ? 0 : stringBytes(fileType.length());
+        }
+        return (double) bytes / size;
+    }
+
+    private static long stringBytes(int length) {
+        return 24 + align(16 + length);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private int add(FileTreeNode n, int parent) {
+        if (size == parents.length) {
+            grow();
+        }
+        int index = size++;
+        parents[index] = parent;
+        depths[index] = (parent == NO_NODE) ? 1 : depths[parent] + 1;
+        typeIds[index] = types.idOf(n.getFileType());
+        fileSizes[index] = n.getFileSize();
+        lastModified[index] = n.getLastModified();
+        flags[index] = (byte) ((n.isDirectory() ? FLAG_DIRECTORY : 0) | (n.isHidden() ? FLAG_HIDDEN : 0));
+
+        byte[] name = ((parent == NO_NODE) ? n.getPath() : n.getName()).getBytes(StandardCharsets.UTF_8);
+        if (namesLength + name.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + name.length));
+        }
+        System.arraycopy(name, 0, names, namesLength, name.length);
+        nameOffsets[index] = namesLength;
+        nameLengths[index] = name.length;
+        namesLength += name.length;
+        return index;
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, parents.length * 2);
+        resize(capacity);
+    }
+
+    private void resize(int capacity) {
+        parents = Arrays.copyOf(parents, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        typeIds = Arrays.copyOf(typeIds, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        fileSizes = Arrays.copyOf(fileSizes, capacity);
+        lastModified = Arrays.copyOf(lastModified, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    /**
+     * Lay the children of every node out contiguously, in the order they were added. Nodes are added in depth
+     * first order, so a parent always has a lower index than its children.
+     */
+    private void indexChildren() {
+        childOffsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            if (parents[i] != NO_NODE) {
+                childOffsets[parents[i] + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            childOffsets[i + 1] += childOffsets[i];
+        }
+
+        childIndexes = new int[size - roots.length];
+        int[] filled = new int[size];
+        for (int i = 0; i < size; i++) {
+            int parent = parents[i];
+            if (parent != NO_NODE) {
+                childIndexes[childOffsets[parent] + filled[parent]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Builds a compact tree from the events of a walk or a streamed scan, so the object tree never has to exist.
+     * Only the directories on the current path are held while building.
+     */
+    public static class Builder implements TreeVisitor {
+
+        private final CompactFileTree tree = new CompactFileTree(1024);
+
+        // Directories on the current path
+        private int[] openDirectories = new int[64];
+        private int open = 0;
+
+        @Override
+        public void enterDirectory(FileTreeNode directory) {
+            int index = append(directory);
+            if (open == openDirectories.length) {
+                openDirectories = Arrays.copyOf(openDirectories, open * 2);
+            }
+            openDirectories[open++] = index;
+        }
+
+        @Override
+        public void visitFile(FileTreeNode file) {
+            append(file);
+        }
+
+        @Override
+        public void exitDirectory(FileTreeNode directory) {
+            open--;
+        }
+
+        private int append(FileTreeNode n) {
+            int parent = (open == 0) ? NO_NODE : openDirectories[open - 1];
+            int index = tree.add(n, parent);
+            if (parent == NO_NODE) {
+                tree.roots = Arrays.copyOf(tree.roots, tree.roots.length + 1);
+                tree.roots[tree.roots.length - 1] = index;
+            }
+            return index;
+        }
+
+        /**
+         * Finish building, trimming the arrays down to the nodes added.
+         * @return the compact tree
+         */
+        public CompactFileTree build() {
+            tree.resize(tree.size);
+            tree.names = Arrays.copyOf(tree.names, tree.namesLength);
+            tree.indexChildren();
+            return tree;
+        }
+    }
+
+    /**
+     * A FileTreeNode backed by a node of this store. Reads go straight to the arrays; the tree cannot be changed
+     * through a view, other than the size and type of a node.
+     */
+    private class NodeView extends FileTreeNode {
+
+        private final int index;
+
+        NodeView(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int getDepth() {
+            return depths[index];
+        }
+
+        @Override
+        public String getId() {
+            return getPath();
+        }
+
+        @Override
+        public boolean isHidden() {
+            return CompactFileTree.this.isHidden(index);
+        }
+
+        @Override
+        public long getLastModified() {
+            return lastModified[index];
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return CompactFileTree.this.isDirectory(index);
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return !isDirectory();
+        }
+
+        @Override
+        public void setPath(String path) {
+            throw new UnsupportedOperationException("Paths of a compact tree cannot be changed");
+        }
+
+        @Override
+        public String getPath() {
+            return CompactFileTree.this.getPath(index);
+        }
+
+        @Override
+        public String getName() {
+            return (parents[index] == NO_NODE) ? super.getName() : CompactFileTree.this.getName(index);
+        }
+
+        @Override
+        public void setFileType(String fileType) {
+            typeIds[index] = types.idOf(fileType);
+        }
+
+        @Override
+        public String getFileType() {
+            return CompactFileTree.this.getFileType(index);
+        }
+
+        @Override
+        public void setFileSize(long fileSize) {
+            fileSizes[index] = fileSize;
+        }
+
+        @Override
+        public long getFileSize() {
+            return fileSizes[index];
+        }
+
+        @Override
+        public FileTreeNode getParent() {
+            return (parents[index] == NO_NODE) ? null : new NodeView(parents[index]);
+        }
+
+        @Override
+        public int getChildCount() {
+            return CompactFileTree.this.getChildCount(index);
+        }
+
+        @Override
+        public FileTreeNode getChild(int child) {
+            return new NodeView(CompactFileTree.this.getChild(index, child));
+        }
+
+        @Override
+        public void addChildren(Collection<FileTreeNode> fileNodes) {
+            throw new UnsupportedOperationException("Nodes cannot be added to a compact tree");
+        }
+
+        @Override
+        public SubtreeSummary getSubtreeSummary() {
+            return CompactFileTree.this.getSubtreeSummary(index);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof NodeView && ((NodeView) o).index == index && ((NodeView) o).tree() == tree();
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+
+        private CompactFileTree tree() {
+            return CompactFileTree.this;
+        }
+    }
+}
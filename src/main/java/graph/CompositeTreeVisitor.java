@@ -0,0 +1,41 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes every event on to a number of visitors, so a single walk of a tree can feed all of them.
+ */
+public class CompositeTreeVisitor implements TreeVisitor {
+
+    private final List<TreeVisitor> visitors;
+
+    /**
+     *
+     * @param visitors the visitors to pass events on to, in order
+     */
+    public CompositeTreeVisitor(List<? extends TreeVisitor> visitors) {
+        this.visitors = new ArrayList<>(visitors);
+    }
+
+    @Override
+    public void enterDirectory(FileTreeNode directory) {
+        for (TreeVisitor v : visitors) {
+            v.enterDirectory(directory);
+        }
+    }
+
+    @Override
+    public void visitFile(FileTreeNode file) {
+        for (TreeVisitor v : visitors) {
+            v.visitFile(file);
+        }
+    }
+
+    @Override
+    public void exitDirectory(FileTreeNode directory) {
+        for (TreeVisitor v : visitors) {
+            v.exitDirectory(directory);
+        }
+    }
+}
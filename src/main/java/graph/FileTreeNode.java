@@ -1,7 +1,9 @@
 package graph;
 
 import java.io.File;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
 
 /**
  * Created by conor on 07/09/2014.
@@ -19,11 +21,19 @@ public class FileTreeNode {
     private String path;
     private final String id;
     private final boolean isDirectory;
+    private final boolean isRegularFile;
     private String fileType;
     private long fileSize;
 
-    private final FileTreeNode parent;
-    private CopyOnWriteArrayList<FileTreeNode> children = new CopyOnWriteArrayList<>();
+    private static final FileTreeNode[] NO_CHILDREN = new FileTreeNode[0];
+
+    // Volatile as TreeWatcher moves shared nodes under new copies of their parent while the tree is being read
+    private volatile FileTreeNode parent;
+    private FileTreeNode[] children = NO_CHILDREN;
+    private int childCount;
+    private volatile boolean frozen;
+
+    private volatile SubtreeSummary subtreeSummary;
 
     /**
      * Constructor which extracts useful information from a given file.
@@ -35,12 +45,83 @@ public class FileTreeNode {
         this.path = file.getPath();
         this.id = file.getPath();
         this.isDirectory = file.isDirectory();
+        this.isRegularFile = !isDirectory && file.isFile();
         this.lastModified = file.lastModified();
         this.isHidden = file.isHidden();
         this.fileType = isDirectory ? "directory" : file.getName().substring(file.getName().lastIndexOf('.') + 1);
         this.fileSize = file.length();
     }
 
+    /**
+     * Constructor which builds the node from attributes already read from the filesystem, so no further
+     * filesystem calls are made.
+     * @param path the path which this node will represent
+     * @param attributes the attributes of the path, read in a single call
+     * @param isHidden whether the file is hidden
+     * @param parent the parent node, null for a root
+     */
+    public FileTreeNode(Path path, BasicFileAttributes attributes, boolean isHidden, FileTreeNode parent) {
+        this.parent = parent;
+        this.depth = (parent == null) ? 1 : parent.getDepth() + 1;
+        this.path = path.toString();
+        this.id = this.path;
+        this.isDirectory = attributes.isDirectory();
+        this.isRegularFile = attributes.isRegularFile();
+        this.lastModified = attributes.lastModifiedTime().toMillis();
+        this.isHidden = isHidden;
+        String name = (path.getFileName() == null) ? "" : path.getFileName().toString();
+        this.fileType = isDirectory ? "directory" : name.substring(name.lastIndexOf('.') + 1);
+        this.fileSize = attributes.size();
+    }
+
+    /**
+     * Constructor for a node whose details are already known, e.g. when reloading a saved tree.
+     * @param path the path which this node will represent
+     * @param isDirectory whether the path is a directory
+     * @param fileSize the size of the file in bytes
+     * @param lastModified when the file was last modified
+     * @param isHidden whether the file is hidden
+     * @param parent the parent node, null for a root
+     */
+    public FileTreeNode(String path, boolean isDirectory, long fileSize, long lastModified, boolean isHidden,
+                        FileTreeNode parent) {
+        this.parent = parent;
+        this.depth = (parent == null) ? 1 : parent.getDepth() + 1;
+        this.path = path;
+        this.id = path;
+        this.isDirectory = isDirectory;
+        this.isRegularFile = !isDirectory;
+        this.lastModified = lastModified;
+        this.isHidden = isHidden;
+        String name = path.substring(path.lastIndexOf(File.separatorChar) + 1);
+        this.fileType = isDirectory ? "directory" : name.substring(name.lastIndexOf('.') + 1);
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * Constructor for subclasses which keep their details elsewhere and override every getter, such as the
+     * views onto a compact tree.
+     */
+    protected FileTreeNode() {
+        this.parent = null;
+        this.depth = 0;
+        this.id = null;
+        this.isDirectory = false;
+        this.isRegularFile = false;
+        this.lastModified = 0;
+        this.isHidden = false;
+    }
+
+    /**
+     * Join a directory path and the name of an entry in it.
+     * @param parentPath the directory's path
+     * @param name the entry's name
+     * @return the entry's path
+     */
+    public static String childPath(String parentPath, String name) {
+        return parentPath.endsWith(File.separator) ? parentPath + name : parentPath + File.separator + name;
+    }
+
     /**
      * The depth of this node in the tree structure
      * @return depth
@@ -81,6 +162,16 @@ public class FileTreeNode {
         return isDirectory;
     }
 
+    /**
+     * Whether this node is a regular file, rather than a directory or a special file such as a named pipe, socket
+     * or device, which cannot safely be opened and read. Nodes built from known details, rather than read from
+     * the filesystem, are taken to be regular files unless they are directories.
+     * @return if the node is a regular file
+     */
+    public boolean isRegularFile() {
+        return isRegularFile;
+    }
+
     /**
      * Set the path this node represents.
      * @param path the path to set
@@ -95,6 +186,15 @@ public class FileTreeNode {
      */
     public String getPath() { return this.path; }
 
+    /**
+     * Get the name of this node's file, the last element of its path.
+     * @return the file name
+     */
+    public String getName() {
+        String path = getPath();
+        return path.substring(path.lastIndexOf(File.separatorChar) + 1);
+    }
+
     /**
      * Set the file type of this node's file.
      * @param fileType
@@ -130,18 +230,160 @@ public class FileTreeNode {
     @Override
     public String toString() {
         String out = "Id: %s, Path: %s, isDir: %s, fileType: %s, fileSize: %d. ";
-        return String.format(out, id, path, isDirectory, fileType, fileSize);
+        return String.format(out, getId(), getPath(), isDirectory(), getFileType(), getFileSize());
     }
 
     public FileTreeNode getParent() {
         return parent;
     }
 
-    public CopyOnWriteArrayList<FileTreeNode> getChildren() {
-        return (CopyOnWriteArrayList<FileTreeNode>) this.children.clone();
+    /**
+     * Move this node under a copy of its parent, when a changed tree is rebuilt around an unchanged node (see
+     * TreeWatcher) so the old copy can be collected. The copy is of the same directory, so the node's path and
+     * depth stay the same; readers of the tree the node was taken from may see either parent. The copy must
+     * already be frozen, and the link is volatile, so a reader which sees the copy sees all of it.
+     * @param parent the copy of this node's parent
+     */
+    public void setParent(FileTreeNode parent) {
+        if (this.parent == null || parent == null || !this.parent.getPath().equals(parent.getPath())) {
+            throw new IllegalArgumentException("Not a copy of the parent of: " + getPath());
+        }
+        if (!parent.frozen) {
+            throw new IllegalStateException("Cannot move a node under an unfinished copy: " + parent.getPath());
+        }
+        this.parent = parent;
+    }
+
+    /**
+     * Read-only view of this node's children. No copy is made; once the node is frozen the view never changes.
+     * @return the children
+     */
+    public List<FileTreeNode> getChildren() {
+        return new ChildList();
     }
 
+    /**
+     * The number of children of this node. With getChild, allows walking the children without allocating.
+     * @return child count
+     */
+    public int getChildCount() {
+        if (frozen) {
+            return this.childCount;
+        }
+        synchronized (this) {
+            return this.childCount;
+        }
+    }
+
+    /**
+     * Get one of this node's children.
+     * @param index the child's position, from zero
+     * @return the child
+     */
+    public FileTreeNode getChild(int index) {
+        if (frozen) {
+            return childAt(this.children, this.childCount, index);
+        }
+        synchronized (this) {
+            return childAt(this.children, this.childCount, index);
+        }
+    }
+
+    private static FileTreeNode childAt(FileTreeNode[] children, int count, int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Child " + index + " of " + count);
+        }
+        return children[index];
+    }
+
+    /**
+     * Append a child to this node. Safe to call from several threads while a tree is being built.
+     * @param fileNode the child
+     */
     public void addChild(FileTreeNode fileNode) {
-        this.children.add(fileNode);
+        addChildren(Collections.singletonList(fileNode));
+    }
+
+    /**
+     * Append a number of children to this node at once, growing the child array at most once.
+     * @param fileNodes the children, in order
+     */
+    public synchronized void addChildren(Collection<FileTreeNode> fileNodes) {
+        if (frozen) {
+            throw new IllegalStateException("Cannot add children to a frozen node: " + getPath());
+        }
+        int needed = this.childCount + fileNodes.size();
+        if (needed > this.children.length) {
+            this.children = Arrays.copyOf(this.children, Math.max(needed, this.children.length * 2));
+        }
+        for (FileTreeNode n : fileNodes) {
+            this.children[this.childCount++] = n;
+        }
+    }
+
+    /**
+     * Mark this node as finished. The child array is trimmed to size and no more children may be added, after
+     * which children are read without any locking.
+     */
+    public synchronized void freeze() {
+        if (!frozen) {
+            if (this.children.length != this.childCount) {
+                this.children = (this.childCount == 0) ? NO_CHILDREN : Arrays.copyOf(this.children, this.childCount);
+            }
+            this.frozen = true;
+        }
+    }
+
+    /**
+     * Freeze every node in the given trees, once they have been fully built.
+     * @param roots the roots of the trees
+     */
+    public static void freezeAll(List<FileTreeNode> roots) {
+        Deque<FileTreeNode> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            FileTreeNode n = queue.pop();
+            n.freeze();
+            for (int i = 0; i < n.getChildCount(); i++) {
+                queue.push(n.getChild(i));
+            }
+        }
+    }
+
+    /**
+     * Totals for everything beneath this node. Filled in for every directory by a single pass once a scan is
+     * complete; if that has not happened, the summary is worked out (and kept) on first use.
+     * @return the subtree summary
+     */
+    public SubtreeSummary getSubtreeSummary() {
+        if (!isDirectory()) {
+            return SubtreeSummary.ofFile(this);
+        }
+        SubtreeSummary summary = this.subtreeSummary;
+        return (summary != null) ? summary : SubtreeRollup.compute(this);
+    }
+
+    /**
+     * Store the totals for everything beneath this node, see SubtreeRollup.
+     * @param subtreeSummary the subtree summary
+     */
+    void setSubtreeSummary(SubtreeSummary subtreeSummary) {
+        this.subtreeSummary = subtreeSummary;
+    }
+
+    /**
+     * Lightweight read-only list over this node's children, so callers can use the collection API without the
+     * children being copied.
+     */
+    private class ChildList extends AbstractList<FileTreeNode> implements RandomAccess {
+
+        @Override
+        public FileTreeNode get(int index) {
+            return getChild(index);
+        }
+
+        @Override
+        public int size() {
+            return getChildCount();
+        }
     }
 }
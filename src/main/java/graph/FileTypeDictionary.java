@@ -0,0 +1,48 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns each distinct file type a small integer id, so a type can be stored and compared as an int rather than
+ * as its own string. Ids are handed out in order from zero, so they can index straight into an array.
+ */
+public class FileTypeDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> types = new ArrayList<>();
+
+    /**
+     * Get the id of the given type, assigning a new one if it has not been seen before.
+     * @param type the file type
+     * @return the type's id
+     */
+    public synchronized int idOf(String type) {
+        Integer id = ids.get(type);
+        if (id == null) {
+            id = types.size();
+            ids.put(type, id);
+            types.add(type);
+        }
+        return id;
+    }
+
+    /**
+     * Get the type with the given id.
+     * @param id a type id
+     * @return the file type
+     */
+    public synchronized String typeOf(int id) {
+        return types.get(id);
+    }
+
+    /**
+     * The number of distinct types seen, one more than the highest id.
+     * @return the type count
+     */
+    public synchronized int size() {
+        return types.size();
+    }
+}
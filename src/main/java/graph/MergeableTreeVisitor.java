@@ -0,0 +1,26 @@
+package graph;
+
+/**
+ * A tree visitor whose work can be split up: large subtrees are handed to partial visitors, walked on other
+ * threads, and the partial results merged back in. See ParallelTreeWalker.
+ *
+ * @param <V> the visitor's own type
+ */
+public interface MergeableTreeVisitor<V extends MergeableTreeVisitor<V>> extends TreeVisitor {
+
+    /**
+     * Create an empty partial visitor for a subtree about to be entered. Any context the visitor keeps about
+     * where it is in the tree (e.g. the current root) must be copied across, as the partial will not see the
+     * events leading up to the subtree.
+     * @return the partial visitor
+     */
+    V fork();
+
+    /**
+     * Fold the results of a partial visitor into this one. Called on the thread walking this visitor, in place
+     * of the events of the partial's subtree: after the directory holding the subtree has been entered and
+     * before it is exited.
+     * @param partial a visitor created by fork, which has finished its subtree
+     */
+    void merge(V partial);
+}
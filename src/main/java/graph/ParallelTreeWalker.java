@@ -0,0 +1,146 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Walks an in-memory tree on a fork/join pool. Each task walks its subtree depth first, like TreeWalker, but any
+ * child directory with more than SPLIT_THRESHOLD nodes beneath it is forked off to a partial visitor instead. A
+ * directory's forked subtrees are joined and merged back just before the directory is exited, so each visitor
+ * sees the same totals as a sequential walk, although not in the same order.
+ *
+ * Subtree sizes come from the nodes' subtree summaries, so deciding where to split costs nothing on a scanned
+ * tree.
+ */
+public class ParallelTreeWalker {
+
+    static final long SPLIT_THRESHOLD = 4096;
+
+    private static final BooleanSupplier NEVER = () -> false;
+
+    private ParallelTreeWalker() {
+        // Prevents instantiation
+    }
+
+    /**
+     * Walk each of the given trees in turn, splitting large subtrees across the pool.
+     * @param roots the roots of the trees
+     * @param visitor the visitor to pass nodes to, which receives the merged results
+     * @param pool the pool to walk on
+     * @param <V> the visitor type
+     */
+    public static <V extends MergeableTreeVisitor<V>> void walk(List<FileTreeNode> roots, V visitor,
+                                                                 ForkJoinPool pool) {
+        walk(roots, visitor, pool, NEVER);
+    }
+
+    /**
+     * Walk each of the given trees in turn, splitting large subtrees across the pool, and stopping early once the
+     * walk is cancelled. Every task checks between nodes, and no more subtrees are forked once
+     * cancelled; those already forked are still joined, so the visitor holds whatever was visited.
+     * @param roots the roots of the trees
+     * @param visitor the visitor to pass nodes to, which receives the merged results
+     * @param pool the pool to walk on
+     * @param cancelled whether to stop walking
+     * @param <V> the visitor type
+     * @return true if every node was visited, false if the walk was cancelled
+     */
+    public static <V extends MergeableTreeVisitor<V>> boolean walk(List<FileTreeNode> roots, V visitor,
+                                                                    ForkJoinPool pool, BooleanSupplier cancelled) {
+        for (FileTreeNode root : roots) {
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            if (root.isDirectory()) {
+                pool.invoke(new SubtreeTask<>(root, visitor, cancelled));
+            } else {
+                visitor.visitFile(root);
+            }
+        }
+        return !cancelled.getAsBoolean();
+    }
+
+    private static boolean shouldSplit(FileTreeNode directory) {
+        SubtreeSummary summary = directory.getSubtreeSummary();
+        return summary.getFileCount() + summary.getDirectoryCount() > SPLIT_THRESHOLD;
+    }
+
+    /**
+     * Walks one directory and everything beneath it into a visitor, returning the visitor once done.
+     */
+    private static class SubtreeTask<V extends MergeableTreeVisitor<V>> extends RecursiveTask<V> {
+
+        private final FileTreeNode directory;
+        private final V visitor;
+        private final BooleanSupplier cancelled;
+
+        SubtreeTask(FileTreeNode directory, V visitor, BooleanSupplier cancelled) {
+            this.directory = directory;
+            this.visitor = visitor;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected V compute() {
+            // The directories on the current path, the next child to visit in each and the subtrees forked from each
+            FileTreeNode[] directories = new FileTreeNode[16];
+            int[] nextChild = new int[16];
+            List<List<SubtreeTask<V>>> forked = new ArrayList<>();
+            int open = 0;
+
+            visitor.enterDirectory(directory);
+            directories[open++] = directory;
+            forked.add(null);
+
+            while (open > 0) {
+                if (cancelled.getAsBoolean()) {
+                    // Join what was forked, so no task is left running, but visit nothing more
+                    forked.forEach((tasks) -> {
+                        if (tasks != null) {
+                            tasks.forEach((task) -> visitor.merge(task.join()));
+                        }
+                    });
+                    return visitor;
+                }
+                FileTreeNode current = directories[open - 1];
+                int index = nextChild[open - 1];
+                if (index >= current.getChildCount()) {
+                    nextChild[--open] = 0;
+                    directories[open] = null;
+                    List<SubtreeTask<V>> tasks = forked.remove(open);
+                    if (tasks != null) {
+                        tasks.forEach((task) -> visitor.merge(task.join()));
+                    }
+                    visitor.exitDirectory(current);
+                    continue;
+                }
+
+                nextChild[open - 1]++;
+                FileTreeNode n = current.getChild(index);
+                if (!n.isDirectory()) {
+                    visitor.visitFile(n);
+                } else if (shouldSplit(n)) {
+                    SubtreeTask<V> task = new SubtreeTask<>(n, visitor.fork(), cancelled);
+                    task.fork();
+                    if (forked.get(open - 1) == null) {
+                        forked.set(open - 1, new ArrayList<>());
+                    }
+                    forked.get(open - 1).add(task);
+                } else {
+                    if (open == directories.length) {
+                        directories = Arrays.copyOf(directories, open * 2);
+                        nextChild = Arrays.copyOf(nextChild, open * 2);
+                    }
+                    visitor.enterDirectory(n);
+                    directories[open++] = n;
+                    forked.add(null);
+                }
+            }
+            return visitor;
+        }
+    }
+}
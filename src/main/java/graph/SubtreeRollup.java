@@ -0,0 +1,116 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Visitor which works out the SubtreeSummary of every directory in one post-order pass. Each open directory keeps
+ * a running total; when the directory is exited its totals are stored on the node and added to its parent's.
+ *
+ * Only the directories on the current path are held, so this can be fed from a stream as well as a built tree.
+ */
+public class SubtreeRollup implements TreeVisitor {
+
+    // Running totals of the open directories, innermost last
+    private long[] totalBytes = new long[16];
+    private long[] fileCounts = new long[16];
+    private long[] directoryCounts = new long[16];
+    private int[] maxDepths = new int[16];
+    private long[] newestModified = new long[16];
+    private int open;
+
+    /**
+     * Store subtree summaries on every directory of the given trees. Should be called once the trees are
+     * complete, as the summaries are not updated if nodes are added later.
+     * @param roots the roots of the trees
+     */
+    public static void computeAll(List<FileTreeNode> roots) {
+        TreeWalker.walk(roots, new SubtreeRollup());
+    }
+
+    /**
+     * Work out the summary of a single node, storing summaries on each directory beneath it on the way.
+     * @param node the node
+     * @return its summary
+     */
+    public static SubtreeSummary compute(FileTreeNode node) {
+        if (!node.isDirectory()) {
+            return SubtreeSummary.ofFile(node);
+        }
+        TreeWalker.walk(node, new SubtreeRollup());
+        return node.getSubtreeSummary();
+    }
+
+    /**
+     * Work out the summary of a directory from the summaries of its children, and store it. For keeping a tree's
+     * summaries up to date as it changes: only the directories on the path to a change need this, each costing
+     * one pass over its own children rather than a walk of everything beneath it.
+     * @param directory the directory, whose children are complete
+     * @return its summary
+     */
+    public static SubtreeSummary summarise(FileTreeNode directory) {
+        long totalBytes = 0;
+        long fileCount = 0;
+        long directoryCount = 0;
+        int maxDepth = directory.getDepth();
+        long newestModified = directory.getLastModified();
+        for (int i = 0; i < directory.getChildCount(); i++) {
+            FileTreeNode child = directory.getChild(i);
+            SubtreeSummary s = child.getSubtreeSummary();
+            totalBytes += s.getTotalBytes();
+            fileCount += s.getFileCount();
+            directoryCount += s.getDirectoryCount() + (child.isDirectory() ? 1 : 0);
+            maxDepth = Math.max(maxDepth, s.getMaxDepth());
+            newestModified = Math.max(newestModified, s.getNewestModified());
+        }
+        SubtreeSummary summary = new SubtreeSummary(totalBytes, fileCount, directoryCount, maxDepth, newestModified);
+        directory.setSubtreeSummary(summary);
+        return summary;
+    }
+
+    @Override
+    public void enterDirectory(FileTreeNode directory) {
+        if (open == totalBytes.length) {
+            int grown = open * 2;
+            totalBytes = Arrays.copyOf(totalBytes, grown);
+            fileCounts = Arrays.copyOf(fileCounts, grown);
+            directoryCounts = Arrays.copyOf(directoryCounts, grown);
+            maxDepths = Arrays.copyOf(maxDepths, grown);
+            newestModified = Arrays.copyOf(newestModified, grown);
+        }
+        totalBytes[open] = 0;
+        fileCounts[open] = 0;
+        directoryCounts[open] = 0;
+        maxDepths[open] = directory.getDepth();
+        newestModified[open] = directory.getLastModified();
+        open++;
+    }
+
+    @Override
+    public void visitFile(FileTreeNode file) {
+        if (open == 0) {
+            return;
+        }
+        int top = open - 1;
+        totalBytes[top] += file.getFileSize();
+        fileCounts[top]++;
+        maxDepths[top] = Math.max(maxDepths[top], file.getDepth());
+        newestModified[top] = Math.max(newestModified[top], file.getLastModified());
+    }
+
+    @Override
+    public void exitDirectory(FileTreeNode directory) {
+        int top = --open;
+        directory.setSubtreeSummary(new SubtreeSummary(totalBytes[top], fileCounts[top], directoryCounts[top],
+                maxDepths[top], newestModified[top]));
+
+        if (open > 0) {
+            int parent = open - 1;
+            totalBytes[parent] += totalBytes[top];
+            fileCounts[parent] += fileCounts[top];
+            directoryCounts[parent] += directoryCounts[top] + 1;
+            maxDepths[parent] = Math.max(maxDepths[parent], maxDepths[top]);
+            newestModified[parent] = Math.max(newestModified[parent], newestModified[top]);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package graph;
+
+/**
+ * Totals for everything beneath a node, worked out once in a single bottom-up pass (see SubtreeRollup) so
+ * questions about a directory's contents do not need the directory walking again.
+ *
+ * For a file the summary covers just the file itself. For a directory it covers all of its contents but not the
+ * directory itself, except that the directory's own modified time counts towards the newest modified time.
+ */
+public final class SubtreeSummary {
+
+    private final long totalBytes;
+    private final long fileCount;
+    private final long directoryCount;
+    private final int maxDepth;
+    private final long newestModified;
+
+    public SubtreeSummary(long totalBytes, long fileCount, long directoryCount, int maxDepth, long newestModified) {
+        this.totalBytes = totalBytes;
+        this.fileCount = fileCount;
+        this.directoryCount = directoryCount;
+        this.maxDepth = maxDepth;
+        this.newestModified = newestModified;
+    }
+
+    /**
+     * The summary of a single file.
+     * @param file the file node
+     * @return its summary
+     */
+    public static SubtreeSummary ofFile(FileTreeNode file) {
+        return new SubtreeSummary(file.getFileSize(), 1, 0, file.getDepth(), file.getLastModified());
+    }
+
+    /**
+     * Total size in bytes of the files beneath the node.
+     * @return total bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * The number of files (not directories) beneath the node.
+     * @return file count
+     */
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * The number of directories beneath the node, not counting the node itself.
+     * @return directory count
+     */
+    public long getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * The depth of the deepest node beneath the node, on the same scale as FileTreeNode.getDepth.
+     * @return max depth
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * The most recent modified time of the node or anything beneath it.
+     * @return newest modified time
+     */
+    public long getNewestModified() {
+        return newestModified;
+    }
+
+    @Override
+    public String toString() {
+        String out = "Bytes: %d, files: %d, directories: %d, max depth: %d, newest modified: %d.";
+        return String.format(out, totalBytes, fileCount, directoryCount, maxDepth, newestModified);
+    }
+}
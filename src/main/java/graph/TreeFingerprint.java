@@ -0,0 +1,116 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Visitor which works out a Merkle-style fingerprint of a tree in one post-order pass. Each node is hashed from
+ * its name, size, last modified time and file type; a directory's hash also covers the hashes of its children,
+ * so two trees share a fingerprint only if every node beneath them matches. Children are combined by adding their
+ * hashes, so the order a directory happens to be listed in makes no difference.
+ *
+ * Hashes are 128 bits wide, worked out as two independently seeded 64 bit lanes. Like SubtreeRollup, only the
+ * directories on the current path are held.
+ */
+public class TreeFingerprint implements TreeVisitor {
+
+    private static final long SEED_A = 0x9e3779b97f4a7c15L;
+    private static final long SEED_B = 0xc2b2ae3d27d4eb4fL;
+
+    // Sums of the child hashes of the open directories, innermost last
+    private long[] childrenA = new long[16];
+    private long[] childrenB = new long[16];
+    private int open;
+
+    // Hashes of every tree completed so far
+    private long allA = SEED_A;
+    private long allB = SEED_B;
+
+    /**
+     * Fingerprint the given trees, in order.
+     * @param roots the roots of the trees
+     * @return the fingerprint, as 32 hex digits
+     */
+    public static String of(List<FileTreeNode> roots) {
+        TreeFingerprint fingerprint = new TreeFingerprint();
+        TreeWalker.walk(roots, fingerprint);
+        return fingerprint.toString();
+    }
+
+    @Override
+    public void enterDirectory(FileTreeNode directory) {
+        if (open == childrenA.length) {
+            childrenA = Arrays.copyOf(childrenA, open * 2);
+            childrenB = Arrays.copyOf(childrenB, open * 2);
+        }
+        childrenA[open] = 0;
+        childrenB[open] = 0;
+        open++;
+    }
+
+    @Override
+    public void visitFile(FileTreeNode file) {
+        completed(hash(file, SEED_A), hash(file, SEED_B));
+    }
+
+    @Override
+    public void exitDirectory(FileTreeNode directory) {
+        open--;
+        completed(mix(hash(directory, SEED_A) ^ mix(childrenA[open] + SEED_B)),
+                mix(hash(directory, SEED_B) ^ mix(childrenB[open] + SEED_A)));
+    }
+
+    /**
+     * Add a finished node's hashes to its parent, or if it is a root, to the fingerprint of all the trees.
+     */
+    private void completed(long a, long b) {
+        if (open > 0) {
+            childrenA[open - 1] += a;
+            childrenB[open - 1] += b;
+        } else {
+            allA = mix(allA * 31 + a);
+            allB = mix(allB * 31 + b);
+        }
+    }
+
+    /**
+     * @return the fingerprint of every tree walked, in order, as 32 hex digits
+     */
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", allA, allB);
+    }
+
+    /**
+     * Hash a node on its own. A root is hashed by its full path, any other node by its name.
+     */
+    private static long hash(FileTreeNode n, long seed) {
+        long h = mix(seed ^ hash((n.getParent() == null) ? n.getPath() : n.getName(), seed));
+        h = mix(h + n.getFileSize());
+        h = mix(h + n.getLastModified());
+        h = mix(h + (n.isDirectory() ? 1 : 0));
+        return mix(h ^ hash(n.getFileType(), seed));
+    }
+
+    /**
+     * 64 bit FNV-1a over the characters of a string.
+     */
+    private static long hash(String s, long seed) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Scramble the bits of a value (the finaliser of SplitMix64), so nearby inputs give unrelated outputs.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
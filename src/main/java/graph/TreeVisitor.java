@@ -0,0 +1,29 @@
+package graph;
+
+/**
+ * Receives the nodes of a tree one at a time, in depth first order. Used both to walk a tree already held in
+ * memory and to stream nodes straight out of a scan, in which case no tree is ever built.
+ *
+ * A node with no parent is the root of a tree. Directories are entered before and exited after their contents,
+ * so a visitor can track where it is in the tree without holding on to any nodes.
+ */
+public interface TreeVisitor {
+
+    /**
+     * Called when a directory is reached, before any of its contents.
+     * @param directory the directory node
+     */
+    void enterDirectory(FileTreeNode directory);
+
+    /**
+     * Called for each file (any node which is not a directory).
+     * @param file the file node
+     */
+    void visitFile(FileTreeNode file);
+
+    /**
+     * Called once all contents of a directory have been visited.
+     * @param directory the directory node
+     */
+    void exitDirectory(FileTreeNode directory);
+}
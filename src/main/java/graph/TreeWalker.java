@@ -0,0 +1,155 @@
+package graph;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Drives a TreeVisitor over a tree, depth first. Iterative rather than recursive, so deep trees cannot overflow
+ * the stack; only the directories on the current path are held while walking.
+ */
+public class TreeWalker {
+
+    private static final BooleanSupplier NEVER = () -> false;
+
+    private TreeWalker() {
+        // Prevents instantiation
+    }
+
+    /**
+     * Walk each of the given in-memory trees in turn.
+     * @param roots the roots of the trees
+     * @param visitor the visitor to pass nodes to
+     */
+    public static void walk(List<FileTreeNode> roots, TreeVisitor visitor) {
+        roots.forEach((root) -> walk(root, visitor));
+    }
+
+    /**
+     * Walk an in-memory tree. Children are read by index, so apart from growing its stack the walk allocates
+     * nothing.
+     * @param root the root of the tree
+     * @param visitor the visitor to pass nodes to
+     */
+    public static void walk(FileTreeNode root, TreeVisitor visitor) {
+        walk(root, visitor, NEVER);
+    }
+
+    /**
+     * Walk each of the given in-memory trees in turn, stopping early once the walk is cancelled. Cancellation is
+     * checked as each directory is reached, so a visitor stops getting nodes soon after, without every directory
+     * being exited.
+     * @param roots the roots of the trees
+     * @param visitor the visitor to pass nodes to
+     * @param cancelled whether to stop walking
+     * @return true if every node was visited, false if the walk was cancelled
+     */
+    public static boolean walk(List<FileTreeNode> roots, TreeVisitor visitor, BooleanSupplier cancelled) {
+        for (FileTreeNode root : roots) {
+            if (!walk(root, visitor, cancelled)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Walk an in-memory tree, stopping early once the walk is cancelled.
+     * @param root the root of the tree
+     * @param visitor the visitor to pass nodes to
+     * @param cancelled whether to stop walking
+     * @return true if every node was visited, false if the walk was cancelled
+     */
+    public static boolean walk(FileTreeNode root, TreeVisitor visitor, BooleanSupplier cancelled) {
+        if (!root.isDirectory()) {
+            visitor.visitFile(root);
+            return true;
+        }
+        if (cancelled.getAsBoolean()) {
+            return false;
+        }
+
+        // The directories on the current path, alongside the next child to visit in each
+        FileTreeNode[] directories = new FileTreeNode[16];
+        int[] nextChild = new int[16];
+        int open = 0;
+
+        visitor.enterDirectory(root);
+        directories[open++] = root;
+
+        while (open > 0) {
+            FileTreeNode directory = directories[open - 1];
+            int index = nextChild[open - 1];
+            if (index >= directory.getChildCount()) {
+                nextChild[--open] = 0;
+                directories[open] = null;
+                visitor.exitDirectory(directory);
+                continue;
+            }
+
+            nextChild[open - 1]++;
+            FileTreeNode n = directory.getChild(index);
+            if (n.isDirectory()) {
+                if (cancelled.getAsBoolean()) {
+                    return false;
+                }
+                if (open == directories.length) {
+                    directories = Arrays.copyOf(directories, open * 2);
+                    nextChild = Arrays.copyOf(nextChild, open * 2);
+                }
+                visitor.enterDirectory(n);
+                directories[open++] = n;
+            } else {
+                visitor.visitFile(n);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Walk a tree whose children are produced on demand, for example by listing the directory as it is reached.
+     * @param root the root of the tree
+     * @param children function giving the children of a directory node
+     * @param visitor the visitor to pass nodes to
+     */
+    public static void walk(FileTreeNode root, Function<FileTreeNode, ? extends Iterable<FileTreeNode>> children,
+                            TreeVisitor visitor) {
+        if (!root.isDirectory()) {
+            visitor.visitFile(root);
+            return;
+        }
+
+        Deque<FileTreeNode> directories = new ArrayDeque<>();
+        Deque<Iterator<FileTreeNode>> remaining = new ArrayDeque<>();
+        visitor.enterDirectory(root);
+        directories.push(root);
+        remaining.push(iterate(children.apply(root)));
+
+        while (!remaining.isEmpty()) {
+            Iterator<FileTreeNode> it = remaining.peek();
+            if (!it.hasNext()) {
+                remaining.pop();
+                visitor.exitDirectory(directories.pop());
+                continue;
+            }
+
+            FileTreeNode n = it.next();
+            if (n.isDirectory()) {
+                visitor.enterDirectory(n);
+                directories.push(n);
+                remaining.push(iterate(children.apply(n)));
+            } else {
+                visitor.visitFile(n);
+            }
+        }
+    }
+
+    private static Iterator<FileTreeNode> iterate(Iterable<FileTreeNode> nodes) {
+        return (nodes == null) ? Collections.<FileTreeNode>emptyIterator() : nodes.iterator();
+    }
+}
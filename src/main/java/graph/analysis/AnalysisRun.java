@@ -0,0 +1,90 @@
+package graph.analysis;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of running one analyser on the AnalysisScheduler: how it ended, its report if it finished, and how
+ * long it took. Wall time runs from when the analyser started, not from when it was queued. CPU time is that of
+ * the thread running the analyser, so any work the analyser splits across a fork/join pool is not included.
+ */
+public class AnalysisRun {
+
+    /**
+     * How an analyser's run ended.
+     */
+    public enum Status {
+        /** The analysis and its report completed */
+        FINISHED,
+        /** The analysis or its report failed */
+        FAILED,
+        /** The analyser ran past its budget, was cancelled and stopped */
+        CANCELLED,
+        /** The analyser ran past its budget and did not stop when cancelled, so was left running */
+        ABANDONED
+    }
+
+    private final String analysisName;
+    private final Status status;
+    private final ByteArrayOutputStream pdf;
+    private final long wallNanos;
+    private final long cpuNanos;
+
+    /**
+     *
+     * @param analysisName name of the analysis
+     * @param status how the run ended
+     * @param pdf the report, or null unless finished
+     * @param wallNanos wall clock time taken
+     * @param cpuNanos CPU time taken, or -1 if not known
+     */
+    AnalysisRun(String analysisName, Status status, ByteArrayOutputStream pdf, long wallNanos, long cpuNanos) {
+        this.analysisName = analysisName;
+        this.status = status;
+        this.pdf = pdf;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+    }
+
+    public String getAnalysisName() {
+        return analysisName;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     *
+     * @return whether the analyser produced its report
+     */
+    public boolean isFinished() {
+        return status == Status.FINISHED;
+    }
+
+    /**
+     *
+     * @return the report, or null if the analyser did not finish
+     */
+    public ByteArrayOutputStream getPdf() {
+        return pdf;
+    }
+
+    public long getWallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(wallNanos);
+    }
+
+    /**
+     *
+     * @return CPU time taken in milliseconds, or -1 if not known
+     */
+    public long getCpuMillis() {
+        return (cpuNanos < 0) ? -1 : TimeUnit.NANOSECONDS.toMillis(cpuNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-32s %-9s %7d ms wall %7s ms cpu", analysisName, status, getWallMillis(),
+                (cpuNanos < 0) ? "?" : String.valueOf(getCpuMillis()));
+    }
+}
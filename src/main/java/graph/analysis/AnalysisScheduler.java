@@ -0,0 +1,160 @@
+package graph.analysis;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs analysers on a bounded pool of threads, shared by every run, rather than a thread per analyser. Analysers
+ * beyond the size of the pool queue for a thread.
+ *
+ * Each analyser may be given a time budget, counted from when it starts. Once over budget it is cancelled, which
+ * well behaved analysers notice and stop on. One which has still not stopped GRACE_MILLIS later is abandoned: it
+ * is reported as such and left to finish on its thread, so one slow analyser cannot hold up the report of the
+ * others. The pool gains a thread for as long as an abandoned analyser holds on to one, so the analysers queued
+ * behind it are not held up either.
+ */
+public class AnalysisScheduler {
+
+    static final long GRACE_MILLIS = 2000;
+
+    private static AnalysisScheduler shared;
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService timer;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     *
+     * @param threads how many analysers may run at once
+     */
+    public AnalysisScheduler(int threads) {
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("analysis"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("analysis-timer"));
+    }
+
+    /**
+     * The scheduler shared by the whole application, with a thread per core.
+     * @return the shared scheduler
+     */
+    public static synchronized AnalysisScheduler shared() {
+        if (shared == null) {
+            shared = new AnalysisScheduler(Runtime.getRuntime().availableProcessors());
+        }
+        return shared;
+    }
+
+    /**
+     * Runs each analyser callable, waiting until every one has finished, failed, or run out of time.
+     * @param callables the wrapped analysers
+     * @param budgets the time budget in milliseconds for each analyser, 0 or less for none
+     * @return how each analyser's run ended, in the order given
+     */
+    public List<AnalysisRun> run(List<TreeAnalyserCallable> callables, ToLongFunction<TreeAnalyser> budgets) {
+        List<CompletableFuture<AnalysisRun>> pending = new ArrayList<>();
+        callables.forEach((c) -> pending.add(submit(c, budgets.applyAsLong(c.getAnalyser()))));
+
+        List<AnalysisRun> runs = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            String name = callables.get(i).getAnalyser().getAnalysisName();
+            try {
+                runs.add(pending.get(i).get());
+            } catch (InterruptedException e) {
+                System.err.println("Interrupted waiting for: " + name);
+                Thread.currentThread().interrupt();
+                runs.add(new AnalysisRun(name, AnalysisRun.Status.ABANDONED, null, 0, -1));
+            } catch (ExecutionException e) {
+                System.err.println("Execution problem with: " + name);
+                runs.add(new AnalysisRun(name, AnalysisRun.Status.FAILED, null, 0, -1));
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Queues an analyser callable to run, without waiting for it.
+     * @param callable the wrapped analyser
+     * @param budget its time budget in milliseconds, 0 or less for none
+     * @return completed with how the run ended, as soon as it ends or is abandoned
+     */
+    public CompletableFuture<AnalysisRun> submit(TreeAnalyserCallable callable, long budget) {
+        TreeAnalyser analyser = callable.getAnalyser();
+        String name = analyser.getAnalysisName();
+        CompletableFuture<AnalysisRun> run = new CompletableFuture<>();
+
+        workers.execute(() -> {
+            long start = System.nanoTime();
+            long cpuStart = cpuTime();
+            List<ScheduledFuture<?>> deadlines = new ArrayList<>();
+            if (budget > 0) {
+                deadlines.add(timer.schedule(analyser::cancel, budget, TimeUnit.MILLISECONDS));
+                deadlines.add(timer.schedule(() -> {
+                    if (run.complete(new AnalysisRun(name, AnalysisRun.Status.ABANDONED, null,
+                            System.nanoTime() - start, -1))) {
+                        resize(1);
+                    }
+                }, budget + GRACE_MILLIS, TimeUnit.MILLISECONDS));
+            }
+
+            ByteArrayOutputStream pdf = null;
+            try {
+                pdf = callable.call();
+            } catch (RuntimeException e) {
+                System.err.println("Error analysing: " + name + ", skipping.. " + e);
+            } finally {
+                deadlines.forEach((d) -> d.cancel(false));
+                long cpu = (cpuStart < 0) ? -1 : cpuTime() - cpuStart;
+                // An analyser which finished despite being cancelled still has a complete report
+                AnalysisRun.Status status = (pdf != null) ? AnalysisRun.Status.FINISHED :
+                        analyser.isCancelled() ? AnalysisRun.Status.CANCELLED : AnalysisRun.Status.FAILED;
+                if (!run.complete(new AnalysisRun(name, status, pdf, System.nanoTime() - start, cpu))) {
+                    // Abandoned earlier, so give back the thread added in its place
+                    resize(-1);
+                }
+            }
+        });
+        return run;
+    }
+
+    /**
+     * Grow or shrink the pool. The maximum size must never fall below the core size, so it is raised first and
+     * lowered last.
+     */
+    private synchronized void resize(int change) {
+        int threads = workers.getCorePoolSize() + change;
+        if (change > 0) {
+            workers.setMaximumPoolSize(threads);
+            workers.setCorePoolSize(threads);
+        } else {
+            workers.setCorePoolSize(threads);
+            workers.setMaximumPoolSize(threads);
+        }
+    }
+
+    private long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return (runnable) -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
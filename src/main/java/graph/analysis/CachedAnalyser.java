@@ -0,0 +1,65 @@
+package graph.analysis;
+
+import graph.FileTreeNode;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+/**
+ * Stands in for an analyser whose report was found in the ResultCache, so it can be run like any other while
+ * doing no work: there is nothing to analyse, and the report is the one cached.
+ */
+public class CachedAnalyser extends TreeAnalyser {
+
+    private final TreeAnalyser analyser;
+    private final ByteArrayOutputStream pdf;
+
+    /**
+     *
+     * @param analyser the analyser stood in for, with its cached results restored
+     * @param pdf its cached report
+     */
+    public CachedAnalyser(TreeAnalyser analyser, ByteArrayOutputStream pdf) {
+        super(null, null);
+        this.analyser = analyser;
+        this.pdf = pdf;
+    }
+
+    /**
+     *
+     * @return the analyser stood in for
+     */
+    public TreeAnalyser getAnalyser() {
+        return analyser;
+    }
+
+    @Override
+    public String getAnalysisName() {
+        return analyser.getAnalysisName() + " (cached)";
+    }
+
+    @Override
+    public String getDescription() {
+        return analyser.getDescription();
+    }
+
+    @Override
+    public void setTree(List<FileTreeNode> tree) {
+        // The cached report already covers the tree
+    }
+
+    @Override
+    public void setPaths(List<String> paths) {
+        // The cached report already covers the paths
+    }
+
+    @Override
+    public void doAnalyse() {
+        // Nothing to do, the results were cached
+    }
+
+    @Override
+    public ByteArrayOutputStream generatePdfReport() {
+        return pdf;
+    }
+}
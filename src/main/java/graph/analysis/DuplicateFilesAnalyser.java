@@ -0,0 +1,364 @@
+package graph.analysis;
+
+import exceptions.AnalysisException;
+import exceptions.PdfGenerationException;
+import graph.FileTreeNode;
+import graph.MergeableTreeVisitor;
+import graph.ParallelTreeWalker;
+import graph.TreeWalker;
+import net.sf.dynamicreports.report.builder.DynamicReports;
+import net.sf.dynamicreports.report.builder.column.TextColumnBuilder;
+import net.sf.dynamicreports.report.builder.component.Components;
+import net.sf.dynamicreports.report.datasource.DRDataSource;
+import net.sf.dynamicreports.report.exception.DRException;
+import net.sf.jasperreports.engine.JRDataSource;
+import utils.DynamicReportStylesHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Tree analyser which finds files with identical contents, and how many bytes could be reclaimed by keeping only
+ * one copy of each. To read as little as possible, files are narrowed down in stages:
+ * - the walk groups files by size, which needs no reads at all; only sizes shared by more than one file go on,
+ *   less any paths which are links to the same file
+ * - the first and last SAMPLE_BYTES of each remaining file are hashed, splitting the groups further
+ * - only files still matching after that are hashed in full
+ *
+ * Reads are spread over a small fixed pool of IO_THREADS, with whole files hashed through memory mapped chunks.
+ */
+public class DuplicateFilesAnalyser extends TreeAnalyser implements MergeableTreeVisitor<DuplicateFilesAnalyser> {
+
+    static final int SAMPLE_BYTES = 4096;
+    static final int IO_THREADS = 4;
+    private static final long MAP_CHUNK = 64L << 20;
+
+    private List<FileTreeNode> tree;
+    private List<String> paths;
+
+    private Map<Long, List<FileTreeNode>> filesBySize = new HashMap<>();
+    private List<List<FileTreeNode>> duplicates;
+    private final LongAdder bytesRead = new LongAdder();
+    private long bytesSeen;
+
+    private static final String name = "Duplicate Files Analysis";
+    private static final String desc = "Finds files with identical contents in the given filesystem";
+    private static final String reportTitleAsHtml = "Title: <b>%s</b>    Path: <i>%s</i>.<br/><br/> Description: <i> %s. </i><br/>" +
+            "Reclaimable: <b>%d kb</b> in %d groups of duplicates. Read %d kb of %d kb to find them.<br/>";
+
+    public DuplicateFilesAnalyser(List<FileTreeNode> tree, List<String> paths) {
+        super(tree, paths);
+    }
+
+    @Override
+    public String getAnalysisName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return desc;
+    }
+
+    @Override
+    public void setTree(List<FileTreeNode> tree) {
+        this.tree = tree;
+    }
+
+    @Override
+    public void setPaths(List<String> paths) {
+        this.paths = paths;
+    }
+
+    @Override
+    public void doAnalyse() throws AnalysisException {
+        TreeWalker.walk(tree, this, this::isCancelled);
+        checkCancelled();
+        findDuplicates();
+        checkCancelled();
+    }
+
+    @Override
+    public void doAnalyse(ForkJoinPool pool) throws AnalysisException {
+        ParallelTreeWalker.walk(tree, this, pool, this::isCancelled);
+        checkCancelled();
+        findDuplicates();
+        checkCancelled();
+    }
+
+    @Override
+    public void enterDirectory(FileTreeNode directory) {
+        // Nothing to do on entering a directory
+    }
+
+    @Override
+    public void visitFile(FileTreeNode file) {
+        // Empty files are all alike, but there is nothing to reclaim
+        if (file.getFileSize() > 0) {
+            filesBySize.computeIfAbsent(file.getFileSize(), (size) -> new ArrayList<>()).add(file);
+            bytesSeen += file.getFileSize();
+        }
+    }
+
+    @Override
+    public void exitDirectory(FileTreeNode directory) {
+        // Nothing to do on leaving a directory
+    }
+
+    @Override
+    public DuplicateFilesAnalyser fork() {
+        return new DuplicateFilesAnalyser(tree, paths);
+    }
+
+    @Override
+    public void merge(DuplicateFilesAnalyser partial) {
+        partial.filesBySize.forEach((size, files) ->
+                filesBySize.computeIfAbsent(size, (s) -> new ArrayList<>()).addAll(files));
+        bytesSeen += partial.bytesSeen;
+    }
+
+    /**
+     * Narrow the files grouped by size down to groups with identical contents, reading as little as possible.
+     * Called once the walk is done; if the analyser was fed from a scan, this happens when the report is made.
+     */
+    private void findDuplicates() {
+        List<List<FileTreeNode>> candidates = new ArrayList<>();
+        filesBySize.values().forEach((files) -> {
+            List<FileTreeNode> distinct = (files.size() > 1) ? distinctFiles(files) : files;
+            if (distinct.size() > 1) {
+                candidates.add(distinct);
+            }
+        });
+        filesBySize = new HashMap<>();
+
+        ExecutorService io = Executors.newFixedThreadPool(IO_THREADS);
+        try {
+            // Files small enough to be covered by the samples are already fully hashed after the first stage
+            List<List<FileTreeNode>> sampled = regroup(candidates, this::hashSample, io);
+            List<List<FileTreeNode>> needFullHash = new ArrayList<>();
+            List<List<FileTreeNode>> found = new ArrayList<>();
+            sampled.forEach((group) -> (group.get(0).getFileSize() <= 2 * SAMPLE_BYTES ? found : needFullHash)
+                    .add(group));
+            found.addAll(regroup(needFullHash, this::hashContents, io));
+
+            found.sort(Comparator.comparingLong(DuplicateFilesAnalyser::reclaimableBytes).reversed());
+            duplicates = found;
+        } finally {
+            io.shutdown();
+        }
+    }
+
+    /**
+     * Drop any paths which lead to a file already in the group, e.g. through a hard link or a linked directory.
+     * These are one file on disk, so there is nothing to reclaim and no need to read them twice.
+     */
+    private static List<FileTreeNode> distinctFiles(List<FileTreeNode> files) {
+        Map<Object, FileTreeNode> byKey = new LinkedHashMap<>();
+        for (FileTreeNode n : files) {
+            try {
+                Object key = Files.readAttributes(Paths.get(n.getPath()), BasicFileAttributes.class).fileKey();
+                byKey.putIfAbsent((key == null) ? n.getPath() : key, n);
+            } catch (IOException | InvalidPathException e) {
+                System.err.println("Could not read: " + n.getPath() + ", skipping. " + e.getMessage());
+            }
+        }
+        return new ArrayList<>(byKey.values());
+    }
+
+    /**
+     * Split each group by the given hash, computed on the IO pool, keeping only the sub-groups which still hold
+     * more than one file. Files which cannot be read are left out.
+     */
+    private static List<List<FileTreeNode>> regroup(List<List<FileTreeNode>> groups,
+                                                    Function<FileTreeNode, String> hash, ExecutorService io) {
+        Map<FileTreeNode, Future<String>> hashes = new IdentityHashMap<>();
+        groups.forEach((group) -> group.forEach((n) -> hashes.put(n, io.submit(() -> hash.apply(n)))));
+
+        List<List<FileTreeNode>> regrouped = new ArrayList<>();
+        for (List<FileTreeNode> group : groups) {
+            Map<String, List<FileTreeNode>> byHash = new LinkedHashMap<>();
+            for (FileTreeNode n : group) {
+                String h = waitFor(hashes.get(n), n);
+                if (h != null) {
+                    byHash.computeIfAbsent(h, (k) -> new ArrayList<>()).add(n);
+                }
+            }
+            byHash.values().forEach((files) -> {
+                if (files.size() > 1) {
+                    regrouped.add(files);
+                }
+            });
+        }
+        return regrouped;
+    }
+
+    private static String waitFor(Future<String> hash, FileTreeNode n) {
+        try {
+            return hash.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.err.println("Could not read: " + n.getPath() + ", skipping. " + e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Hash the first and last SAMPLE_BYTES of a file, or the whole file if it is no bigger than that. Once the
+     * analysis is cancelled nothing more is read, and the file is left out.
+     */
+    private String hashSample(FileTreeNode n) {
+        if (isCancelled()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(n.getPath()), StandardOpenOption.READ)) {
+            MessageDigest digest = newDigest();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SAMPLE_BYTES);
+            long size = channel.size();
+            readInto(digest, channel, buffer, 0);
+            if (size > SAMPLE_BYTES) {
+                readInto(digest, channel, buffer, Math.max(SAMPLE_BYTES, size - SAMPLE_BYTES));
+            }
+            return toHex(digest.digest());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void readInto(MessageDigest digest, FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        bytesRead.add(buffer.remaining());
+        digest.update(buffer);
+    }
+
+    /**
+     * Hash the whole of a file, mapping it into memory a chunk at a time, or leave it out once cancelled.
+     */
+    private String hashContents(FileTreeNode n) {
+        try (FileChannel channel = FileChannel.open(Paths.get(n.getPath()), StandardOpenOption.READ)) {
+            MessageDigest digest = newDigest();
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_CHUNK) {
+                if (isCancelled()) {
+                    return null;
+                }
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_CHUNK, size - position));
+                bytesRead.add(chunk.remaining());
+                digest.update(chunk);
+            }
+            return toHex(digest.digest());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The groups of files found to have identical contents, largest reclaimable first.
+     * @return the groups, null before the analysis has run
+     */
+    List<List<FileTreeNode>> getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * How many bytes were read from disk to find the duplicates.
+     * @return bytes read
+     */
+    long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    private static long reclaimableBytes(List<FileTreeNode> group) {
+        return group.get(0).getFileSize() * (group.size() - 1);
+    }
+
+    @Override
+    public ByteArrayOutputStream generatePdfReport() throws PdfGenerationException {
+        if (duplicates == null) {
+            findDuplicates();
+        }
+        long reclaimable = duplicates.stream().mapToLong(DuplicateFilesAnalyser::reclaimableBytes).sum();
+
+        try {
+            TextColumnBuilder<Integer> groupCol =
+                    DynamicReports.col.column("Group", "group", DynamicReports.type.integerType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<String> pathCol =
+                    DynamicReports.col.column("Path", "path", DynamicReports.type.stringType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<Long> sizeCol =
+                    DynamicReports.col.column("Size (kb)", "size", DynamicReports.type.longType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            DynamicReports.report()
+                    .setColumnTitleStyle(DynamicReportStylesHelper.columnTitleStyle())
+                    .title(Components.text(String.format(reportTitleAsHtml, name, paths, getReportDescription(),
+                            reclaimable / 1024, duplicates.size(), bytesRead.sum() / 1024, bytesSeen / 1024)).
+                            setStyle(DynamicReportStylesHelper.styledMarkupStyle()))
+                    .columns(//add columns
+                            groupCol.setWidth(10), pathCol.setWidth(70), sizeCol.setWidth(20)
+                    )
+                    .setDataSource(createDataSource())
+                    .toPdf(outputStream);
+            return outputStream;
+        } catch (DRException e) {
+            System.err.println("Error generating PDF" + e.getMessage());
+            throw new PdfGenerationException("Error generating PDF with DynamicReports", e);
+        }
+    }
+
+    /**
+     * Generate the data into the PDF report being generated: one row per file, numbered by group.
+     * @return data source to inject into PDF report
+     */
+    private JRDataSource createDataSource() {
+        DRDataSource dataSource = new DRDataSource("group", "path", "size");
+        for (int i = 0; i < duplicates.size(); i++) {
+            for (FileTreeNode n : duplicates.get(i)) {
+                dataSource.add(i + 1, n.getPath(), n.getFileSize() / 1024);
+            }
+        }
+        return dataSource;
+    }
+}
@@ -3,6 +3,9 @@ package graph.analysis;
 import exceptions.AnalysisException;
 import exceptions.PdfGenerationException;
 import graph.FileTreeNode;
+import graph.TreeVisitor;
+import graph.TreeWalker;
+import graph.factory.ScanSample;
 import net.sf.dynamicreports.report.builder.DynamicReports;
 import net.sf.dynamicreports.report.builder.column.TextColumnBuilder;
 import net.sf.dynamicreports.report.builder.component.Components;
@@ -12,6 +15,9 @@ import net.sf.jasperreports.engine.JRDataSource;
 import utils.DynamicReportStylesHelper;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
 import static net.sf.dynamicreports.report.builder.DynamicReports.*;
 
@@ -20,15 +26,22 @@ import static net.sf.dynamicreports.report.builder.DynamicReports.*;
  * Created by conor on 07/09/2014.
  *
  * Tree analyser which simply counts the number of files in a given path.
- * This does not include directories.
+ * This does not include directories. A built tree is answered from the roots' subtree summaries; when fed straight
+ * from a scan, only a running count is kept. When the tree is only a sample, the counts are scaled up to estimates
+ * for the whole filesystem.
  */
-public class FileCountAnalyser extends TreeAnalyser {
+public class FileCountAnalyser extends TreeAnalyser implements TreeVisitor {
 
     private List<FileTreeNode> tree;
 
-    private Map<String, Integer> fileCounts = new HashMap<>();
+    private Map<String, Long> fileCounts = new HashMap<>();
     private List<String> paths;
 
+    private long currentRootCount;
+    // Set when the tree is a sample, in place of the exact counts
+    private SampleEstimator estimator;
+    private String currentRoot;
+
     private static final String name = "File Count Analysis";
     private static final String desc = "Counts how many files (not folders) are in the given filesystem";
     private static final String reportTitleAsHtml = "Title: <b>%s</b>    Path: <i>%s</i>.<br/><br/> Description: <i> %s. </i><br/>";
@@ -57,41 +70,116 @@ public class FileCountAnalyser extends TreeAnalyser {
         this.paths = paths;
     }
 
+    @Override
+    public void setSample(ScanSample sample) {
+        this.estimator = (sample == null) ? null : new SampleEstimator(sample);
+    }
+
+    @Override
+    public boolean scalesSample() {
+        return true;
+    }
+
     @Override
     public void doAnalyse() throws AnalysisException {
-        for (FileTreeNode root : tree) {
-            int fileCount = 0;
-            Queue<FileTreeNode> tq = new LinkedList<>();
-            tq.add(root);
-
-            while (!tq.isEmpty()) {
-                FileTreeNode n = tq.poll();
-                if (!n.isDirectory()) {
-                    fileCount++;
-                } else {
-                    n.getChildren().forEach(tq::add);
-                }
-            }
-            fileCounts.put(root.getPath(), fileCount);
+        if (estimator != null) {
+            // Summaries only hold what was sampled, so walk the tree to scale each sampling unit up
+            TreeWalker.walk(tree, this, this::isCancelled);
+            checkCancelled();
+            return;
+        }
+        // Each root already knows how many files are beneath it, so there is no need to walk the tree
+        tree.forEach((root) -> fileCounts.put(root.getPath(), root.getSubtreeSummary().getFileCount()));
+    }
+
+    @Override
+    public void enterDirectory(FileTreeNode directory) {
+        if (directory.getParent() == null) {
+            currentRootCount = 0;
+            currentRoot = directory.getPath();
+        }
+        if (estimator != null) {
+            estimator.enterDirectory(directory);
+        }
+    }
+
+    @Override
+    public void visitFile(FileTreeNode file) {
+        if (file.getParent() == null) {
+            fileCounts.put(file.getPath(), 1L);
+        } else if (estimator != null) {
+            estimator.add(currentRoot, 1);
+        } else {
+            currentRootCount++;
+        }
+    }
+
+    @Override
+    public void exitDirectory(FileTreeNode directory) {
+        if (estimator != null) {
+            estimator.exitDirectory(directory);
+        }
+        if (directory.getParent() == null) {
+            fileCounts.put(directory.getPath(),
+                    (estimator == null) ? currentRootCount : estimator.estimate(directory.getPath()));
         }
     }
 
+    /**
+     * The number of files found under one of the roots, or the estimate for it when the tree is a sample.
+     * @param rootPath the root's path
+     * @return the file count, zero for a root not analysed
+     */
+    public long getFileCount(String rootPath) {
+        return fileCounts.getOrDefault(rootPath, 0L);
+    }
+
+    /**
+     * Half the width of the 95% confidence interval around a root's estimated file count.
+     * @param rootPath the root's path
+     * @return the margin, zero when the files were counted exactly, NaN if there were too few units to tell
+     */
+    public double getMargin(String rootPath) {
+        return (estimator == null) ? 0 : estimator.margin(rootPath);
+    }
+
+    @Override
+    public void writeResults(DataOutputStream out) throws IOException {
+        out.writeInt(fileCounts.size());
+        for (Map.Entry<String, Long> count : new TreeMap<>(fileCounts).entrySet()) {
+            out.writeUTF(count.getKey());
+            out.writeLong(count.getValue());
+        }
+    }
+
+    @Override
+    public void readResults(DataInputStream in) throws IOException {
+        Map<String, Long> counts = new HashMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            counts.put(in.readUTF(), in.readLong());
+        }
+        fileCounts.putAll(counts);
+    }
+
     @Override
     public ByteArrayOutputStream generatePdfReport() throws PdfGenerationException {
         try {
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             TextColumnBuilder<String> pathCol = DynamicReports.col.column("Path", "path", DynamicReports.type.stringType())
                     .setStyle(DynamicReportStylesHelper.centeredStyle());
-            TextColumnBuilder<Integer> fileCountCol = DynamicReports.col.column("File Count", "file_count",
-                    DynamicReports.type.integerType()).setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<Long> fileCountCol = DynamicReports.col.column("File Count", "file_count",
+                    DynamicReports.type.longType()).setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<String> marginCol = DynamicReports.col.column("95% Interval", "margin",
+                    DynamicReports.type.stringType()).setStyle(DynamicReportStylesHelper.centeredStyle());
 
             DynamicReports.report()
                     .setColumnTitleStyle(DynamicReportStylesHelper.columnTitleStyle())
-                    .title(Components.text(String.format(reportTitleAsHtml, name, paths.toString(), desc)).
+                    .title(Components.text(String.format(reportTitleAsHtml, name, paths.toString(),
+                            (estimator == null) ? desc : desc + ". " + estimator.describe())).
                             setStyle(DynamicReportStylesHelper.styledMarkupStyle()))
                     .columns(//add columns
-                            pathCol,
-                            fileCountCol
+                            (estimator == null) ? new TextColumnBuilder<?>[]{pathCol, fileCountCol} :
+                                    new TextColumnBuilder<?>[]{pathCol, fileCountCol, marginCol}
                     )
                     .setDataSource(createDataSource())
                     .subtotalsAtPageFooter(
@@ -110,6 +198,11 @@ public class FileCountAnalyser extends TreeAnalyser {
      * @return data source to inject into PDF report
      */
     private JRDataSource createDataSource() {
+        if (estimator != null) {
+            DRDataSource dataSource = new DRDataSource("path", "file_count", "margin");
+            fileCounts.forEach((path, count) -> dataSource.add(path, count, estimator.formatMargin(path)));
+            return dataSource;
+        }
         DRDataSource dataSource = new DRDataSource("path", "file_count");
         fileCounts.forEach(dataSource::add);
         return dataSource;
@@ -3,6 +3,9 @@ package graph.analysis;
 import exceptions.AnalysisException;
 import exceptions.PdfGenerationException;
 import graph.FileTreeNode;
+import graph.MergeableTreeVisitor;
+import graph.ParallelTreeWalker;
+import graph.TreeWalker;
 import net.sf.dynamicreports.report.builder.DynamicReports;
 import net.sf.dynamicreports.report.builder.column.TextColumnBuilder;
 import net.sf.dynamicreports.report.builder.component.Components;
@@ -12,16 +15,22 @@ import utils.DynamicReportStylesHelper;
 
 import java.io.ByteArrayOutputStream;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by conor on 11/10/2014.
+ *
+ * Tree analyser listing the details of every file. Rows are collected as plain arrays and only turned into a
+ * report data source once the analysis is done, so rows from separately walked subtrees can be combined.
  */
-public class FileInfoAnalyser extends TreeAnalyser {
+public class FileInfoAnalyser extends TreeAnalyser implements MergeableTreeVisitor<FileInfoAnalyser> {
 
-    private DRDataSource dataSource;
+    private List<Object[]> rows = new ArrayList<>();
     private List<FileTreeNode> tree;
     private List<String> paths;
 
+    private String currentRootPath;
+
     private static final String name = "File Info Analysis";
     private static final String desc = "Provides information on files under the selected paths";
     private static final String reportTitleAsHtml = "Title: <b>%s</b>    Path: <i>%s</i>.<br/><br/> Description: <i> %s. </i><br/>";
@@ -50,22 +59,55 @@ public class FileInfoAnalyser extends TreeAnalyser {
 
     @Override
     public void doAnalyse() throws AnalysisException {
-        this.dataSource = new DRDataSource("path", "size", "type", "hidden", "root_path", "depth");
-        for (FileTreeNode t : tree) {
-            Queue<FileTreeNode> tq = new LinkedList<>();
-            tq.add(t);
-            while (!tq.isEmpty()) {
-                FileTreeNode n = tq.poll();
-                if (!n.isDirectory()) {
-                    dataSource.add(n.getPath().substring(t.getPath().length()), n.getFileSize() / 1024, n.getFileType(),
-                            n.isHidden(), t.getPath(), n.getDepth());
-                } else {
-                    n.getChildren().forEach(tq::add);
-                }
-            }
+        this.rows = new ArrayList<>();
+        TreeWalker.walk(tree, this, this::isCancelled);
+        checkCancelled();
+    }
+
+    @Override
+    public void doAnalyse(ForkJoinPool pool) throws AnalysisException {
+        this.rows = new ArrayList<>();
+        ParallelTreeWalker.walk(tree, this, pool, this::isCancelled);
+        checkCancelled();
+    }
+
+    @Override
+    public FileInfoAnalyser fork() {
+        FileInfoAnalyser partial = new FileInfoAnalyser(tree, paths);
+        partial.currentRootPath = currentRootPath;
+        return partial;
+    }
+
+    @Override
+    public void merge(FileInfoAnalyser partial) {
+        rows.addAll(partial.rows);
+    }
+
+    @Override
+    public void enterDirectory(FileTreeNode directory) {
+        if (directory.getParent() == null) {
+            currentRootPath = directory.getPath();
         }
     }
 
+    @Override
+    public void visitFile(FileTreeNode n) {
+        String rootPath = (n.getParent() == null) ? n.getPath() : currentRootPath;
+        rows.add(new Object[]{n.getPath().substring(rootPath.length()), n.getFileSize() / 1024, n.getFileType(),
+                n.isHidden(), rootPath, n.getDepth()});
+    }
+
+    @Override
+    public void exitDirectory(FileTreeNode directory) {
+        // Nothing to do on leaving a directory
+    }
+
+    private DRDataSource createDataSource() {
+        DRDataSource dataSource = new DRDataSource("path", "size", "type", "hidden", "root_path", "depth");
+        rows.forEach(dataSource::add);
+        return dataSource;
+    }
+
     @Override
     public ByteArrayOutputStream generatePdfReport() throws PdfGenerationException {
         try {
@@ -91,14 +133,14 @@ public class FileInfoAnalyser extends TreeAnalyser {
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             DynamicReports.report()
                     .setColumnTitleStyle(DynamicReportStylesHelper.columnTitleStyle())
-                    .title(Components.text(String.format(reportTitleAsHtml, name, paths, desc)).
+                    .title(Components.text(String.format(reportTitleAsHtml, name, paths, getReportDescription())).
                             setStyle(DynamicReportStylesHelper.styledMarkupStyle()))
                     .columns(//add columns
                             pathCol.setWidth(35), sizeCol.setWidth(5),
                             typeCol.setWidth(10), hiddenCol.setWidth(10),
                             rootPathCol.setWidth(35), depthCol.setWidth(5)
                     )
-                    .setDataSource(this.dataSource)
+                    .setDataSource(createDataSource())
                     .toPdf(outputStream);
             return outputStream;
         } catch (DRException e) {
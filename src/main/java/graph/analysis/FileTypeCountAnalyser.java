@@ -3,6 +3,10 @@ package graph.analysis;
 import exceptions.AnalysisException;
 import exceptions.PdfGenerationException;
 import graph.FileTreeNode;
+import graph.MergeableTreeVisitor;
+import graph.ParallelTreeWalker;
+import graph.TreeWalker;
+import graph.factory.ScanSample;
 import net.sf.dynamicreports.report.builder.DynamicReports;
 import net.sf.dynamicreports.report.builder.column.TextColumnBuilder;
 import net.sf.dynamicreports.report.builder.component.Components;
@@ -12,20 +16,28 @@ import net.sf.jasperreports.engine.JRDataSource;
 import utils.DynamicReportStylesHelper;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by conor on 07/09/2014.
  *
  * Tree analyser which, for a given filesystem path, counts the occurrence of each different type of file found.
- * This is then compiled into a table and other formats.
+ * This is then compiled into a table and other formats. Only the counts are kept, so this can be fed straight
+ * from a scan, and counts from separate subtrees can simply be added together. When the tree is only a sample,
+ * the counts are scaled up to estimates for the whole filesystem.
  */
-public class FileTypeCountAnalyser extends TreeAnalyser {
+public class FileTypeCountAnalyser extends TreeAnalyser implements MergeableTreeVisitor<FileTypeCountAnalyser> {
 
     private List<FileTreeNode> tree;
     private List<String> paths;
 
-    private final Map<String, Integer> fileTypeCounts = new HashMap<>();
+    private final TypeCounter fileTypeCounts = new TypeCounter();
+    // Set when the tree is a sample, in place of the exact counts
+    private SampleEstimator estimator;
     private static final String name = "File Type Count Analysis";
     private static final String desc = "Counts how many files of each type are in the given filesystem";
     private static final String reportTitleAsHtml = "Title: <b>%s</b>    Path: <i>%s</i>.<br/><br/> Description: <i> %s. </i><br/>";
@@ -54,41 +66,114 @@ public class FileTypeCountAnalyser extends TreeAnalyser {
         this.paths = paths;
     }
 
+    @Override
+    public void setSample(ScanSample sample) {
+        this.estimator = (sample == null) ? null : new SampleEstimator(sample);
+    }
+
+    @Override
+    public boolean scalesSample() {
+        return true;
+    }
+
     @Override
     public void doAnalyse() throws AnalysisException {
+        TreeWalker.walk(tree, this, this::isCancelled);
+        checkCancelled();
+    }
 
-        Queue<FileTreeNode> tq = new LinkedList<>();
-        tree.forEach(tq::add);
+    @Override
+    public void doAnalyse(ForkJoinPool pool) throws AnalysisException {
+        if (estimator != null) {
+            // Estimates follow the walk from one sampling unit to the next, so are not split up
+            doAnalyse();
+        } else {
+            ParallelTreeWalker.walk(tree, this, pool, this::isCancelled);
+            checkCancelled();
+        }
+    }
 
-        while (!tq.isEmpty()) {
-            FileTreeNode n = tq.poll();
-            if (!fileTypeCounts.containsKey(n.getFileType())) {
-                fileTypeCounts.put(n.getFileType(), 1);
-            } else {
-                fileTypeCounts.put(n.getFileType(), fileTypeCounts.get(n.getFileType()) + 1);
-            }
+    @Override
+    public FileTypeCountAnalyser fork() {
+        return new FileTypeCountAnalyser(tree, paths);
+    }
+
+    @Override
+    public void merge(FileTypeCountAnalyser partial) {
+        fileTypeCounts.addAll(partial.fileTypeCounts);
+    }
 
-            if (n.isDirectory()) { n.getChildren().forEach(tq::add); }
+    @Override
+    public void enterDirectory(FileTreeNode directory) {
+        count(directory);
+        if (estimator != null) {
+            estimator.enterDirectory(directory);
         }
     }
 
+    @Override
+    public void visitFile(FileTreeNode file) {
+        count(file);
+    }
+
+    @Override
+    public void exitDirectory(FileTreeNode directory) {
+        if (estimator != null) {
+            estimator.exitDirectory(directory);
+        }
+    }
+
+    private void count(FileTreeNode n) {
+        if (estimator != null) {
+            estimator.add(n.getFileType(), 1);
+        } else {
+            fileTypeCounts.increment(n.getFileType());
+        }
+    }
+
+    @Override
+    public void writeResults(DataOutputStream out) throws IOException {
+        Map<String, Long> counts = new TreeMap<>();
+        fileTypeCounts.forEach(counts::put);
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            out.writeUTF(count.getKey());
+            out.writeLong(count.getValue());
+        }
+    }
+
+    @Override
+    public void readResults(DataInputStream in) throws IOException {
+        TypeCounter counts = new TypeCounter();
+        for (int i = in.readInt(); i > 0; i--) {
+            counts.add(in.readUTF(), in.readLong());
+        }
+        fileTypeCounts.addAll(counts);
+    }
+
     @Override
     public ByteArrayOutputStream generatePdfReport() throws PdfGenerationException {
         try {
             TextColumnBuilder<String> fileTypeCol =
                     DynamicReports.col.column("File Type", "file_type", DynamicReports.type.stringType())
                         .setStyle(DynamicReportStylesHelper.centeredStyle());
-            TextColumnBuilder<Integer> fileCountCol =
-                    DynamicReports.col.column("File Count", "file_count", DynamicReports.type.integerType())
+            TextColumnBuilder<Long> fileCountCol =
+                    DynamicReports.col.column("File Count", "file_count", DynamicReports.type.longType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+
+            TextColumnBuilder<String> marginCol =
+                    DynamicReports.col.column("95% Interval", "margin", DynamicReports.type.stringType())
                             .setStyle(DynamicReportStylesHelper.centeredStyle());
 
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             DynamicReports.report()
                     .setColumnTitleStyle(DynamicReportStylesHelper.columnTitleStyle())
-                    .title(Components.text(String.format(reportTitleAsHtml, name, paths, desc)).
+                    .title(Components.text(String.format(reportTitleAsHtml, name, paths,
+                            (estimator == null) ? desc : desc + ". " + estimator.describe())).
                             setStyle(DynamicReportStylesHelper.styledMarkupStyle()))
                     .columns(//add columns
-                            fileTypeCol, fileCountCol
+                            (estimator == null) ? new TextColumnBuilder<?>[]{fileTypeCol, fileCountCol} :
+                                    new TextColumnBuilder<?>[]{fileTypeCol, fileCountCol, marginCol}
                     )
                     .setDataSource(createDataSource())
                     .summary(
@@ -110,6 +195,12 @@ public class FileTypeCountAnalyser extends TreeAnalyser {
      * @return data source to inject into PDF report
      */
     private JRDataSource createDataSource() {
+        if (estimator != null) {
+            DRDataSource dataSource = new DRDataSource("file_type", "file_count", "margin");
+            estimator.keys().forEach((type) -> dataSource.add(type, estimator.estimate(type),
+                    estimator.formatMargin(type)));
+            return dataSource;
+        }
         DRDataSource dataSource = new DRDataSource("file_type", "file_count");
         fileTypeCounts.forEach(dataSource::add);
         return dataSource;
@@ -0,0 +1,201 @@
+package graph.analysis;
+
+import exceptions.AnalysisException;
+import exceptions.PdfGenerationException;
+import graph.FileTreeNode;
+import graph.MergeableTreeVisitor;
+import graph.ParallelTreeWalker;
+import graph.TreeWalker;
+import net.sf.dynamicreports.report.builder.DynamicReports;
+import net.sf.dynamicreports.report.builder.column.TextColumnBuilder;
+import net.sf.dynamicreports.report.builder.component.Components;
+import net.sf.dynamicreports.report.datasource.DRDataSource;
+import net.sf.dynamicreports.report.exception.DRException;
+import net.sf.jasperreports.engine.JRDataSource;
+import utils.DynamicReportStylesHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tree analyser which finds what is taking up the most space: the largest files, and the largest directories by
+ * the total size of everything beneath them. Each is kept in a min-heap of at most LIMIT entries, so memory use
+ * does not grow with the size of the tree. Directory sizes come from the subtree summaries, so a single pass is
+ * enough.
+ */
+public class LargestFilesAnalyser extends TreeAnalyser implements MergeableTreeVisitor<LargestFilesAnalyser> {
+
+    static final int LIMIT = 25;
+
+    private List<FileTreeNode> tree;
+    private List<String> paths;
+
+    private final int limit;
+    private final PriorityQueue<Entry> largestFiles;
+    private final PriorityQueue<Entry> largestDirectories;
+
+    private static final String name = "Largest Files Analysis";
+    private static final String desc = "Lists the largest files, and the directories holding the most data, " +
+            "in the given filesystem";
+    private static final String reportTitleAsHtml = "Title: <b>%s</b>    Path: <i>%s</i>.<br/><br/> Description: <i> %s. </i><br/>";
+
+    public LargestFilesAnalyser(List<FileTreeNode> tree, List<String> paths) {
+        this(tree, paths, LIMIT);
+    }
+
+    /**
+     *
+     * @param tree the tree to analyse
+     * @param paths the paths the tree represents
+     * @param limit how many files and how many directories to keep
+     */
+    public LargestFilesAnalyser(List<FileTreeNode> tree, List<String> paths, int limit) {
+        super(tree, paths);
+        this.limit = limit;
+        this.largestFiles = new PriorityQueue<>(limit + 1);
+        this.largestDirectories = new PriorityQueue<>(limit + 1);
+    }
+
+    @Override
+    public String getAnalysisName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return desc;
+    }
+
+    @Override
+    public void setTree(List<FileTreeNode> tree) {
+        this.tree = tree;
+    }
+
+    @Override
+    public void setPaths(List<String> paths) {
+        this.paths = paths;
+    }
+
+    @Override
+    public void doAnalyse() throws AnalysisException {
+        TreeWalker.walk(tree, this, this::isCancelled);
+        checkCancelled();
+    }
+
+    @Override
+    public void doAnalyse(ForkJoinPool pool) throws AnalysisException {
+        ParallelTreeWalker.walk(tree, this, pool, this::isCancelled);
+        checkCancelled();
+    }
+
+    @Override
+    public void enterDirectory(FileTreeNode directory) {
+        // Directories are measured once everything beneath them has been seen
+    }
+
+    @Override
+    public void visitFile(FileTreeNode file) {
+        offer(largestFiles, file, file.getFileSize());
+    }
+
+    @Override
+    public void exitDirectory(FileTreeNode directory) {
+        offer(largestDirectories, directory, directory.getSubtreeSummary().getTotalBytes());
+    }
+
+    @Override
+    public LargestFilesAnalyser fork() {
+        return new LargestFilesAnalyser(tree, paths, limit);
+    }
+
+    @Override
+    public void merge(LargestFilesAnalyser partial) {
+        partial.largestFiles.forEach((e) -> offer(largestFiles, e));
+        partial.largestDirectories.forEach((e) -> offer(largestDirectories, e));
+    }
+
+    /**
+     * Keep the node if it is among the largest seen. The path is only built for nodes which make the cut.
+     */
+    private void offer(PriorityQueue<Entry> heap, FileTreeNode n, long bytes) {
+        if (heap.size() < limit || bytes > heap.peek().bytes) {
+            offer(heap, new Entry(n.getPath(), bytes));
+        }
+    }
+
+    private void offer(PriorityQueue<Entry> heap, Entry entry) {
+        if (heap.size() < limit) {
+            heap.add(entry);
+        } else if (entry.bytes > heap.peek().bytes) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    @Override
+    public ByteArrayOutputStream generatePdfReport() throws PdfGenerationException {
+        try {
+            TextColumnBuilder<String> kindCol =
+                    DynamicReports.col.column("Kind", "kind", DynamicReports.type.stringType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<String> pathCol =
+                    DynamicReports.col.column("Path", "path", DynamicReports.type.stringType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<Long> sizeCol =
+                    DynamicReports.col.column("Size (kb)", "size", DynamicReports.type.longType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            DynamicReports.report()
+                    .setColumnTitleStyle(DynamicReportStylesHelper.columnTitleStyle())
+                    .title(Components.text(String.format(reportTitleAsHtml, name, paths, getReportDescription())).
+                            setStyle(DynamicReportStylesHelper.styledMarkupStyle()))
+                    .columns(//add columns
+                            kindCol.setWidth(10), pathCol.setWidth(70), sizeCol.setWidth(20)
+                    )
+                    .setDataSource(createDataSource())
+                    .toPdf(outputStream);
+            return outputStream;
+        } catch (DRException e) {
+            System.err.println("Error generating PDF" + e.getMessage());
+            throw new PdfGenerationException("Error generating PDF with DynamicReports", e);
+        }
+    }
+
+    /**
+     * Generate the data into the PDF report being generated, largest first.
+     * @return data source to inject into PDF report
+     */
+    private JRDataSource createDataSource() {
+        DRDataSource dataSource = new DRDataSource("kind", "path", "size");
+        largestFirst(largestDirectories).forEach((e) -> dataSource.add("Directory", e.path, e.bytes / 1024));
+        largestFirst(largestFiles).forEach((e) -> dataSource.add("File", e.path, e.bytes / 1024));
+        return dataSource;
+    }
+
+    private static List<Entry> largestFirst(PriorityQueue<Entry> heap) {
+        List<Entry> sorted = new ArrayList<>(heap);
+        sorted.sort(Collections.reverseOrder());
+        return sorted;
+    }
+
+    /**
+     * A file or directory which made the cut, kept as just its path and size so no nodes are held on to.
+     */
+    private static class Entry implements Comparable<Entry> {
+
+        private final String path;
+        private final long bytes;
+
+        Entry(String path, long bytes) {
+            this.path = path;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return Long.compare(bytes, o.bytes);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package graph.analysis;
+
+/**
+ * Histogram of non-negative values over fixed, log scaled buckets, in the style of HdrHistogram. Each doubling of
+ * the value range is split into SUB_BUCKETS equal buckets, so any value is placed to within 1/SUB_BUCKETS of
+ * itself, from single bytes up to Long.MAX_VALUE, in a fixed BUCKETS counters. Memory use never grows, and two
+ * histograms are merged by adding their counters.
+ *
+ * Alongside the count of values in each bucket a weight is summed, e.g. the bytes of the files counted.
+ */
+class LogHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private final long[] weights = new long[BUCKETS];
+    private long totalCount;
+    private long totalWeight;
+
+    /**
+     * Count a value.
+     * @param value the value, negative values being counted as zero
+     * @param weight the weight to add to the value's bucket
+     */
+    void record(long value, long weight) {
+        int bucket = bucketOf(Math.max(0, value));
+        counts[bucket]++;
+        weights[bucket] += weight;
+        totalCount++;
+        totalWeight += weight;
+    }
+
+    /**
+     * Add every count and weight of another histogram into this one.
+     * @param other the histogram to add
+     */
+    void addAll(LogHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+            weights[i] += other.weights[i];
+        }
+        totalCount += other.totalCount;
+        totalWeight += other.totalWeight;
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * The value below which the given percentage of counted values fall, to within the width of its bucket.
+     * @param percentile the percentile, from 0 to 100
+     * @return the highest value in the bucket holding that percentile, 0 if nothing has been counted
+     */
+    long valueAtPercentile(double percentile) {
+        long target = Math.max(1, (long) Math.ceil(totalCount * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return upperBound(i) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Pass the count and weight of each power of two range, [2^n, 2^(n+1)), with zero as a range of its own, to
+     * the consumer. Ranges are given in increasing order, starting from the first holding any values and ending
+     * at the last.
+     * @param consumer receives each range
+     */
+    void forEachPowerOfTwo(RangeConsumer consumer) {
+        int first = BUCKETS;
+        int last = -1;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0) {
+                first = Math.min(first, i);
+                last = i;
+            }
+        }
+        if (last < 0) {
+            return;
+        }
+
+        int range = rangeOf(first);
+        long count = 0;
+        long weight = 0;
+        for (int i = first; i <= last; i++) {
+            if (rangeOf(i) != range) {
+                consumer.accept(rangeStart(range), rangeStart(range + 1), count, weight);
+                range = rangeOf(i);
+                count = 0;
+                weight = 0;
+            }
+            count += counts[i];
+            weight += weights[i];
+        }
+        consumer.accept(rangeStart(range), rangeStart(range + 1), count, weight);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long upperBound(int bucket) {
+        return (bucket + 1 == BUCKETS) ? Long.MAX_VALUE : lowerBound(bucket + 1);
+    }
+
+    // Range 0 holds only zero, range n + 1 holds [2^n, 2^(n+1))
+    private static int rangeOf(int bucket) {
+        long lower = lowerBound(bucket);
+        return (lower == 0) ? 0 : 64 - Long.numberOfLeadingZeros(lower);
+    }
+
+    private static long rangeStart(int range) {
+        return (range == 0) ? 0 : (range == 64) ? Long.MAX_VALUE : 1L << (range - 1);
+    }
+
+    /**
+     * Receives one range of values from forEachPowerOfTwo.
+     */
+    interface RangeConsumer {
+        /**
+         * @param from the lowest value in the range
+         * @param to the value just past the range
+         * @param count the number of values counted in the range
+         * @param weight the total weight of those values
+         */
+        void accept(long from, long to, long count, long weight);
+    }
+}
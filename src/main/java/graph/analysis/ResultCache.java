@@ -0,0 +1,208 @@
+package graph.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the results and rendered report of each analyser run on local disk, so a rerun over a tree which has not
+ * changed can skip both the analysis and the rendering. Entries are keyed by the analyser's class, its config and
+ * a TreeFingerprint of the tree it analysed, so any change beneath the roots (a file added, resized or touched)
+ * leads to a new key rather than a stale result. Analysers whose results depend on anything else are not
+ * cacheable (see TreeAnalyser.isCacheable) and are always run.
+ *
+ * Each entry is a file of its own. Its modified time records when it was last used, so the cache is evicted least
+ * recently used first, across runs, whenever it grows past its size cap. Entries are written to a temporary file
+ * and moved into place, so a reader never sees half an entry.
+ */
+public class ResultCache {
+
+    static final int FORMAT = 1;
+    private static final int MAGIC = 0x52434331;
+    private static final String SUFFIX = ".result";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     *
+     * @param directory the directory to keep entries in, created if need be
+     * @param maxBytes the size the entries may take up in total
+     * @throws IOException if the directory cannot be created
+     */
+    public ResultCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The key for an analyser's results over a given tree.
+     * @param analyser the analyser
+     * @param config the analyser's config, in a stable form
+     * @param treeFingerprint fingerprint of the tree analysed
+     * @return the key, as hex digits
+     */
+    public static String key(TreeAnalyser analyser, String config, String treeFingerprint) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String identity = FORMAT + "\n" + analyser.getClass().getName() + "\n" + config + "\n" + treeFingerprint;
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest(identity.getBytes(StandardCharsets.UTF_8))) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Restore an analyser's results from the cache, marking the entry as recently used.
+     * @param key the entry's key
+     * @param analyser the analyser to restore the results into
+     * @return the cached report, or null if there is no usable entry
+     */
+    public ByteArrayOutputStream load(String key, TreeAnalyser analyser) {
+        Path entry = directory.resolve(key + SUFFIX);
+        byte[] results;
+        ByteArrayOutputStream pdf;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a cache entry");
+            }
+            results = new byte[in.readInt()];
+            in.readFully(results);
+            byte[] report = new byte[in.readInt()];
+            in.readFully(report);
+            pdf = new ByteArrayOutputStream(report.length);
+            pdf.write(report);
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return null;
+        } catch (IOException e) {
+            System.err.println("Could not read cached result: " + entry + ", analysing instead. " + e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            // Read in full first, so a damaged entry is caught before the analyser is touched
+            analyser.readResults(new DataInputStream(new ByteArrayInputStream(results)));
+        } catch (IOException e) {
+            System.err.println("Could not restore cached result: " + entry + ", analysing instead. " +
+                    e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // Evicted since it was read, which makes no difference to this run
+        } catch (IOException e) {
+            System.err.println("Could not mark cached result as used: " + entry + ". " + e.getMessage());
+        }
+        hits.incrementAndGet();
+        return pdf;
+    }
+
+    /**
+     * Store an analyser's results and report, then evict the least recently used entries if over the size cap.
+     * @param key the entry's key
+     * @param analyser the analyser, whose analysis is complete
+     * @param pdf its report
+     */
+    public void store(String key, TreeAnalyser analyser, ByteArrayOutputStream pdf) {
+        Path temporary = null;
+        try {
+            ByteArrayOutputStream results = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(results)) {
+                analyser.writeResults(out);
+            }
+
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(results.size());
+                results.writeTo(out);
+                out.writeInt(pdf.size());
+                pdf.writeTo(out);
+            }
+            Files.move(temporary, directory.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+        } catch (IOException e) {
+            System.err.println("Could not cache the result of: " + analyser.getAnalysisName() + ". " +
+                    e.getMessage());
+        } finally {
+            deleteQuietly(temporary);
+        }
+        evict();
+    }
+
+    /**
+     * Delete entries, least recently used first, until the cache fits under its size cap.
+     */
+    private synchronized void evict() {
+        Map<Path, FileTime> lastUsed = new HashMap<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : stream) {
+                lastUsed.put(entry, Files.getLastModifiedTime(entry));
+                total += Files.size(entry);
+            }
+            List<Path> entries = new ArrayList<>(lastUsed.keySet());
+            entries.sort(Comparator.comparing(lastUsed::get));
+            for (int i = 0; i < entries.size() && total > maxBytes; i++) {
+                total -= Files.size(entries.get(i));
+                Files.deleteIfExists(entries.get(i));
+            }
+        } catch (IOException e) {
+            System.err.println("Could not evict from the result cache: " + e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path != null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Could not delete: " + path + ". " + e.getMessage());
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Result cache: %d hits, %d misses.", getHits(), getMisses());
+    }
+}
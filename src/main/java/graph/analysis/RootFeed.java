@@ -0,0 +1,62 @@
+package graph.analysis;
+
+import graph.FileTreeNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Passes trees from a scan to the analysers as each one is complete, so analysis of one root can start while
+ * others are still being scanned. Every analyser reads the whole feed, in the order the trees were completed, at
+ * its own pace; trees are kept until the feed is dropped.
+ */
+public class RootFeed implements Consumer<FileTreeNode> {
+
+    private final List<FileTreeNode> roots = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * Add a complete tree to the feed.
+     * @param root the root of the tree
+     */
+    @Override
+    public synchronized void accept(FileTreeNode root) {
+        roots.add(root);
+        notifyAll();
+    }
+
+    /**
+     * Mark the feed as complete, once the scan has finished, whether or not it succeeded.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Wait for the tree at the given position in the feed.
+     * @param index how many trees have been read from the feed so far
+     * @return the next tree, or null once the feed is closed and there are no more
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized FileTreeNode await(int index) throws InterruptedException {
+        while (index >= roots.size() && !closed) {
+            wait();
+        }
+        return (index < roots.size()) ? roots.get(index) : null;
+    }
+
+    /**
+     * Wait for the feed to close.
+     * @return every tree in the feed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized List<FileTreeNode> awaitAll() throws InterruptedException {
+        while (!closed) {
+            wait();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(roots));
+    }
+}
@@ -0,0 +1,178 @@
+package graph.analysis;
+
+import graph.FileTreeNode;
+import graph.factory.SampleMode;
+import graph.factory.ScanSample;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Scales totals counted over a sampled tree up to estimates for the whole tree, with confidence intervals.
+ * Analysers pass it each directory as they enter and exit it, so it knows which sampling unit (if any) the
+ * values they add belong to, and the weight to scale them by.
+ *
+ * Values found outside the picked units were scanned in full and are counted as they are. Each picked unit
+ * contributes its own total times its weight, and the spread of those contributions gives the variance:
+ * - random picks are independent coin flips with probability p, for which the variance is (1 - p) * sum(z_i^2)
+ * - stratified picks are drawn separately from each stratum, the subdirectories of one parent, so the variance is
+ *   summed over the strata. A stratum of n_h units contributing z_i, summing to T_h, is treated as drawn with
+ *   replacement, giving (n_h * sum(z_i^2) - T_h^2) / (n_h - 1), which overstates it a little. Strata of a single
+ *   unit have no spread of their own, so they are collapsed into one stratum together, which errs further on the
+ *   side of wider intervals.
+ *
+ * Not thread safe; the tree must be walked in order on a single thread.
+ */
+class SampleEstimator {
+
+    // Half width of a 95% interval, in standard errors
+    private static final double Z_95 = 1.96;
+
+    private static final int EXACT = 0;
+    private static final int SAMPLED = 1;
+    private static final int UNIT = 2;
+
+    // Sums over the units of one stratum
+    private static final int SUM = 0;
+    private static final int SQUARES = 1;
+
+    private final ScanSample sample;
+    private final Map<String, double[]> totals = new HashMap<>();
+    private final Map<String, Map<FileTreeNode, double[]>> strata = new HashMap<>();
+    private final Map<FileTreeNode, Integer> unitsPerStratum = new HashMap<>();
+    private final List<String> addedInUnit = new ArrayList<>();
+    private FileTreeNode unit;
+    private double weight = 1;
+
+    SampleEstimator(ScanSample sample) {
+        this.sample = sample;
+    }
+
+    void enterDirectory(FileTreeNode directory) {
+        if (unit == null && sample.isUnit(directory)) {
+            unit = directory;
+            weight = sample.getWeight(directory);
+            unitsPerStratum.merge(directory.getParent(), 1, Integer::sum);
+        }
+    }
+
+    void exitDirectory(FileTreeNode directory) {
+        if (directory != unit) {
+            return;
+        }
+        for (String key : addedInUnit) {
+            double[] total = totals.get(key);
+            double z = total[UNIT] * weight;
+            total[SAMPLED] += z;
+            total[UNIT] = 0;
+            double[] stratum = strata.computeIfAbsent(key, (k) -> new HashMap<>())
+                    .computeIfAbsent(unit.getParent(), (d) -> new double[2]);
+            stratum[SUM] += z;
+            stratum[SQUARES] += z * z;
+        }
+        addedInUnit.clear();
+        unit = null;
+        weight = 1;
+    }
+
+    /**
+     * Count a value found at the current point of the walk.
+     * @param key what the value is counted towards
+     * @param value the value, as found in the sample
+     */
+    void add(String key, long value) {
+        double[] total = totals.computeIfAbsent(key, (k) -> new double[3]);
+        if (unit == null) {
+            total[EXACT] += value;
+            return;
+        }
+        if (total[UNIT] == 0) {
+            addedInUnit.add(key);
+        }
+        total[UNIT] += value;
+    }
+
+    Set<String> keys() {
+        return totals.keySet();
+    }
+
+    /**
+     * @param key what was counted
+     * @return the estimated total for the whole tree
+     */
+    long estimate(String key) {
+        double[] total = totals.get(key);
+        return (total == null) ? 0 : Math.round(total[EXACT] + total[SAMPLED]);
+    }
+
+    /**
+     * @param key what was counted
+     * @return the half width of the 95% confidence interval around the estimate, NaN if there were too few
+     * units to tell
+     */
+    double margin(String key) {
+        long n = sample.getUnitCount();
+        double[] total = totals.get(key);
+        if (total == null || total[SAMPLED] == 0) {
+            return 0;
+        }
+        if (n < 2) {
+            return Double.NaN;
+        }
+        Map<FileTreeNode, double[]> sums = strata.get(key);
+        double variance = (sample.getMode() == SampleMode.RANDOM) ?
+                (1 - sample.getRate()) * sums.values().stream().mapToDouble((h) -> h[SQUARES]).sum() :
+                stratifiedVariance(sums);
+        return Z_95 * Math.sqrt(Math.max(0, variance));
+    }
+
+    /**
+     * Sum the variance of each stratum's total, collapsing the strata of a single unit into one.
+     * @param sums the sums of each stratum any value was found in; strata missing from it only found zeros
+     */
+    private double stratifiedVariance(Map<FileTreeNode, double[]> sums) {
+        double variance = 0;
+        double[] collapsed = new double[2];
+        for (Map.Entry<FileTreeNode, double[]> e : sums.entrySet()) {
+            int units = unitsPerStratum.get(e.getKey());
+            double[] h = e.getValue();
+            if (units > 1) {
+                variance += variance(units, h);
+            } else {
+                collapsed[SUM] += h[SUM];
+                collapsed[SQUARES] += h[SQUARES];
+            }
+        }
+        long singles = unitsPerStratum.values().stream().filter((units) -> units == 1).count();
+        // A lone unit's own contribution stands in for the spread it cannot show
+        return variance + ((singles > 1) ? variance(singles, collapsed) : collapsed[SQUARES]);
+    }
+
+    private static double variance(long n, double[] h) {
+        return (n * h[SQUARES] - h[SUM] * h[SUM]) / (n - 1);
+    }
+
+    /**
+     * @param key what was counted
+     * @return the margin as shown in reports, e.g. "+/- 120 (1.5%)"
+     */
+    String formatMargin(String key) {
+        double margin = margin(key);
+        if (Double.isNaN(margin)) {
+            return "unknown";
+        }
+        long estimate = estimate(key);
+        return (estimate == 0) ? "+/- " + Math.round(margin) :
+                String.format("+/- %d (%.1f%%)", Math.round(margin), 100 * margin / estimate);
+    }
+
+    /**
+     * @return a note describing the sample, for report titles
+     */
+    String describe() {
+        return sample + ". Counts are estimates; +/- gives a 95% confidence interval";
+    }
+}
@@ -0,0 +1,200 @@
+package graph.analysis;
+
+import exceptions.AnalysisException;
+import exceptions.PdfGenerationException;
+import graph.FileTreeNode;
+import graph.MergeableTreeVisitor;
+import graph.ParallelTreeWalker;
+import graph.TreeWalker;
+import net.sf.dynamicreports.report.builder.DynamicReports;
+import net.sf.dynamicreports.report.builder.column.TextColumnBuilder;
+import net.sf.dynamicreports.report.builder.component.Components;
+import net.sf.dynamicreports.report.datasource.DRDataSource;
+import net.sf.dynamicreports.report.exception.DRException;
+import net.sf.jasperreports.engine.JRDataSource;
+import utils.DynamicReportStylesHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tree analyser giving the distribution of file sizes, and of bytes by age, for planning which data belongs on
+ * which storage. Both are kept as fixed log scaled histograms (see LogHistogram), so memory use is constant
+ * whatever the size of the tree, and histograms from separate subtrees are simply added together.
+ */
+public class SizeAgeHistogramAnalyser extends TreeAnalyser
+        implements MergeableTreeVisitor<SizeAgeHistogramAnalyser> {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final String[] UNITS = {"B", "KB", "MB", "GB", "TB", "PB", "EB"};
+
+    private List<FileTreeNode> tree;
+    private List<String> paths;
+
+    private final long now;
+    private final LogHistogram sizes = new LogHistogram();
+    private final LogHistogram ages = new LogHistogram();
+
+    private static final String name = "File Size & Age Analysis";
+    private static final String desc = "Shows how file sizes are spread, and how much data was last modified how " +
+            "long ago, in the given filesystem";
+    private static final String reportTitleAsHtml = "Title: <b>%s</b>    Path: <i>%s</i>.<br/><br/> Description: <i> %s. </i><br/>" +
+            "%d files, %s in total. File size p50: <b>%s</b>, p90: <b>%s</b>, p99: <b>%s</b>.<br/>";
+
+    public SizeAgeHistogramAnalyser(List<FileTreeNode> tree, List<String> paths) {
+        this(tree, paths, System.currentTimeMillis());
+    }
+
+    private SizeAgeHistogramAnalyser(List<FileTreeNode> tree, List<String> paths, long now) {
+        super(tree, paths);
+        this.now = now;
+    }
+
+    @Override
+    public String getAnalysisName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return desc;
+    }
+
+    @Override
+    public void setTree(List<FileTreeNode> tree) {
+        this.tree = tree;
+    }
+
+    @Override
+    public void setPaths(List<String> paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * Ages are measured from when the analyser was created, so an unchanged tree gives different results as time
+     * goes on.
+     * @return false
+     */
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+
+    @Override
+    public void doAnalyse() throws AnalysisException {
+        TreeWalker.walk(tree, this, this::isCancelled);
+        checkCancelled();
+    }
+
+    @Override
+    public void doAnalyse(ForkJoinPool pool) throws AnalysisException {
+        ParallelTreeWalker.walk(tree, this, pool, this::isCancelled);
+        checkCancelled();
+    }
+
+    @Override
+    public void enterDirectory(FileTreeNode directory) {
+        // Nothing to do on entering a directory
+    }
+
+    @Override
+    public void visitFile(FileTreeNode file) {
+        sizes.record(file.getFileSize(), file.getFileSize());
+        ages.record((now - file.getLastModified()) / DAY_MILLIS, file.getFileSize());
+    }
+
+    @Override
+    public void exitDirectory(FileTreeNode directory) {
+        // Nothing to do on leaving a directory
+    }
+
+    @Override
+    public SizeAgeHistogramAnalyser fork() {
+        return new SizeAgeHistogramAnalyser(tree, paths, now);
+    }
+
+    @Override
+    public void merge(SizeAgeHistogramAnalyser partial) {
+        sizes.addAll(partial.sizes);
+        ages.addAll(partial.ages);
+    }
+
+    @Override
+    public ByteArrayOutputStream generatePdfReport() throws PdfGenerationException {
+        try {
+            TextColumnBuilder<String> histogramCol =
+                    DynamicReports.col.column("Histogram", "histogram", DynamicReports.type.stringType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<String> bucketCol =
+                    DynamicReports.col.column("Range", "bucket", DynamicReports.type.stringType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<Long> filesCol =
+                    DynamicReports.col.column("Files", "files", DynamicReports.type.longType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<Long> sizeCol =
+                    DynamicReports.col.column("Size (kb)", "size", DynamicReports.type.longType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            DynamicReports.report()
+                    .setColumnTitleStyle(DynamicReportStylesHelper.columnTitleStyle())
+                    .title(Components.text(String.format(reportTitleAsHtml, name, paths, getReportDescription(),
+                            sizes.getTotalCount(), formatBytes(sizes.getTotalWeight()),
+                            formatBytes(sizes.valueAtPercentile(50)),
+                            formatBytes(sizes.valueAtPercentile(90)), formatBytes(sizes.valueAtPercentile(99)))).
+                            setStyle(DynamicReportStylesHelper.styledMarkupStyle()))
+                    .columns(//add columns
+                            histogramCol, bucketCol, filesCol, sizeCol
+                    )
+                    .setDataSource(createDataSource(true, true))
+                    .summary(
+                            DynamicReports.cht.barChart()
+                                    .setTitle("Files by size")
+                                    .setStyle(DynamicReportStylesHelper.boldStyle())
+                                    .setDataSource(createDataSource(true, false))
+                                    .setCategory("bucket", String.class)
+                                    .series(DynamicReports.cht.serie("files", Long.class).setLabel("Files")),
+                            DynamicReports.cht.barChart()
+                                    .setTitle("Data by days since last modified")
+                                    .setStyle(DynamicReportStylesHelper.boldStyle())
+                                    .setDataSource(createDataSource(false, true))
+                                    .setCategory("bucket", String.class)
+                                    .series(DynamicReports.cht.serie("size", Long.class).setLabel("Size (kb)")))
+                    .toPdf(outputStream);
+            return outputStream;
+        } catch (DRException e) {
+            System.err.println("Error generating PDF" + e.getMessage());
+            throw new PdfGenerationException("Error generating PDF with DynamicReports", e);
+        }
+    }
+
+    /**
+     * Generate the data into the PDF report being generated, one row per power of two range.
+     * @param withSizes whether to include the file size histogram
+     * @param withAges whether to include the age histogram
+     * @return data source to inject into PDF report
+     */
+    private JRDataSource createDataSource(boolean withSizes, boolean withAges) {
+        DRDataSource dataSource = new DRDataSource("histogram", "bucket", "files", "size");
+        if (withSizes) {
+            sizes.forEachPowerOfTwo((from, to, count, bytes) -> dataSource.add("File size",
+                    formatBytes(from) + " - " + formatBytes(to), count, bytes / 1024));
+        }
+        if (withAges) {
+            ages.forEachPowerOfTwo((from, to, count, bytes) -> dataSource.add("Days since modified",
+                    (to - from <= 1) ? String.valueOf(from) : from + " - " + (to - 1), count, bytes / 1024));
+        }
+        return dataSource;
+    }
+
+    private static String formatBytes(long bytes) {
+        int unit = 0;
+        double value = bytes;
+        while (value >= 1024 && unit < UNITS.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return (unit == 0) ? bytes + " B" : String.format("%.1f %s", value, UNITS[unit]);
+    }
+}
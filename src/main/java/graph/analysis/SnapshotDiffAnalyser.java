@@ -0,0 +1,243 @@
+package graph.analysis;
+
+import exceptions.AnalysisException;
+import exceptions.PdfGenerationException;
+import graph.FileTreeNode;
+import graph.snapshot.MappedTreeSnapshot;
+import graph.snapshot.SnapshotDiff;
+import net.sf.dynamicreports.report.builder.DynamicReports;
+import net.sf.dynamicreports.report.builder.column.TextColumnBuilder;
+import net.sf.dynamicreports.report.builder.component.Components;
+import net.sf.dynamicreports.report.datasource.DRDataSource;
+import net.sf.dynamicreports.report.exception.DRException;
+import net.sf.jasperreports.engine.JRDataSource;
+import utils.DynamicReportStylesHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Analyser reporting what changed between two snapshots of the same trees: how many files were added, removed
+ * and resized, and the biggest of each along with the directories which grew or shrank the most. The comparison
+ * is a streaming merge of the two snapshot files (see SnapshotDiff), and only the LIMIT largest changes of each
+ * kind are kept, so memory use does not grow with the number of files compared.
+ *
+ * The tree this analyser is given is the newer snapshot's; the comparison reads both snapshot files directly.
+ */
+public class SnapshotDiffAnalyser extends TreeAnalyser implements SnapshotDiff.Listener {
+
+    static final int LIMIT = 25;
+
+    private List<FileTreeNode> tree;
+    private List<String> paths;
+
+    private final SnapshotDiff diff;
+    private final MappedTreeSnapshot older;
+    private final MappedTreeSnapshot newer;
+
+    private long filesAdded;
+    private long bytesAdded;
+    private long filesRemoved;
+    private long bytesRemoved;
+    private long filesResized;
+    private long bytesResized;
+
+    private final PriorityQueue<Change> added = new PriorityQueue<>(LIMIT + 1);
+    private final PriorityQueue<Change> removed = new PriorityQueue<>(LIMIT + 1);
+    private final PriorityQueue<Change> resized = new PriorityQueue<>(LIMIT + 1);
+    private final PriorityQueue<Change> directories = new PriorityQueue<>(LIMIT + 1);
+
+    private static final String name = "Snapshot Comparison";
+    private static final String desc = "Lists the files added, removed and resized since an earlier snapshot, " +
+            "and the directories which grew or shrank the most";
+    private static final String reportTitleAsHtml = "Title: <b>%s</b>    Path: <i>%s</i>.<br/><br/> Description: <i> %s. </i><br/><br/>" +
+            "Files added: <b>%d</b> (%d kb), removed: <b>%d</b> (%d kb), resized: <b>%d</b> (%+d kb). " +
+            "Net change: <b>%+d kb</b>.<br/>";
+
+    /**
+     *
+     * @param older the earlier snapshot
+     * @param newer the later snapshot
+     */
+    public SnapshotDiffAnalyser(MappedTreeSnapshot older, MappedTreeSnapshot newer) {
+        super(newer.getRoots(), newer.getRoots().stream().map(FileTreeNode::getPath).collect(Collectors.toList()));
+        this.diff = new SnapshotDiff(older, newer);
+        this.older = older;
+        this.newer = newer;
+    }
+
+    @Override
+    public String getAnalysisName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return desc;
+    }
+
+    @Override
+    public void setTree(List<FileTreeNode> tree) {
+        this.tree = tree;
+    }
+
+    @Override
+    public void setPaths(List<String> paths) {
+        this.paths = paths;
+    }
+
+    @Override
+    public void doAnalyse() throws AnalysisException {
+        diff.compare(this, this::isCancelled);
+        checkCancelled();
+    }
+
+    @Override
+    public void fileAdded(int node) {
+        long bytes = newer.getFileSize(node);
+        filesAdded++;
+        bytesAdded += bytes;
+        offer(added, SnapshotDiff.NO_NODE, node, 0, bytes);
+    }
+
+    @Override
+    public void fileRemoved(int node) {
+        long bytes = older.getFileSize(node);
+        filesRemoved++;
+        bytesRemoved += bytes;
+        offer(removed, node, SnapshotDiff.NO_NODE, bytes, 0);
+    }
+
+    @Override
+    public void fileResized(int olderNode, int newerNode) {
+        long before = older.getFileSize(olderNode);
+        long after = newer.getFileSize(newerNode);
+        filesResized++;
+        bytesResized += after - before;
+        offer(resized, olderNode, newerNode, before, after);
+    }
+
+    @Override
+    public void directoryChanged(int olderNode, int newerNode, long delta) {
+        long before = (olderNode == SnapshotDiff.NO_NODE) ? 0 : older.getSubtreeSummary(olderNode).getTotalBytes();
+        offer(directories, olderNode, newerNode, before, before + delta);
+    }
+
+    /**
+     * Keep the change if it is among the largest of its kind. The path is only built for changes which make the
+     * cut.
+     */
+    private void offer(PriorityQueue<Change> heap, int olderNode, int newerNode, long before, long after) {
+        long magnitude = Math.abs(after - before);
+        if (heap.size() == LIMIT && magnitude <= heap.peek().magnitude()) {
+            return;
+        }
+        String path = (newerNode != SnapshotDiff.NO_NODE) ? newer.getPath(newerNode) : older.getPath(olderNode);
+        heap.add(new Change(path, before, after));
+        if (heap.size() > LIMIT) {
+            heap.poll();
+        }
+    }
+
+    /**
+     * A one line summary of the changes found.
+     * @return the summary
+     */
+    public String getSummary() {
+        return String.format("%d files added (%d kb), %d removed (%d kb), %d resized (%+d kb). Net change: %+d kb.",
+                filesAdded, bytesAdded / 1024, filesRemoved, bytesRemoved / 1024, filesResized,
+                bytesResized / 1024, getNetChange() / 1024);
+    }
+
+    private long getNetChange() {
+        return bytesAdded - bytesRemoved + bytesResized;
+    }
+
+    @Override
+    public ByteArrayOutputStream generatePdfReport() throws PdfGenerationException {
+        try {
+            TextColumnBuilder<String> changeCol =
+                    DynamicReports.col.column("Change", "change", DynamicReports.type.stringType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<String> pathCol =
+                    DynamicReports.col.column("Path", "path", DynamicReports.type.stringType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<Long> beforeCol =
+                    DynamicReports.col.column("Before (kb)", "before", DynamicReports.type.longType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<Long> afterCol =
+                    DynamicReports.col.column("After (kb)", "after", DynamicReports.type.longType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+            TextColumnBuilder<Long> deltaCol =
+                    DynamicReports.col.column("Delta (kb)", "delta", DynamicReports.type.longType())
+                            .setStyle(DynamicReportStylesHelper.centeredStyle());
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            DynamicReports.report()
+                    .setColumnTitleStyle(DynamicReportStylesHelper.columnTitleStyle())
+                    .title(Components.text(String.format(reportTitleAsHtml, name, paths, desc, filesAdded,
+                            bytesAdded / 1024, filesRemoved, bytesRemoved / 1024, filesResized,
+                            bytesResized / 1024, getNetChange() / 1024)).
+                            setStyle(DynamicReportStylesHelper.styledMarkupStyle()))
+                    .columns(//add columns
+                            changeCol.setWidth(12), pathCol.setWidth(52), beforeCol.setWidth(12),
+                            afterCol.setWidth(12), deltaCol.setWidth(12)
+                    )
+                    .setDataSource(createDataSource())
+                    .toPdf(outputStream);
+            return outputStream;
+        } catch (DRException e) {
+            System.err.println("Error generating PDF" + e.getMessage());
+            throw new PdfGenerationException("Error generating PDF with DynamicReports", e);
+        }
+    }
+
+    /**
+     * Generate the data into the PDF report being generated, largest change first within each kind.
+     * @return data source to inject into PDF report
+     */
+    private JRDataSource createDataSource() {
+        DRDataSource dataSource = new DRDataSource("change", "path", "before", "after", "delta");
+        addChanges(dataSource, "Directory", directories);
+        addChanges(dataSource, "Added", added);
+        addChanges(dataSource, "Removed", removed);
+        addChanges(dataSource, "Resized", resized);
+        return dataSource;
+    }
+
+    private static void addChanges(DRDataSource dataSource, String kind, PriorityQueue<Change> heap) {
+        List<Change> sorted = new ArrayList<>(heap);
+        sorted.sort(Collections.reverseOrder());
+        sorted.forEach((c) -> dataSource.add(kind, c.path, c.before / 1024, c.after / 1024,
+                (c.after - c.before) / 1024));
+    }
+
+    /**
+     * A change which made the cut, kept as just its path and sizes so no records are held on to.
+     */
+    private static class Change implements Comparable<Change> {
+
+        private final String path;
+        private final long before;
+        private final long after;
+
+        Change(String path, long before, long after) {
+            this.path = path;
+            this.before = before;
+            this.after = after;
+        }
+
+        long magnitude() {
+            return Math.abs(after - before);
+        }
+
+        @Override
+        public int compareTo(Change o) {
+            return Long.compare(magnitude(), o.magnitude());
+        }
+    }
+}
@@ -1,17 +1,26 @@
 package graph.analysis;
 
+import exceptions.AnalysisCancelledException;
 import exceptions.AnalysisException;
 import exceptions.PdfGenerationException;
 import graph.FileTreeNode;
+import graph.factory.ScanSample;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by conor on 07/09/2014.
  */
 public abstract class TreeAnalyser {
 
+    private volatile boolean cancelled;
+    private ScanSample sample;
+
     /**
      * Standard constructor for a tree analyser. Specifies that a tree and a path
      * are required for any of these to run.
@@ -47,12 +56,107 @@ public abstract class TreeAnalyser {
      */
     public abstract void setPaths(List<String> paths);
 
+    /**
+     * Tell the analyser the tree is only a sample of the filesystem. Analysers which can scale their results up
+     * to estimates for the whole filesystem override this along with scalesSample(); by default the sample is
+     * reported on as it is, and the report says so.
+     * @param sample the directories the scan picked, null if the whole filesystem was scanned
+     */
+    public void setSample(ScanSample sample) {
+        this.sample = sample;
+    }
+
+    /**
+     * Whether results over a sampled tree are scaled up to estimates for the whole filesystem.
+     * @return false by default, as results only describe the directories scanned
+     */
+    public boolean scalesSample() {
+        return false;
+    }
+
+    /**
+     * The description to show in a report, noting when the results only cover the directories a sampling scan
+     * picked.
+     * @return the description
+     */
+    protected String getReportDescription() {
+        return (sample == null || scalesSample()) ? getDescription() : getDescription() +
+                ". These figures are not scaled up, and cover only the directories scanned by a " +
+                sample.toString().toLowerCase();
+    }
+
     /**
      * Perform the analysis action, saving the results for future consumption.
      * @throws AnalysisException if there is a problem with the analysis
      */
     public abstract void doAnalyse() throws AnalysisException;
 
+    /**
+     * Perform the analysis action using the threads of the given pool. Analysers which can split their work up
+     * override this; by default the analysis runs on the calling thread as with doAnalyse().
+     * @param pool the pool to split the analysis across
+     * @throws AnalysisException if there is a problem with the analysis
+     */
+    public void doAnalyse(ForkJoinPool pool) throws AnalysisException {
+        doAnalyse();
+    }
+
+    /**
+     * Write out the results of a finished analysis, for the result cache to keep alongside the report. Analysers
+     * whose results may be wanted without the report override this along with readResults; by default only the
+     * report is kept.
+     * @param out the stream to write to
+     * @throws IOException if the results cannot be written
+     */
+    public void writeResults(DataOutputStream out) throws IOException {
+        // Only the report is cached
+    }
+
+    /**
+     * Restore results written by writeResults, in place of running the analysis. If the results cannot be read
+     * the analyser must be left as it was, as it is then run instead.
+     * @param in the stream to read from
+     * @throws IOException if the results cannot be read
+     */
+    public void readResults(DataInputStream in) throws IOException {
+        // Only the report is cached
+    }
+
+    /**
+     * Whether the results depend only on the tree and the analyser's config, so can be cached against them.
+     * Analysers whose results also depend on something else, such as the time they are run, override this.
+     * @return true by default
+     */
+    public boolean isCacheable() {
+        return true;
+    }
+
+    /**
+     * Ask the analysis to stop as soon as it can. Cancellation is cooperative: analysers check isCancelled() as
+     * they go, e.g. by passing it to the tree walkers, and give up with an AnalysisCancelledException.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Whether the analysis has been asked to stop.
+     * @return if cancel() has been called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Give up on the analysis if it has been cancelled.
+     * @throws AnalysisCancelledException if cancel() has been called
+     */
+    protected void checkCancelled() throws AnalysisCancelledException {
+        if (cancelled) {
+            throw new AnalysisCancelledException(getAnalysisName() + " was cancelled");
+        }
+    }
+
     /**
      * Once the analysis is complete, this can be used to get a byte stream representing a PDF file
      * report, containing the results of the analysis.
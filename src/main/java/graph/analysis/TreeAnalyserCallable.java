@@ -1,10 +1,15 @@
 package graph.analysis;
 
+import exceptions.AnalysisCancelledException;
 import exceptions.AnalysisException;
 import exceptions.PdfGenerationException;
+import graph.FileTreeNode;
+import graph.TreeVisitor;
+import graph.TreeWalker;
 
 import java.io.ByteArrayOutputStream;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by conor on 09/09/2014.
@@ -15,20 +20,75 @@ import java.util.concurrent.Callable;
 public class TreeAnalyserCallable implements Callable<ByteArrayOutputStream> {
 
     private final TreeAnalyser analyser;
+    private final boolean analyse;
+    private final ForkJoinPool pool;
+    private final RootFeed feed;
 
     /**
      *
      * @param analyser analyser to run in this thread
      */
     public TreeAnalyserCallable(TreeAnalyser analyser) {
+        this(analyser, true);
+    }
+
+    /**
+     *
+     * @param analyser analyser to run in this thread
+     * @param analyse whether to run the analysis, false if it has already been fed (e.g. from a streamed scan)
+     */
+    public TreeAnalyserCallable(TreeAnalyser analyser, boolean analyse) {
+        this.analyser = analyser;
+        this.analyse = analyse;
+        this.pool = null;
+        this.feed = null;
+    }
+
+    /**
+     *
+     * @param analyser analyser to run in this thread
+     * @param pool pool the analyser may split its analysis across, shared between analysers
+     */
+    public TreeAnalyserCallable(TreeAnalyser analyser, ForkJoinPool pool) {
         this.analyser = analyser;
+        this.analyse = true;
+        this.pool = pool;
+        this.feed = null;
+    }
+
+    /**
+     *
+     * @param analyser analyser to run in this thread
+     * @param feed feed of trees from a scan still running, to analyse as each arrives
+     */
+    public TreeAnalyserCallable(TreeAnalyser analyser, RootFeed feed) {
+        this.analyser = analyser;
+        this.analyse = true;
+        this.pool = null;
+        this.feed = feed;
+    }
+
+    /**
+     *
+     * @return the analyser run by this callable
+     */
+    public TreeAnalyser getAnalyser() {
+        return analyser;
     }
 
     @Override
     public ByteArrayOutputStream call() {
         try {
-            analyser.doAnalyse();
+            if (feed != null) {
+                analyseFromFeed();
+            } else if (analyse && pool != null) {
+                analyser.doAnalyse(pool);
+            } else if (analyse) {
+                analyser.doAnalyse();
+            }
             return analyser.generatePdfReport();
+        } catch (AnalysisCancelledException e) {
+            System.err.println("Stopped analysing: " + analyser.getAnalysisName() + ", it was cancelled. skipping..");
         } catch (AnalysisException e) {
             System.err.println("Error analysing: " + analyser.getAnalysisName() + "skipping..");
         } catch (PdfGenerationException e) {
@@ -36,4 +96,28 @@ public class TreeAnalyserCallable implements Callable<ByteArrayOutputStream> {
         }
         return null;
     }
+
+    /**
+     * Analyse trees as the scan completes them. An analyser which is also a tree visitor walks each tree as it
+     * arrives, the walks together making up its analysis as when fed from a scan; any other waits for the whole
+     * scan and analyses as usual.
+     */
+    private void analyseFromFeed() throws AnalysisException {
+        try {
+            if (analyser instanceof TreeVisitor) {
+                FileTreeNode root;
+                for (int i = 0; (root = feed.await(i)) != null; i++) {
+                    TreeWalker.walk(root, (TreeVisitor) analyser, analyser::isCancelled);
+                    analyser.checkCancelled();
+                }
+                analyser.setTree(feed.awaitAll());
+            } else {
+                analyser.setTree(feed.awaitAll());
+                analyser.doAnalyse();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnalysisException("Interrupted waiting for the scan", e);
+        }
+    }
 }
@@ -0,0 +1,105 @@
+package graph.analysis;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Counts occurrences of file types without allocating per count. Types are kept in an open addressing table
+ * (linear probing) alongside primitive long counters, so counting a type already seen is one probe and an
+ * increment: no boxing, and no overflow past 2^31.
+ *
+ * Not thread safe; each thread should count into its own counter and combine them with addAll.
+ */
+class TypeCounter {
+
+    private String[] types = new String[64];
+    private long[] counts = new long[64];
+    private int size;
+
+    /**
+     * Count one more of the given type.
+     * @param type the file type
+     */
+    void increment(String type) {
+        add(type, 1);
+    }
+
+    /**
+     * Add to the count of the given type.
+     * @param type the file type
+     * @param count the amount to add
+     */
+    void add(String type, long count) {
+        int slot = slotOf(type);
+        if (types[slot] == null) {
+            types[slot] = type;
+            if (++size * 2 > types.length) {
+                counts[slot] += count;
+                grow();
+                return;
+            }
+        }
+        counts[slot] += count;
+    }
+
+    /**
+     * Add every count of another counter into this one.
+     * @param other the counter to add
+     */
+    void addAll(TypeCounter other) {
+        other.forEach(this::add);
+    }
+
+    /**
+     * Get the count of the given type.
+     * @param type the file type
+     * @return the count, zero if never seen
+     */
+    long get(String type) {
+        int slot = slotOf(type);
+        return (types[slot] == null) ? 0 : counts[slot];
+    }
+
+    /**
+     * The number of distinct types counted.
+     * @return type count
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Pass each type and its count to the given consumer, in no particular order.
+     * @param consumer the consumer
+     */
+    void forEach(ObjLongConsumer<String> consumer) {
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != null) {
+                consumer.accept(types[i], counts[i]);
+            }
+        }
+    }
+
+    private int slotOf(String type) {
+        int mask = types.length - 1;
+        int h = type.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (types[slot] != null && types[slot] != type && !types[slot].equals(type)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        String[] oldTypes = types;
+        long[] oldCounts = counts;
+        types = new String[oldTypes.length * 2];
+        counts = new long[oldTypes.length * 2];
+        for (int i = 0; i < oldTypes.length; i++) {
+            if (oldTypes[i] != null) {
+                int slot = slotOf(oldTypes[i]);
+                types[slot] = oldTypes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
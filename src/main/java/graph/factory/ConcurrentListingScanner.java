@@ -0,0 +1,138 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scanner for high latency mounts (NFS, SMB), where a listing spends far longer waiting on the network than using
+ * the CPU. Every pending directory listing is given its own thread, up to a cap on the listings in flight, so
+ * hundreds of listings can be outstanding at once.
+ *
+ * Virtual threads are used when the running JVM provides them; otherwise a cached pool of platform threads is
+ * used, which the cap keeps to a bounded size.
+ */
+class ConcurrentListingScanner {
+
+    private final DirectoryReader reader;
+    private final int maxDepth;
+    private final int maxInFlight;
+
+    private final Queue<FileTreeNode> pendingDirectories = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong unfinished = new AtomicLong();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private ExecutorService executor;
+
+    /**
+     *
+     * @param reader the reader used to access the filesystem
+     * @param maxDepth the depth at which nodes are no longer added to the tree
+     * @param maxInFlight the maximum number of directory listings running at once
+     */
+    ConcurrentListingScanner(DirectoryReader reader, int maxDepth, int maxInFlight) {
+        this.reader = reader;
+        this.maxDepth = maxDepth;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Scan the given roots, returning once every directory under them has been listed.
+     * @param rootFiles the files at the top of each tree
+     * @return the generated tree structure
+     */
+    List<FileTreeNode> scan(List<File> rootFiles) {
+        List<FileTreeNode> roots = new ArrayList<>();
+        rootFiles.forEach((file) -> roots.add(reader.readRoot(file)));
+
+        executor = newListingExecutor();
+        try {
+            unfinished.incrementAndGet();
+            roots.forEach(this::enqueue);
+            if (unfinished.decrementAndGet() == 0) {
+                finished.countDown();
+            }
+            dispatch();
+            finished.await();
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted waiting for directory listings to finish");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return roots;
+    }
+
+    private void enqueue(FileTreeNode node) {
+        if (node.isDirectory() && node.getDepth() + 1 < maxDepth) {
+            unfinished.incrementAndGet();
+            pendingDirectories.add(node);
+        }
+    }
+
+    /**
+     * Start listings for pending directories until either none are left or the cap is reached.
+     */
+    private void dispatch() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+
+            FileTreeNode next = pendingDirectories.poll();
+            if (next == null) {
+                inFlight.decrementAndGet();
+                // A directory may have been queued while this slot was held, with its owner seeing no free slot
+                if (pendingDirectories.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            executor.execute(() -> list(next));
+        }
+    }
+
+    private void list(FileTreeNode directory) {
+        try {
+            List<FileTreeNode> children = reader.readChildren(directory);
+            directory.addChildren(children);
+            children.forEach(this::enqueue);
+        } catch (RuntimeException e) {
+            System.err.println("Error listing: " + directory.getPath() + " skipping.. " + e.getMessage());
+        } finally {
+            inFlight.decrementAndGet();
+            if (unfinished.decrementAndGet() == 0) {
+                finished.countDown();
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Create a thread-per-task executor, preferring virtual threads where the JVM supports them.
+     * @return an executor starting a new thread for each listing
+     */
+    static ExecutorService newListingExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "directory-listing");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
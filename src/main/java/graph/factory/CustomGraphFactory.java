@@ -1,12 +1,23 @@
 package graph.factory;
 
+import graph.CompositeTreeVisitor;
 import graph.FileTreeNode;
-import org.apache.commons.lang3.tuple.ImmutablePair;
+import graph.SubtreeRollup;
+import graph.TreeVisitor;
+import graph.TreeWalker;
+
+import graph.snapshot.TreeSnapshot;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.FileSystem;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -16,6 +27,8 @@ public class CustomGraphFactory {
 
     // Default options
     private Options options = new Options.Builder().build();
+    private ScanStatistics lastScanStatistics;
+    private ScanSample lastScanSample;
 
     /**
      * Set options for the FS traversal.
@@ -32,9 +45,7 @@ public class CustomGraphFactory {
      * @return the generated tree structure
      */
     public List<FileTreeNode> generateFsGraph(FileSystem fs) {
-        List<FileTreeNode> fileNodes = new ArrayList<>();
-        fs.getRootDirectories().forEach((dir) -> fileNodes.add(buildGraphFromRoot(dir)));
-        return fileNodes;
+        return generateFsGraph(fs, (root) -> { });
     }
 
     /**
@@ -43,54 +54,307 @@ public class CustomGraphFactory {
      * @return the generated tree structure
      */
     public List<FileTreeNode> generateFsGraph(List<String> rootPaths) {
-        List<FileTreeNode> fileNodes = new ArrayList<>();
+        return generateFsGraph(rootPaths, (root) -> { });
+    }
+
+    /**
+     * Generate a tree structure from the given FileSystem, handing over each tree as soon as it is complete.
+     * @param fs a filesystem
+     * @param rootScanned called with each root once its tree is complete, possibly from another thread
+     * @return the generated tree structure
+     */
+    public List<FileTreeNode> generateFsGraph(FileSystem fs, Consumer<FileTreeNode> rootScanned) {
+        List<File> files = new ArrayList<>();
+        fs.getRootDirectories().forEach((dir) -> files.add(dir.toFile()));
+        return buildGraphFromRoots(files, rootScanned);
+    }
+
+    /**
+     * Generate a tree structure from the given paths, handing over each tree as soon as it is complete, so work
+     * on it can start while the other paths are still being scanned.
+     * @param rootPaths the paths
+     * @param rootScanned called with each root once its tree is complete, possibly from another thread
+     * @return the generated tree structure
+     */
+    public List<FileTreeNode> generateFsGraph(List<String> rootPaths, Consumer<FileTreeNode> rootScanned) {
         List<File> files = rootPaths.stream().map(File::new).collect(Collectors.toList());
-        files.forEach((file) -> fileNodes.add(buildGraphFromRoot(file)));
-        return fileNodes;
+        return buildGraphFromRoots(files, rootScanned);
     }
 
     /**
-     * Iterative function to generate a tree structure from a given filesystem root.
-     * Uses a queue and passes pairs, containing node parent and current file to be processed.
-     *
-     * @param rootFile the file at the top of the tree to be generated
+     * Watch trees built by this factory, so they can be kept up to date from filesystem events rather than by
+     * scanning them again. Changed entries are read with the same options as the scan.
+     * @param roots the roots of the trees
+     * @return the watcher, which must be closed once done with
+     * @throws IOException if the filesystem cannot be watched
+     */
+    public TreeWatcher watch(List<FileTreeNode> roots) throws IOException {
+        if (options.isSampling()) {
+            throw new IllegalStateException("A sampled tree cannot be kept up to date, as changes are not sampled");
+        }
+        ScanStatistics statistics = new ScanStatistics();
+        return new TreeWatcher(roots, withTypeSniffing(createReader(statistics), statistics), statistics,
+                new ScanFilter(options), options.getMaxDepth());
+    }
+
+    /**
+     * Stream the tree under the root directories of the given FileSystem into a visitor, without building it.
+     * @param fs a filesystem
+     * @param visitor the visitor to receive the nodes
      */
-    FileTreeNode buildGraphFromRoot(File rootFile) {
-        final Queue<ImmutablePair<FileTreeNode, File>> fileQueue = new LinkedList<>();
-        fileQueue.add(new ImmutablePair<>(null, rootFile));
-        FileTreeNode root = null;
+    public void streamFsGraph(FileSystem fs, TreeVisitor visitor) {
+        List<File> files = new ArrayList<>();
+        fs.getRootDirectories().forEach((dir) -> files.add(dir.toFile()));
+        streamFromRoots(files, visitor);
+    }
+
+    /**
+     * Stream the trees under the given paths into a visitor, without building them.
+     * @param rootPaths the paths
+     * @param visitor the visitor to receive the nodes
+     */
+    public void streamFsGraph(List<String> rootPaths, TreeVisitor visitor) {
+        streamFromRoots(rootPaths.stream().map(File::new).collect(Collectors.toList()), visitor);
+    }
 
-        while (!fileQueue.isEmpty()) {
-            ImmutablePair<FileTreeNode, File> currentPair = fileQueue.poll();
-            FileTreeNode parent = currentPair.getLeft();
-            File currentFile = currentPair.getRight();
-            FileTreeNode n = new FileTreeNode(currentFile, parent);
+    /**
+     * Walk the given roots depth first, listing each directory as the walk reaches it and handing every node
+     * straight to the visitor. Nodes are never attached to their parents, so each can be collected once the
+     * visitor is done with it; memory use depends on the depth and width of the tree, not on the number of files.
+     * The walk always runs on the calling thread, whatever the scan mode, so visitors need not be thread safe.
+     * Each directory's subtree summary is filled in before the visitor is told the directory has been exited.
+     *
+     * @param rootFiles the files at the top of each tree
+     * @param visitor the visitor to receive the nodes
+     */
+    private void streamFromRoots(List<File> rootFiles, TreeVisitor visitor) {
+        this.lastScanStatistics = new ScanStatistics();
+        DirectoryReader reader = withSampling(withTypeSniffing(createReader(lastScanStatistics), lastScanStatistics));
+        int maxDepth = options.getMaxDepth();
+        TreeVisitor withSummaries = new CompositeTreeVisitor(Arrays.asList(new SubtreeRollup(), visitor));
 
-            if (parent != null  && n.getDepth() >= options.getMaxDepth()) {
-                break;
+        try {
+            for (File rootFile : rootFiles) {
+                TreeWalker.walk(reader.readRoot(rootFile), (n) -> (n.getDepth() + 1 >= maxDepth) ?
+                        Collections.<FileTreeNode>emptyList() : reader.readChildren(n), withSummaries);
             }
-            if (parent == null) {
-                root = n;
+        } finally {
+            reader.finish();
+        }
+    }
+
+    /**
+     * Build a tree for each of the given root files, using the scan mode set in the options. Each tree is frozen
+     * and summarised as soon as it is complete, rather than once all are; the scanner with a cap on listings in
+     * flight shares that cap across every root, so its trees are only complete once all are.
+     * @param rootFiles the files at the top of each tree
+     * @param rootScanned called with each root once its tree is complete
+     * @return the generated tree structure
+     */
+    private List<FileTreeNode> buildGraphFromRoots(List<File> rootFiles, Consumer<FileTreeNode> rootScanned) {
+        long scanStarted = System.currentTimeMillis();
+        this.lastScanStatistics = new ScanStatistics();
+        // Unchanged directories are taken from the snapshot with their types, so only changed ones are sniffed
+        DirectoryReader reader =
+                withSampling(withPreviousSnapshot(withTypeSniffing(createReader(lastScanStatistics),
+                        lastScanStatistics)));
+
+        Consumer<FileTreeNode> rootComplete = (root) -> {
+            List<FileTreeNode> tree = Collections.singletonList(root);
+            FileTreeNode.freezeAll(tree);
+            SubtreeRollup.computeAll(tree);
+            rootScanned.accept(root);
+        };
+
+        List<FileTreeNode> fileNodes;
+        try {
+            if (options.getScanMode() == ScanMode.FORK_JOIN) {
+                fileNodes = buildGraphInParallel(rootFiles, reader, rootComplete);
+            } else if (options.getScanMode() == ScanMode.VIRTUAL_THREADS) {
+                fileNodes = new ConcurrentListingScanner(reader, options.getMaxDepth(),
+                        options.getMaxInFlightListings()).scan(rootFiles);
+                fileNodes.forEach(rootComplete);
             } else {
-                parent.addChild(n);
+                List<FileTreeNode> roots = new ArrayList<>();
+                rootFiles.forEach((file) -> {
+                    FileTreeNode root = buildGraphFromRoot(file, reader);
+                    rootComplete.accept(root);
+                    roots.add(root);
+                });
+                fileNodes = roots;
             }
+        } finally {
+            reader.finish();
+        }
 
-            File[] files = currentFile.listFiles();
-            if (currentFile.isDirectory() && files != null && files.length > 0) {
-                Arrays.stream(files).forEach((child) -> fileQueue.add(new ImmutablePair<>(n, child)));
+        saveSnapshot(fileNodes, scanStarted);
+        return fileNodes;
+    }
+
+    /**
+     * If a snapshot from a previous scan with the same options is available (and a full rescan has not been
+     * asked for), wrap the reader so unchanged directories are taken from the snapshot instead of being listed.
+     *
+     * @param reader the reader to the filesystem
+     * @return the reader to scan with
+     */
+    private DirectoryReader withPreviousSnapshot(DirectoryReader reader) {
+        if (options.getSnapshotPath() == null || options.isFullRescan()) {
+            return reader;
+        }
+        Path snapshotPath = Paths.get(options.getSnapshotPath());
+        if (!Files.exists(snapshotPath)) {
+            return reader;
+        }
+
+        try {
+            TreeSnapshot previous = TreeSnapshot.load(snapshotPath);
+            if (previous.getOptionsFingerprint() != options.getTreeFingerprint()) {
+                System.out.println("Scan options have changed since the last snapshot, rescanning everything.");
+                return reader;
             }
+            return new IncrementalDirectoryReader(reader, lastScanStatistics, previous.getRoots(),
+                    previous.getScanStarted());
+        } catch (IOException e) {
+            System.err.println("Could not read snapshot: " + snapshotPath + ", rescanning everything. " +
+                    e.getMessage());
+            return reader;
         }
+    }
 
-        return root;
+    /**
+     * If asked for in the options, wrap the reader so file types are detected from the files' contents.
+     * @param reader the reader to the filesystem
+     * @param statistics the statistics to record header reads in
+     * @return the reader to scan with
+     */
+    private DirectoryReader withTypeSniffing(DirectoryReader reader, ScanStatistics statistics) {
+        return options.isSniffTypes() ? new SniffingDirectoryReader(reader, new ScanFilter(options), statistics,
+                options.getTypeCachePath(), options.getThreads()) : reader;
+    }
+
+    /**
+     * If asked for in the options, wrap the reader so only a sample of directories is scanned. The sample design
+     * is kept for the analysers, to scale their results up by.
+     * @param reader the reader to the filesystem
+     * @return the reader to scan with
+     */
+    private DirectoryReader withSampling(DirectoryReader reader) {
+        this.lastScanSample = options.isSampling() ? new ScanSample(options) : null;
+        return options.isSampling() ? new SamplingDirectoryReader(reader, lastScanStatistics, lastScanSample) :
+                reader;
+    }
+
+    /**
+     * Save the scanned tree to the snapshot path, if one is set, for the next scan to build on.
+     * @param roots the scanned trees
+     * @param scanStarted when the scan started
+     */
+    private void saveSnapshot(List<FileTreeNode> roots, long scanStarted) {
+        if (options.getSnapshotPath() == null) {
+            return;
+        }
+        if (lastScanSample != null) {
+            // A sampled tree is missing most of its directories' contents, and cannot stand in for a scan
+            System.out.println("Not saving a snapshot of a sampling scan.");
+            return;
+        }
+        try {
+            TreeSnapshot snapshot = new TreeSnapshot(roots, scanStarted, options.getTreeFingerprint());
+            snapshot.save(Paths.get(options.getSnapshotPath()));
+        } catch (IOException e) {
+            System.err.println("Could not save snapshot: " + options.getSnapshotPath() + ". " + e.getMessage());
+        }
     }
 
     /**
-     * Overload to convert path to file.
+     * Create the reader used to access the filesystem, as chosen in the options. The ignore list and type
+     * filters are compiled here, once per scan. When types are sniffed from contents, the type filters are left
+     * to the sniffing reader, as types are not known until then.
+     * @param statistics the statistics the reader records its filesystem calls in
+     * @return a directory reader
+     */
+    DirectoryReader createReader(ScanStatistics statistics) {
+        ScanFilter filter = new ScanFilter(options, !options.isSniffTypes());
+        return options.isNio() ?
+                new NioDirectoryReader(statistics, filter) : new FileDirectoryReader(statistics, filter);
+    }
+
+    /**
+     * Generate tree structures for the given roots on a work-stealing pool. Each directory is listed by its own
+     * task, so subtrees of any root can be picked up by whichever worker is idle. Children keep the order in
+     * which they are listed, so the result matches the sequential walk. Each root is handed over as soon as its
+     * own tree is complete, on whichever worker finished it.
      *
-     * @param rootPath the path
+     * @param rootFiles the files at the top of each tree
+     * @param reader the reader used to access the filesystem
+     * @param rootComplete called with each root once its tree is complete
+     * @return the generated tree structure
+     */
+    List<FileTreeNode> buildGraphInParallel(List<File> rootFiles, DirectoryReader reader,
+                                            Consumer<FileTreeNode> rootComplete) {
+        List<FileTreeNode> roots = new ArrayList<>();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (File rootFile : rootFiles) {
+            FileTreeNode root = reader.readRoot(rootFile);
+            roots.add(root);
+            DirectoryScanTask scan = new DirectoryScanTask(root, reader, options.getMaxDepth());
+            tasks.add(ForkJoinTask.adapt(() -> {
+                scan.invoke();
+                rootComplete.accept(root);
+            }));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(options.getThreads());
+        try {
+            tasks.forEach(pool::execute);
+            tasks.forEach(ForkJoinTask::join);
+        } finally {
+            pool.shutdown();
+        }
+        return roots;
+    }
+
+    /**
+     * Iterative function to generate a tree structure from a given filesystem root.
+     * Uses a queue of nodes whose children are still to be read, giving a breadth first walk.
+     *
+     * @param rootFile the file at the top of the tree to be generated
+     * @param reader the reader used to access the filesystem
+     */
+    FileTreeNode buildGraphFromRoot(File rootFile, DirectoryReader reader) {
+        final Queue<FileTreeNode> nodeQueue = new LinkedList<>();
+        FileTreeNode root = reader.readRoot(rootFile);
+        nodeQueue.add(root);
+
+        while (!nodeQueue.isEmpty()) {
+            FileTreeNode n = nodeQueue.poll();
+            if (!n.isDirectory() || n.getDepth() + 1 >= options.getMaxDepth()) {
+                continue;
+            }
+
+            List<FileTreeNode> children = reader.readChildren(n);
+            n.addChildren(children);
+            nodeQueue.addAll(children);
+        }
+
+        return root;
+    }
+
+    /**
+     * The filesystem calls made by the most recent scan.
+     * @return scan statistics, null if no scan has been run
+     */
+    public ScanStatistics getLastScanStatistics() {
+        return lastScanStatistics;
+    }
+
+    /**
+     * The directories picked by the most recent scan, if it was a sampling scan.
+     * @return the sample, null if the last scan was not sampled or no scan has been run
      */
-    private FileTreeNode buildGraphFromRoot(Path rootPath) {
-        return buildGraphFromRoot(rootPath.toFile());
+    public ScanSample getLastScanSample() {
+        return lastScanSample;
     }
 
     /**
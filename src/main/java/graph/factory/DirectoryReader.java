@@ -0,0 +1,43 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Reads entries from the filesystem and turns them into tree nodes. The traversal strategies in the factory only
+ * decide the order directories are visited in, leaving all filesystem access to an implementation of this.
+ */
+interface DirectoryReader {
+
+    /**
+     * Create the node at the top of a tree.
+     * @param rootFile the file the tree starts from
+     * @return the root node
+     */
+    FileTreeNode readRoot(File rootFile);
+
+    /**
+     * Create the node for a single entry, without listing its parent.
+     * @param file the entry
+     * @param parent the node the entry belongs under
+     * @return the node, or null if the entry no longer exists or could not be read
+     */
+    FileTreeNode readNode(File file, FileTreeNode parent);
+
+    /**
+     * List the given directory, creating a node (not yet attached) for each entry found.
+     * @param directory node representing the directory to list
+     * @return the child nodes, empty if the directory could not be read
+     */
+    List<FileTreeNode> readChildren(FileTreeNode directory);
+
+    /**
+     * Called once the scan is complete, to release or save anything held for the duration of the scan. Readers
+     * wrapping another must pass this on.
+     */
+    default void finish() {
+        // Nothing held by default
+    }
+}
@@ -0,0 +1,50 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join task which lists a single directory, attaches the entries found as children of the given node and
+ * then forks a new task for each child directory. Idle workers steal the forked tasks, so large subtrees end up
+ * spread across the pool rather than walked by a single thread.
+ */
+class DirectoryScanTask extends RecursiveAction {
+
+    private final FileTreeNode node;
+    private final DirectoryReader reader;
+    private final int maxDepth;
+
+    /**
+     *
+     * @param node the node representing the directory to be listed
+     * @param reader the reader used to access the filesystem
+     * @param maxDepth the depth at which nodes are no longer added to the tree
+     */
+    DirectoryScanTask(FileTreeNode node, DirectoryReader reader, int maxDepth) {
+        this.node = node;
+        this.reader = reader;
+        this.maxDepth = maxDepth;
+    }
+
+    @Override
+    protected void compute() {
+        // Every child shares the same depth, so check it once before touching the filesystem
+        if (node.getDepth() + 1 >= maxDepth || !node.isDirectory()) {
+            return;
+        }
+
+        List<FileTreeNode> children = reader.readChildren(node);
+        node.addChildren(children);
+
+        List<DirectoryScanTask> subTasks = new ArrayList<>();
+        for (FileTreeNode n : children) {
+            if (n.isDirectory()) {
+                subTasks.add(new DirectoryScanTask(n, reader, maxDepth));
+            }
+        }
+        invokeAll(subTasks);
+    }
+}
@@ -0,0 +1,68 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Directory reader using java.io.File. Every attribute of a node is fetched with a separate call, so this costs
+ * several filesystem calls per entry; kept for platforms where the NIO reader misbehaves.
+ */
+class FileDirectoryReader implements DirectoryReader {
+
+    // isDirectory, lastModified, isHidden & length are each read separately by the node constructor, and isFile
+    // too for anything which is not a directory
+    private static final int ATTRIBUTE_READS_PER_DIRECTORY = 4;
+    private static final int ATTRIBUTE_READS_PER_FILE = 5;
+
+    private final ScanStatistics statistics;
+    private final ScanFilter filter;
+
+    FileDirectoryReader(ScanStatistics statistics, ScanFilter filter) {
+        this.statistics = statistics;
+        this.filter = filter;
+    }
+
+    @Override
+    public FileTreeNode readRoot(File rootFile) {
+        return createNode(rootFile, null);
+    }
+
+    @Override
+    public FileTreeNode readNode(File file, FileTreeNode parent) {
+        statistics.recordAttributeReads(1);
+        return file.exists() ? createNode(file, parent) : null;
+    }
+
+    @Override
+    public List<FileTreeNode> readChildren(FileTreeNode directory) {
+        File[] files = new File(directory.getPath()).listFiles();
+        statistics.recordDirectoryListing();
+        if (files == null || files.length == 0) {
+            return Collections.emptyList();
+        }
+
+        List<FileTreeNode> children = new ArrayList<>(files.length);
+        for (File file : files) {
+            if (filter.isIgnored(file.getName(), file.getPath())) {
+                statistics.recordIgnored();
+                continue;
+            }
+            FileTreeNode n = createNode(file, directory);
+            if (filter.accepts(n)) {
+                children.add(n);
+            }
+        }
+        return children;
+    }
+
+    private FileTreeNode createNode(File file, FileTreeNode parent) {
+        statistics.recordNode();
+        FileTreeNode n = new FileTreeNode(file, parent);
+        statistics.recordAttributeReads(n.isDirectory() ? ATTRIBUTE_READS_PER_DIRECTORY : ATTRIBUTE_READS_PER_FILE);
+        return n;
+    }
+}
@@ -0,0 +1,126 @@
+package graph.factory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the type detected for each file, keyed by path, so a file is only read again once its size or
+ * modified time has changed. Can be saved between runs; only the files looked up since loading are saved, so
+ * entries for deleted files drop out. Safe to use from any number of threads.
+ */
+class FileTypeCache {
+
+    private static final int MAGIC = 0x46535443; // "FSTC"
+    private static final int VERSION = 1;
+
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    FileTypeCache() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    private FileTypeCache(Map<String, Entry> previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * Load a cache saved by an earlier run. A missing or unreadable file gives an empty cache.
+     * @param file the file the cache was saved to
+     * @return the cache
+     */
+    static FileTypeCache load(Path file) {
+        if (!Files.exists(file)) {
+            return new FileTypeCache();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a supported type cache");
+            }
+            int count = in.readInt();
+            Map<String, Entry> entries = new ConcurrentHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                entries.put(path, new Entry(in.readLong(), in.readLong(), in.readUTF()));
+            }
+            return new FileTypeCache(entries);
+        } catch (IOException e) {
+            System.err.println("Could not read type cache: " + file + ", detecting all types again. " +
+                    e.getMessage());
+            return new FileTypeCache();
+        }
+    }
+
+    /**
+     * Get the type stored for a file, if the file is unchanged since.
+     * @param path the file's path
+     * @param size the file's size now
+     * @param lastModified the file's modified time now
+     * @return the type, or null if not known for this version of the file
+     */
+    String get(String path, long size, long lastModified) {
+        Entry entry = current.get(path);
+        if (entry == null) {
+            entry = previous.get(path);
+            if (entry != null) {
+                current.put(path, entry);
+            }
+        }
+        return (entry != null && entry.size == size && entry.lastModified == lastModified) ? entry.type : null;
+    }
+
+    /**
+     * Store the type detected for a file.
+     * @param path the file's path
+     * @param size the file's size when read
+     * @param lastModified the file's modified time when read
+     * @param type the type detected
+     */
+    void put(String path, long size, long lastModified, String type) {
+        current.put(path, new Entry(size, lastModified, type));
+    }
+
+    /**
+     * Save the entries looked up or stored since loading. The file is replaced in one step.
+     * @param file the file to write to
+     * @throws IOException if the cache could not be written
+     */
+    void save(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            Map<String, Entry> entries = new HashMap<>(current);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().lastModified);
+                out.writeUTF(e.getValue().type);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static class Entry {
+
+        private final long size;
+        private final long lastModified;
+        private final String type;
+
+        Entry(long size, long lastModified, String type) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package graph.factory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Works out a file's type from the magic number at the start of its contents, rather than from its name. Only the
+ * first HEADER_BYTES of a file are needed.
+ *
+ * Where the extension is a more specific name for the detected format (a .jar or .docx is a zip, a .jpg is a
+ * jpeg) the extension is kept. A file matching no known format is typed by its extension, or if it has none as
+ * "text", "data" or "empty".
+ */
+final class FileTypeSniffer {
+
+    // Enough to reach the tar signature, the furthest in of those known
+    static final int HEADER_BYTES = 264;
+
+    private static final List<Magic> MAGIC_NUMBERS = new ArrayList<>();
+
+    static {
+        add("png", 0, bytes(0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a));
+        add("jpeg", 0, bytes(0xff, 0xd8, 0xff), "jpg", "jpe", "jfif");
+        add("gif", 0, ascii("GIF87a"));
+        add("gif", 0, ascii("GIF89a"));
+        add("tiff", 0, bytes('I', 'I', 42, 0), "tif", "dng", "nef", "cr2");
+        add("tiff", 0, bytes('M', 'M', 0, 42), "tif");
+        add("webp", 8, ascii("WEBP"));
+        add("wav", 8, ascii("WAVE"));
+        add("avi", 8, ascii("AVI "));
+        add("mp4", 4, ascii("ftyp"), "m4a", "m4v", "mov", "3gp", "heic");
+        add("mp3", 0, ascii("ID3"));
+        add("ogg", 0, ascii("OggS"), "oga", "ogv", "opus");
+        add("flac", 0, ascii("fLaC"));
+        add("pdf", 0, ascii("%PDF"));
+        add("zip", 0, bytes('P', 'K', 3, 4), "jar", "war", "ear", "apk", "docx", "xlsx", "pptx", "odt", "ods",
+                "odp", "epub", "whl", "nupkg", "xpi");
+        add("gz", 0, bytes(0x1f, 0x8b), "tgz", "gzip");
+        add("bz2", 0, ascii("BZh"), "tbz2");
+        add("xz", 0, bytes(0xfd, '7', 'z', 'X', 'Z', 0), "txz");
+        add("zst", 0, bytes(0x28, 0xb5, 0x2f, 0xfd));
+        add("7z", 0, bytes('7', 'z', 0xbc, 0xaf, 0x27, 0x1c));
+        add("rar", 0, ascii("Rar!"));
+        add("tar", 257, ascii("ustar"));
+        add("elf", 0, bytes(0x7f, 'E', 'L', 'F'), "so", "o", "ko");
+        add("exe", 0, ascii("MZ"), "dll", "sys");
+        add("class", 0, bytes(0xca, 0xfe, 0xba, 0xbe));
+        add("macho", 0, bytes(0xcf, 0xfa, 0xed, 0xfe), "dylib");
+        add("wasm", 0, bytes(0, 'a', 's', 'm'));
+        add("sqlite", 0, ascii("SQLite format 3\0"), "db", "sqlite3");
+        add("script", 0, ascii("#!"), "sh", "bash", "py", "pl", "rb");
+    }
+
+    private FileTypeSniffer() {
+        // Prevents instantiation
+    }
+
+    /**
+     * Work out the type of a file from its first bytes.
+     * @param header the start of the file, from position zero up to the limit
+     * @param name the file's name
+     * @return the file type
+     */
+    static String sniff(ByteBuffer header, String name) {
+        int dot = name.lastIndexOf('.');
+        String extension = (dot < 0) ? null : name.substring(dot + 1);
+
+        for (Magic magic : MAGIC_NUMBERS) {
+            if (magic.matches(header)) {
+                return (extension != null && magic.aliases.contains(extension.toLowerCase())) ?
+                        extension : magic.type;
+            }
+        }
+        if (extension != null) {
+            return extension;
+        }
+        if (header.limit() == 0) {
+            return "empty";
+        }
+        return looksLikeText(header) ? "text" : "data";
+    }
+
+    private static boolean looksLikeText(ByteBuffer header) {
+        for (int i = 0; i < header.limit(); i++) {
+            int b = header.get(i) & 0xff;
+            if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void add(String type, int offset, byte[] signature, String... aliases) {
+        Set<String> names = new HashSet<>(Arrays.asList(aliases));
+        names.add(type);
+        MAGIC_NUMBERS.add(new Magic(type, offset, signature, Collections.unmodifiableSet(names)));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A format's signature: the bytes found at a fixed offset into every file of that format.
+     */
+    private static class Magic {
+
+        private final String type;
+        private final int offset;
+        private final byte[] signature;
+        private final Set<String> aliases;
+
+        Magic(String type, int offset, byte[] signature, Set<String> aliases) {
+            this.type = type;
+            this.offset = offset;
+            this.signature = signature;
+            this.aliases = aliases;
+        }
+
+        boolean matches(ByteBuffer header) {
+            if (header.limit() < offset + signature.length) {
+                return false;
+            }
+            for (int i = 0; i < signature.length; i++) {
+                if (header.get(offset + i) != signature[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
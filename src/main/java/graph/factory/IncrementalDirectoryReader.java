@@ -0,0 +1,125 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reader which reuses the listings of a previous scan. Adding, removing or renaming an entry updates the
+ * modification time of its directory, so a directory whose time is unchanged since the previous scan still holds
+ * the same entries and need not be listed again. Its files are copied over from the previous scan, types and all,
+ * without being read; its subdirectories are read once each, so their own times can be checked in turn.
+ *
+ * A directory modified within a couple of seconds of the previous scan starting is always listed, as a
+ * filesystem with coarse timestamps could have been changed again without the time moving on.
+ *
+ * The previous tree is looked up as the scan goes rather than indexed up front. When a directory is read, the
+ * previous versions of its subdirectories are set aside under their paths until the scan reaches them, so only
+ * the directories on the scan's frontier are held, and files are only looked at in directories being read.
+ */
+class IncrementalDirectoryReader implements DirectoryReader {
+
+    // Allowance for filesystems which only store modification times to the nearest second or two
+    private static final long TIMESTAMP_GRANULARITY = 2000;
+
+    private final DirectoryReader delegate;
+    private final ScanStatistics statistics;
+    private final List<FileTreeNode> previousRoots;
+    // Previous versions of directories the scan has found but not yet read, by path
+    private final Map<String, FileTreeNode> pendingDirectories = new ConcurrentHashMap<>();
+    private final long reusableBefore;
+
+    /**
+     *
+     * @param delegate the reader used for directories which have changed
+     * @param statistics the statistics to record reused listings in
+     * @param previousRoots the trees from the previous scan
+     * @param previousScanStarted when the previous scan started
+     */
+    IncrementalDirectoryReader(DirectoryReader delegate, ScanStatistics statistics, List<FileTreeNode> previousRoots,
+                               long previousScanStarted) {
+        this.delegate = delegate;
+        this.statistics = statistics;
+        this.previousRoots = previousRoots;
+        this.reusableBefore = previousScanStarted - TIMESTAMP_GRANULARITY;
+    }
+
+    @Override
+    public FileTreeNode readRoot(File rootFile) {
+        return delegate.readRoot(rootFile);
+    }
+
+    @Override
+    public FileTreeNode readNode(File file, FileTreeNode parent) {
+        return delegate.readNode(file, parent);
+    }
+
+    @Override
+    public List<FileTreeNode> readChildren(FileTreeNode directory) {
+        FileTreeNode previous = findPrevious(directory);
+        if (previous == null) {
+            return delegate.readChildren(directory);
+        }
+
+        boolean reusable = previous.getLastModified() == directory.getLastModified()
+                && directory.getLastModified() < reusableBefore;
+        if (reusable) {
+            statistics.recordReusedListing();
+        }
+        List<FileTreeNode> children = new ArrayList<>(reusable ? previous.getChildren().size() : 0);
+        for (FileTreeNode old : previous.getChildren()) {
+            if (old.isDirectory()) {
+                pendingDirectories.put(old.getPath(), old);
+            }
+            if (!reusable) {
+                continue;
+            }
+            FileTreeNode n = old.isDirectory() ? delegate.readNode(new File(old.getPath()), directory) :
+                    copyFile(old, directory);
+            if (n != null) {
+                children.add(n);
+            }
+        }
+        return reusable ? children : delegate.readChildren(directory);
+    }
+
+    /**
+     * Copy a file from the previous scan, keeping the type it was given then.
+     */
+    private static FileTreeNode copyFile(FileTreeNode old, FileTreeNode directory) {
+        FileTreeNode n = new FileTreeNode(old.getPath(), false, old.getFileSize(), old.getLastModified(),
+                old.isHidden(), directory);
+        n.setFileType(old.getFileType());
+        return n;
+    }
+
+    /**
+     * Take the previous version of a directory: one of the previous roots, or one set aside when its parent was
+     * read. Each directory is only read once per scan, so it is dropped from those set aside.
+     * @param directory the directory about to be read
+     * @return the directory from the previous scan, null if it was not there
+     */
+    private FileTreeNode findPrevious(FileTreeNode directory) {
+        FileTreeNode previous = pendingDirectories.remove(directory.getPath());
+        if (previous != null || directory.getParent() != null) {
+            return previous;
+        }
+        for (FileTreeNode root : previousRoots) {
+            if (root.getPath().equals(directory.getPath())) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void finish() {
+        // Anything left was removed from the filesystem, or is below the depth limit
+        pendingDirectories.clear();
+        delegate.finish();
+    }
+}
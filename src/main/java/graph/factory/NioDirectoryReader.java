@@ -0,0 +1,109 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Directory reader built on java.nio.file. Each directory is listed once with a DirectoryStream and each entry's
+ * attributes are fetched in a single batch, giving one listing per directory plus one attribute read per entry.
+ *
+ * Where the filesystem has DOS attributes (Windows) these are read instead, as they carry the hidden flag too;
+ * elsewhere a file is hidden when its name starts with a dot, which needs no filesystem call at all.
+ */
+class NioDirectoryReader implements DirectoryReader {
+
+    private final ScanStatistics statistics;
+    private final ScanFilter filter;
+    private final boolean dosAttributes;
+
+    NioDirectoryReader(ScanStatistics statistics, ScanFilter filter) {
+        this.statistics = statistics;
+        this.filter = filter;
+        // Linux also offers a dos view (backed by extended attributes), so only use it where posix is absent
+        Set<String> views = FileSystems.getDefault().supportedFileAttributeViews();
+        this.dosAttributes = views.contains("dos") && !views.contains("posix");
+    }
+
+    @Override
+    public FileTreeNode readRoot(File rootFile) {
+        FileTreeNode root = createNode(rootFile.toPath(), null);
+        if (root == null) {
+            // Mirror java.io.File, which reports a missing root as an empty, non-directory node
+            statistics.recordNode();
+            root = new FileTreeNode(rootFile, null);
+        }
+        return root;
+    }
+
+    @Override
+    public FileTreeNode readNode(File file, FileTreeNode parent) {
+        return createNode(file.toPath(), parent);
+    }
+
+    @Override
+    public List<FileTreeNode> readChildren(FileTreeNode directory) {
+        List<FileTreeNode> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(directory.getPath()))) {
+            statistics.recordDirectoryListing();
+            for (Path path : stream) {
+                if (filter.isIgnored(path.getFileName().toString(), path.toString())) {
+                    statistics.recordIgnored();
+                    continue;
+                }
+                FileTreeNode n = createNode(path, directory);
+                if (n != null && filter.accepts(n)) {
+                    children.add(n);
+                }
+            }
+        } catch (IOException | DirectoryIteratorException | SecurityException e) {
+            return Collections.emptyList();
+        }
+        return children;
+    }
+
+    /**
+     * Create a node from a single batched attribute read. Symbolic links are followed, as java.io.File does,
+     * falling back to the link's own attributes when its target is missing.
+     *
+     * @param path the path of the entry
+     * @param parent the parent node, null for a root
+     * @return the node, or null if the entry vanished or could not be read
+     */
+    private FileTreeNode createNode(Path path, FileTreeNode parent) {
+        Class<? extends BasicFileAttributes> type = dosAttributes ? DosFileAttributes.class : BasicFileAttributes.class;
+        BasicFileAttributes attributes;
+        try {
+            statistics.recordAttributeReads(1);
+            attributes = Files.readAttributes(path, type);
+        } catch (IOException e) {
+            try {
+                statistics.recordAttributeReads(1);
+                attributes = Files.readAttributes(path, type, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException | UnsupportedOperationException inner) {
+                return null;
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return null;
+        }
+
+        statistics.recordNode();
+        return new FileTreeNode(path, attributes, isHidden(path, attributes), parent);
+    }
+
+    private boolean isHidden(Path path, BasicFileAttributes attributes) {
+        if (attributes instanceof DosFileAttributes) {
+            return ((DosFileAttributes) attributes).isHidden();
+        }
+        Path name = path.getFileName();
+        return name != null && name.toString().startsWith(".");
+    }
+}
@@ -4,9 +4,11 @@ package graph.factory;
  * Created by conor on 11/10/2014.
  */
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Allows the client to configure how the graph is set up.
@@ -16,11 +18,37 @@ public class Options {
     private final int maxDepth;
     private final List<String> typeFilters;
     private final List<String> ignoreList;
+    private final ScanMode scanMode;
+    private final int threads;
+    private final boolean nio;
+    private final int maxInFlightListings;
+    private final String snapshotPath;
+    private final boolean fullRescan;
+    private final boolean sniffTypes;
+    private final String typeCachePath;
+    private final List<String> includedPaths;
+    private final double sampleRate;
+    private final SampleMode sampleMode;
+    private final int sampleDepth;
+    private final long sampleSeed;
 
     public static class Builder {
         private int maxDepth = 1000;
         private List<String> typeFilters = Collections.EMPTY_LIST;
         private List<String> ignoreList = Collections.EMPTY_LIST;
+        private ScanMode scanMode = ScanMode.SEQUENTIAL;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private boolean nio = true;
+        private int maxInFlightListings = 256;
+        private String snapshotPath = null;
+        private boolean fullRescan = false;
+        private boolean sniffTypes = false;
+        private String typeCachePath = null;
+        private List<String> includedPaths = Collections.EMPTY_LIST;
+        private double sampleRate = 1;
+        private SampleMode sampleMode = SampleMode.STRATIFIED;
+        private int sampleDepth = 3;
+        private long sampleSeed = 0;
 
         public Builder maxDepth(int maxDepth) {
             this.maxDepth = maxDepth;
@@ -50,7 +78,129 @@ public class Options {
 
         public Builder ignoreList(String... ignores) {
             if (ignores != null) {
-                this.typeFilters = Arrays.asList(ignores);
+                this.ignoreList = Arrays.asList(ignores);
+            }
+            return this;
+        }
+
+        public Builder scanMode(ScanMode scanMode) {
+            if (scanMode != null) {
+                this.scanMode = scanMode;
+            }
+            return this;
+        }
+
+        public Builder scanMode(String scanMode) {
+            if (scanMode != null) {
+                this.scanMode = ScanMode.valueOf(scanMode.toUpperCase());
+            }
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            if (threads > 0) {
+                this.threads = threads;
+            }
+            return this;
+        }
+
+        public Builder nio(boolean nio) {
+            this.nio = nio;
+            return this;
+        }
+
+        public Builder maxInFlightListings(int maxInFlightListings) {
+            if (maxInFlightListings > 0) {
+                this.maxInFlightListings = maxInFlightListings;
+            }
+            return this;
+        }
+
+        public Builder snapshotPath(String snapshotPath) {
+            this.snapshotPath = snapshotPath;
+            return this;
+        }
+
+        public Builder fullRescan(boolean fullRescan) {
+            this.fullRescan = fullRescan;
+            return this;
+        }
+
+        public Builder sniffTypes(boolean sniffTypes) {
+            this.sniffTypes = sniffTypes;
+            return this;
+        }
+
+        public Builder typeCachePath(String typeCachePath) {
+            this.typeCachePath = typeCachePath;
+            return this;
+        }
+
+        public Builder includedPaths(List<String> paths) {
+            if (paths != null) {
+                this.includedPaths = paths;
+            }
+            return this;
+        }
+
+        public Builder sampleRate(double sampleRate) {
+            if (sampleRate > 0 && sampleRate <= 1) {
+                this.sampleRate = sampleRate;
+            }
+            return this;
+        }
+
+        public Builder sampleMode(SampleMode sampleMode) {
+            if (sampleMode != null) {
+                this.sampleMode = sampleMode;
+            }
+            return this;
+        }
+
+        public Builder sampleMode(String sampleMode) {
+            if (sampleMode != null) {
+                this.sampleMode = SampleMode.valueOf(sampleMode.toUpperCase());
+            }
+            return this;
+        }
+
+        public Builder sampleDepth(int sampleDepth) {
+            if (sampleDepth > 1) {
+                this.sampleDepth = sampleDepth;
+            }
+            return this;
+        }
+
+        public Builder sampleSeed(long sampleSeed) {
+            this.sampleSeed = sampleSeed;
+            return this;
+        }
+
+        /**
+         * Narrow the scan to what the given consumer needs, on top of the other options. Type restrictions are
+         * only pushed down when types come from file names, as types sniffed from contents are not known when
+         * the filters are applied.
+         * @param pushdown the restrictions the consumer of the scan will apply anyway
+         * @return this builder
+         */
+        public Builder pushDown(ScanPushdown pushdown) {
+            if (pushdown.getMaxNodeDepth() < Integer.MAX_VALUE) {
+                // Nodes are only added to the tree shallower than maxDepth
+                this.maxDepth = Math.min(this.maxDepth, pushdown.getMaxNodeDepth() + 1);
+            }
+            if (!pushdown.getFileTypes().isEmpty() && !sniffTypes) {
+                List<String> types = new ArrayList<>(pushdown.getFileTypes());
+                if (!typeFilters.isEmpty()) {
+                    types.retainAll(typeFilters);
+                    if (types.isEmpty()) {
+                        // Nothing can match, but an empty filter would let everything through
+                        types.add("");
+                    }
+                }
+                this.typeFilters = types;
+            }
+            if (!pushdown.getPathPrefixes().isEmpty()) {
+                this.includedPaths = pushdown.getPathPrefixes();
             }
             return this;
         }
@@ -72,9 +222,136 @@ public class Options {
         return this.ignoreList;
     }
 
+    public ScanMode getScanMode() {
+        return this.scanMode;
+    }
+
+    /**
+     * The number of worker threads used by the parallel scan modes.
+     * @return thread count
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Whether to scan with java.nio.file, reading each entry's attributes in one call, rather than java.io.File.
+     * @return if the NIO scanner is used
+     */
+    public boolean isNio() {
+        return this.nio;
+    }
+
+    /**
+     * The cap on directory listings running at once in the virtual thread scan mode.
+     * @return max listings in flight
+     */
+    public int getMaxInFlightListings() {
+        return this.maxInFlightListings;
+    }
+
+    /**
+     * Where the tree is saved after a scan and reloaded from on the next, to rescan only what changed.
+     * @return the snapshot path, null if snapshots are disabled
+     */
+    public String getSnapshotPath() {
+        return this.snapshotPath;
+    }
+
+    /**
+     * Whether to ignore any saved snapshot and list every directory again.
+     * @return if a full rescan is forced
+     */
+    public boolean isFullRescan() {
+        return this.fullRescan;
+    }
+
+    /**
+     * Whether to detect file types from the first bytes of each file's contents, rather than from its extension.
+     * @return if file types are sniffed
+     */
+    public boolean isSniffTypes() {
+        return this.sniffTypes;
+    }
+
+    /**
+     * Where the types detected for files are saved, so unchanged files are not read again on the next scan.
+     * @return the type cache path, null if types are only cached for a single scan
+     */
+    public String getTypeCachePath() {
+        return this.typeCachePath;
+    }
+
+    /**
+     * Paths the scan is limited to. Entries neither under nor above one of these are skipped without being read.
+     * @return the included paths, empty if the whole of each root is scanned
+     */
+    public List<String> getIncludedPaths() {
+        return this.includedPaths;
+    }
+
+    /**
+     * The share of directories scanned by a sampling scan.
+     * @return the sampling rate, 1 when every directory is scanned
+     */
+    public double getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * Whether the scan samples directories rather than scanning all of them.
+     * @return if the scan is a sampling scan
+     */
+    public boolean isSampling() {
+        return this.sampleRate < 1;
+    }
+
+    public SampleMode getSampleMode() {
+        return this.sampleMode;
+    }
+
+    /**
+     * The depth from which a sampling scan picks directories, with roots at depth 1. Everything above this depth
+     * is always scanned.
+     * @return the sampling depth
+     */
+    public int getSampleDepth() {
+        return this.sampleDepth;
+    }
+
+    /**
+     * Seed for picking directories, so that a sampling scan of an unchanged tree picks the same ones.
+     * @return the seed
+     */
+    public long getSampleSeed() {
+        return this.sampleSeed;
+    }
+
+    /**
+     * Fingerprint of the options which decide what ends up in the tree, including how file types are worked out.
+     * A tree scanned with one set of these options cannot stand in for a scan with another.
+     * @return the fingerprint
+     */
+    public int getTreeFingerprint() {
+        return Objects.hash(maxDepth, ignoreList, typeFilters, includedPaths, sniffTypes);
+    }
+
     public Options(Builder b) {
         this.ignoreList = b.ignoreList;
         this.maxDepth = b.maxDepth;
         this.typeFilters = b.typeFilters;
+        this.scanMode = b.scanMode;
+        this.threads = b.threads;
+        this.nio = b.nio;
+        this.maxInFlightListings = b.maxInFlightListings;
+        this.snapshotPath = b.snapshotPath;
+        this.fullRescan = b.fullRescan;
+        this.sniffTypes = b.sniffTypes;
+        this.typeCachePath = b.typeCachePath;
+        this.includedPaths = b.includedPaths;
+        this.sampleRate = b.sampleRate;
+        this.sampleMode = b.sampleMode;
+        this.sampleDepth = b.sampleDepth;
+        this.sampleSeed = b.sampleSeed;
     }
 }
@@ -0,0 +1,20 @@
+package graph.factory;
+
+/**
+ * How directories are picked from each stratum (the subdirectories of one parent) in a sampling scan. In both,
+ * each directory picked is scanned in full and the rest are not listed at all. See ScanSample.
+ */
+public enum SampleMode {
+
+    /**
+     * Pick each directory independently, with probability equal to the sampling rate. The number picked varies
+     * from scan to scan.
+     */
+    RANDOM,
+
+    /**
+     * Pick exactly the sampling rate's share of each stratum. Every part of the tree is represented, which
+     * tightens the estimates where directories differ a lot from one parent to the next.
+     */
+    STRATIFIED
+}
@@ -0,0 +1,61 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reader which wraps another and scans only a sample of the tree, as laid out in a ScanSample. Directories are
+ * listed as usual, and where one heads a stratum its subdirectories are picked from; a directory which was not
+ * picked is left with no children, without being listed.
+ *
+ * Sits outermost, so nothing beneath a directory left out (listings, attribute reads, type detection) is done.
+ */
+class SamplingDirectoryReader implements DirectoryReader {
+
+    private final DirectoryReader delegate;
+    private final ScanStatistics statistics;
+    private final ScanSample sample;
+
+    /**
+     *
+     * @param delegate the reader doing the actual filesystem access
+     * @param statistics the statistics to record directories left out in
+     * @param sample the sample design, which records the picks made
+     */
+    SamplingDirectoryReader(DirectoryReader delegate, ScanStatistics statistics, ScanSample sample) {
+        this.delegate = delegate;
+        this.statistics = statistics;
+        this.sample = sample;
+    }
+
+    @Override
+    public FileTreeNode readRoot(File rootFile) {
+        return delegate.readRoot(rootFile);
+    }
+
+    @Override
+    public FileTreeNode readNode(File file, FileTreeNode parent) {
+        return delegate.readNode(file, parent);
+    }
+
+    @Override
+    public List<FileTreeNode> readChildren(FileTreeNode directory) {
+        if (sample.isLeftOut(directory)) {
+            statistics.recordSampledOut();
+            return Collections.emptyList();
+        }
+        List<FileTreeNode> children = delegate.readChildren(directory);
+        if (sample.isStratum(directory)) {
+            sample.pick(directory, children);
+        }
+        return children;
+    }
+
+    @Override
+    public void finish() {
+        delegate.finish();
+    }
+}
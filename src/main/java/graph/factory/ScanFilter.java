@@ -0,0 +1,209 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The ignore list and type filters from the options, compiled once before a scan so that each entry can be
+ * checked in constant time rather than against every rule in turn.
+ *
+ * Ignore rules take three forms:
+ * - a plain name (node_modules, .git), matched exactly against an entry's name with a hash lookup
+ * - an extension glob (*.bak, *.tar.gz), matched against the end of the entry's name after each dot with a hash
+ *   lookup
+ * - any other glob (backup-*, /mnt/snapshots/**), all combined into a single regular expression. Globs
+ *   containing a separator are matched against the full path: an absolute glob from the root of the filesystem,
+ *   a relative one (jvm/**) against the end of the path, starting at any element. Others match the name only.
+ *   A glob ending in /** matches the directory itself as well as everything under it.
+ *
+ * Ignored entries are dropped by name before their attributes are read, so an ignored directory is never
+ * listed. Type filters, when given, restrict the files kept to those types; directories are always kept. Included
+ * paths, when given, skip everything which is neither under nor above one of them.
+ */
+public class ScanFilter {
+
+    private static final ScanFilter NONE = new ScanFilter(new Options.Builder().build());
+
+    private final Set<String> ignoredNames = new HashSet<>();
+    private final Set<String> ignoredTypes = new HashSet<>();
+    private boolean ignoredTypesHaveDots;
+    private final Pattern ignoredNameGlobs;
+    private final Pattern ignoredPathGlobs;
+    private final Set<String> includedTypes;
+    private final List<String> includedPaths;
+
+    /**
+     * Compile the filtering rules in the given options.
+     * @param options the scan options
+     */
+    public ScanFilter(Options options) {
+        this(options, true);
+    }
+
+    /**
+     * Compile the filtering rules in the given options, optionally leaving out the type filters, e.g. for a
+     * reader whose file types are only settled later.
+     * @param options the scan options
+     * @param filterTypes whether to apply the type filters
+     */
+    ScanFilter(Options options, boolean filterTypes) {
+        List<String> nameGlobs = new ArrayList<>();
+        List<String> pathGlobs = new ArrayList<>();
+
+        for (String rule : options.getIgnoreList()) {
+            if (rule == null || rule.isEmpty()) {
+                continue;
+            }
+            if (rule.startsWith("*.") && !hasWildcard(rule.substring(2))) {
+                ignoredTypes.add(rule.substring(2));
+                ignoredTypesHaveDots |= rule.indexOf('.', 2) != -1;
+            } else if (rule.indexOf('/') != -1 || rule.indexOf(File.separatorChar) != -1) {
+                pathGlobs.add(isAbsolute(rule) ? globToRegex(rule) : "(?:.*[/\\\\])?" + globToRegex(rule));
+            } else if (hasWildcard(rule)) {
+                nameGlobs.add(globToRegex(rule));
+            } else {
+                ignoredNames.add(rule);
+            }
+        }
+
+        this.ignoredNameGlobs = nameGlobs.isEmpty() ? null : Pattern.compile(String.join("|", nameGlobs));
+        this.ignoredPathGlobs = pathGlobs.isEmpty() ? null : Pattern.compile(String.join("|", pathGlobs));
+        this.includedTypes = (!filterTypes || options.getTypeFilters().isEmpty()) ? null :
+                new HashSet<>(options.getTypeFilters());
+        this.includedPaths = new ArrayList<>();
+        for (String included : options.getIncludedPaths()) {
+            this.includedPaths.add(included.endsWith(File.separator) && included.length() > 1 ?
+                    included.substring(0, included.length() - 1) : included);
+        }
+    }
+
+    /**
+     * A filter which lets everything through.
+     * @return a filter with no rules
+     */
+    public static ScanFilter none() {
+        return NONE;
+    }
+
+    /**
+     * Whether an entry should be skipped on its name and path alone, before any filesystem call is made for it.
+     * @param name the entry's file name
+     * @param path the entry's full path
+     * @return if the entry is ignored
+     */
+    public boolean isIgnored(String name, String path) {
+        if (ignoredNames.contains(name)) {
+            return true;
+        }
+        if (!ignoredTypes.isEmpty() && hasIgnoredExtension(name)) {
+            return true;
+        }
+        if (ignoredNameGlobs != null && ignoredNameGlobs.matcher(name).matches()) {
+            return true;
+        }
+        if (ignoredPathGlobs != null && ignoredPathGlobs.matcher(path).matches()) {
+            return true;
+        }
+        return !includedPaths.isEmpty() && !isOnIncludedPath(path);
+    }
+
+    /**
+     * Whether the name ends in one of the ignored extensions. A name without a dot has no extension, so *.bak does
+     * not ignore a file called bak. Only the last dot can start a single part extension, so the others are only
+     * tried when a rule such as *.tar.gz has more than one part.
+     */
+    private boolean hasIgnoredExtension(String name) {
+        int dot = ignoredTypesHaveDots ? name.indexOf('.') : name.lastIndexOf('.');
+        while (dot != -1) {
+            if (ignoredTypes.contains(name.substring(dot + 1))) {
+                return true;
+            }
+            dot = ignoredTypesHaveDots ? name.indexOf('.', dot + 1) : -1;
+        }
+        return false;
+    }
+
+    /**
+     * Whether a path is one of the included paths, under one, or a directory above one (which must be listed to
+     * reach it).
+     */
+    private boolean isOnIncludedPath(String path) {
+        for (String included : includedPaths) {
+            if (isSameOrUnder(path, included) || isSameOrUnder(included, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSameOrUnder(String path, String directory) {
+        return path.startsWith(directory) && (path.length() == directory.length() ||
+                directory.endsWith(File.separator) || path.charAt(directory.length()) == File.separatorChar);
+    }
+
+    /**
+     * Whether a node, once its attributes are known, should be kept in the tree.
+     * @param node the node
+     * @return if the node passes the type filters
+     */
+    public boolean accepts(FileTreeNode node) {
+        return includedTypes == null || node.isDirectory() || includedTypes.contains(node.getFileType());
+    }
+
+    private static boolean isAbsolute(String glob) {
+        return glob.startsWith("/") || glob.startsWith(File.separator) || new File(glob).isAbsolute();
+    }
+
+    private static boolean hasWildcard(String glob) {
+        return glob.indexOf('*') != -1 || glob.indexOf('?') != -1;
+    }
+
+    /**
+     * Convert a glob into an equivalent regular expression. '*' matches within a single path element, '**'
+     * across elements and '?' any one character. A trailing '/**' also matches the directory it follows.
+     * @param glob the glob
+     * @return the regular expression
+     */
+    public static String globToRegex(String glob) {
+        String suffix = "";
+        if (glob.length() > 3 && glob.endsWith("**") && isSeparator(glob.charAt(glob.length() - 3))) {
+            glob = glob.substring(0, glob.length() - 3);
+            suffix = "(?:[/\\\\].*)?";
+        }
+        StringBuilder regex = new StringBuilder("(?:");
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c != '*' && c != '?') {
+                literal.append(c);
+                continue;
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+            if (c == '?') {
+                regex.append("[^/\\\\]");
+            } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else {
+                regex.append("[^/\\\\]*");
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.append(suffix).append(")").toString();
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == File.separatorChar;
+    }
+}
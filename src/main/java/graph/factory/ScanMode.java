@@ -0,0 +1,23 @@
+package graph.factory;
+
+/**
+ * The strategies available to the graph factory for walking the filesystem.
+ */
+public enum ScanMode {
+
+    /**
+     * Walk the tree breadth first on the calling thread.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Walk the tree on a work-stealing fork/join pool, each directory listing being a separate task.
+     */
+    FORK_JOIN,
+
+    /**
+     * Give every pending directory listing its own (virtual, where available) thread, capped at a maximum number
+     * of listings in flight. Suited to high latency mounts, where listings mostly wait on the network.
+     */
+    VIRTUAL_THREADS
+}
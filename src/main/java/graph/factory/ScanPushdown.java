@@ -0,0 +1,29 @@
+package graph.factory;
+
+import java.util.List;
+
+/**
+ * Restrictions which a consumer of a scan (such as a query) knows it will apply to every node anyway, so the scan
+ * can apply them itself and never read the subtrees they rule out. Each restriction may only narrow the scan to
+ * a superset of what the consumer needs; the consumer still checks every node it is given.
+ */
+public interface ScanPushdown {
+
+    /**
+     * The greatest depth of node which is needed, with roots at depth 1.
+     * @return the deepest node needed, Integer.MAX_VALUE if any depth may be
+     */
+    int getMaxNodeDepth();
+
+    /**
+     * The only file types needed.
+     * @return the types, empty if files of any type may be
+     */
+    List<String> getFileTypes();
+
+    /**
+     * The only paths needed: nodes which are neither under nor above one of these paths can be skipped.
+     * @return the paths, empty if any path may be
+     */
+    List<String> getPathPrefixes();
+}
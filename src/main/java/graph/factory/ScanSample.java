@@ -0,0 +1,188 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The design of a sampling scan, and which directories it picked. Directories down to the sampling depth are
+ * always scanned. Below that, the subdirectories of each scanned directory form a stratum: if there are at least
+ * MIN_STRATUM of them, a sample of them is picked as sampling units, each scanned in full while the rest are not
+ * listed at all. Smaller strata are scanned in full, and the choice is made again one level down. Sampling so
+ * happens where the tree fans out, rather than at a fixed depth where a few directories may hold most of the tree.
+ *
+ * Each picked unit carries a weight, the inverse of its chance of being picked, by which everything found beneath
+ * it is scaled up to estimate the whole tree. Picks are made as each parent is listed, possibly from many
+ * scanning threads at once, and are decided by the seed and the paths involved alone, so a rescan of an
+ * unchanged tree picks the same units whatever order the directories are listed in.
+ */
+public class ScanSample {
+
+    // Fewest subdirectories worth sampling from; a parent with fewer is not fanning out yet
+    private static final int MIN_STRATUM = 10;
+
+    // Decisions recorded against each directory a stratum was drawn from
+    private static final double LEFT_OUT = 0;
+    private static final double SCANNED = 1;
+
+    private final double rate;
+    private final SampleMode mode;
+    private final int sampleDepth;
+    private final long seed;
+
+    // Every directory in a stratum: LEFT_OUT, SCANNED (in a stratum too small to sample) or a picked unit's weight
+    private final Map<FileTreeNode, Double> decisions = new ConcurrentHashMap<>();
+    private final LongAdder candidates = new LongAdder();
+    private final LongAdder units = new LongAdder();
+
+    /**
+     * @param options the scan options, which must ask for sampling
+     */
+    ScanSample(Options options) {
+        this.rate = options.getSampleRate();
+        this.mode = options.getSampleMode();
+        this.sampleDepth = options.getSampleDepth();
+        this.seed = options.getSampleSeed();
+    }
+
+    /**
+     * Whether a directory's subdirectories are to be drawn from once it is listed: it is just above the sampling
+     * depth, or below it in a stratum which was scanned in full.
+     * @param directory the directory listed
+     * @return if a stratum is drawn from its subdirectories
+     */
+    boolean isStratum(FileTreeNode directory) {
+        return directory.getDepth() == sampleDepth - 1 ||
+                (directory.getDepth() >= sampleDepth && decisions.getOrDefault(directory, LEFT_OUT) == SCANNED);
+    }
+
+    /**
+     * Pick which of a directory's subdirectories are scanned.
+     * @param parent the directory listed
+     * @param children its entries
+     */
+    void pick(FileTreeNode parent, List<FileTreeNode> children) {
+        List<FileTreeNode> directories = new ArrayList<>();
+        children.stream().filter(FileTreeNode::isDirectory).forEach(directories::add);
+        if (directories.isEmpty()) {
+            return;
+        }
+        if (directories.size() < MIN_STRATUM) {
+            // Too few to sample from: scan them all, and sample further down instead
+            directories.forEach((d) -> decisions.put(d, SCANNED));
+            return;
+        }
+        candidates.add(directories.size());
+        directories.forEach((d) -> decisions.put(d, LEFT_OUT));
+
+        if (mode == SampleMode.RANDOM) {
+            for (FileTreeNode d : directories) {
+                if (uniform(d.getPath()) < rate) {
+                    decisions.put(d, 1 / rate);
+                    units.increment();
+                }
+            }
+            return;
+        }
+
+        // Stratified: a fixed share of the stratum, shuffled by a generator seeded from the parent so that the
+        // picks do not depend on listing order. A share of less than one directory becomes a single directory
+        // picked with that probability, which keeps each directory's chance at the sampling rate.
+        directories.sort(Comparator.comparing(FileTreeNode::getPath));
+        Random random = new Random(mix(seed ^ parent.getPath().hashCode()));
+        double share = rate * directories.size();
+        int picked = (int) Math.round(share);
+        double weight = (double) directories.size() / picked;
+        if (picked == 0) {
+            picked = (random.nextDouble() < share) ? 1 : 0;
+            weight = 1 / rate;
+        }
+        for (int i = 0; i < picked; i++) {
+            int j = i + random.nextInt(directories.size() - i);
+            FileTreeNode swap = directories.get(i);
+            directories.set(i, directories.get(j));
+            directories.set(j, swap);
+            decisions.put(directories.get(i), weight);
+        }
+        units.add(picked);
+    }
+
+    /**
+     * A number in [0, 1) derived from the seed and a path, standing in for a random draw.
+     */
+    private double uniform(String path) {
+        return (mix(seed * 31 + path.hashCode()) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Scramble the bits of a value (the finaliser of SplitMix64), so nearby inputs give unrelated outputs.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Whether a directory is one of the units picked, and so was scanned in full.
+     * @param directory the directory
+     * @return if the directory is a picked unit
+     */
+    public boolean isUnit(FileTreeNode directory) {
+        return decisions.getOrDefault(directory, LEFT_OUT) > SCANNED;
+    }
+
+    /**
+     * Whether a directory was in a stratum but not picked, so its contents are unknown.
+     * @param directory the directory
+     * @return if the directory was left out
+     */
+    boolean isLeftOut(FileTreeNode directory) {
+        Double decision = decisions.get(directory);
+        return decision != null && decision == LEFT_OUT;
+    }
+
+    /**
+     * The factor by which everything beneath a picked unit is scaled up.
+     * @param unit the picked unit
+     * @return the unit's weight, 1 for a directory which is not a picked unit
+     */
+    public double getWeight(FileTreeNode unit) {
+        return Math.max(SCANNED, decisions.getOrDefault(unit, SCANNED));
+    }
+
+    /**
+     * @return the number of units picked and scanned
+     */
+    public long getUnitCount() {
+        return units.sum();
+    }
+
+    /**
+     * @return the number of directories in the strata sampled from, picked or not
+     */
+    public long getCandidateCount() {
+        return candidates.sum();
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public SampleMode getMode() {
+        return mode;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s sample of %d of %d directories from depth %d down (rate %.1f%%)",
+                mode.name().charAt(0) + mode.name().substring(1).toLowerCase(), getUnitCount(),
+                getCandidateCount(), sampleDepth, rate * 100);
+    }
+}
@@ -0,0 +1,147 @@
+package graph.factory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the filesystem calls made while building a tree, so the cost of the different scanners can be compared.
+ * Counters are safe to update from any number of scanning threads.
+ */
+public class ScanStatistics {
+
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder directoryListings = new LongAdder();
+    private final LongAdder attributeReads = new LongAdder();
+    private final LongAdder ignored = new LongAdder();
+    private final LongAdder reusedListings = new LongAdder();
+    private final LongAdder headerReads = new LongAdder();
+    private final LongAdder cachedTypes = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+
+    void recordNode() {
+        nodes.increment();
+    }
+
+    void recordDirectoryListing() {
+        directoryListings.increment();
+    }
+
+    void recordAttributeReads(int count) {
+        attributeReads.add(count);
+    }
+
+    void recordIgnored() {
+        ignored.increment();
+    }
+
+    void recordReusedListing() {
+        reusedListings.increment();
+    }
+
+    void recordHeaderRead() {
+        headerReads.increment();
+    }
+
+    void recordCachedType() {
+        cachedTypes.increment();
+    }
+
+    void recordSampledOut() {
+        sampledOut.increment();
+    }
+
+    /**
+     * The number of nodes created during the scan.
+     * @return node count
+     */
+    public long getNodeCount() {
+        return nodes.sum();
+    }
+
+    /**
+     * The number of times a directory's entries were listed.
+     * @return listing count
+     */
+    public long getDirectoryListings() {
+        return directoryListings.sum();
+    }
+
+    /**
+     * The number of calls made to read a single attribute (or batch of attributes) of a file.
+     * @return attribute read count
+     */
+    public long getAttributeReads() {
+        return attributeReads.sum();
+    }
+
+    /**
+     * The number of entries skipped by the ignore list, without their attributes being read.
+     * @return ignored entry count
+     */
+    public long getIgnoredCount() {
+        return ignored.sum();
+    }
+
+    /**
+     * The number of directories whose entries were taken from a previous scan rather than listed again.
+     * @return reused listing count
+     */
+    public long getReusedListings() {
+        return reusedListings.sum();
+    }
+
+    /**
+     * The number of files whose first bytes were read to detect their type.
+     * @return header read count
+     */
+    public long getHeaderReads() {
+        return headerReads.sum();
+    }
+
+    /**
+     * The number of files whose type was taken from the type cache rather than read.
+     * @return cached type count
+     */
+    public long getCachedTypes() {
+        return cachedTypes.sum();
+    }
+
+    /**
+     * The number of directories a sampling scan left out, without listing them.
+     * @return skipped directory count
+     */
+    public long getSampledOut() {
+        return sampledOut.sum();
+    }
+
+    /**
+     * Total filesystem calls made, listings and attribute reads combined.
+     * @return filesystem call count
+     */
+    public long getFilesystemCalls() {
+        return getDirectoryListings() + getAttributeReads();
+    }
+
+    /**
+     * Average filesystem calls made per node created.
+     * @return calls per node, or zero if nothing was scanned
+     */
+    public double getCallsPerNode() {
+        long n = getNodeCount();
+        return n == 0 ? 0 : (double) getFilesystemCalls() / n;
+    }
+
+    @Override
+    public String toString() {
+        String out = "Nodes: %d, ignored: %d, directory listings: %d (%d reused), attribute reads: %d " +
+                "(%.2f filesystem calls per node).";
+        String stats = String.format(out, getNodeCount(), getIgnoredCount(), getDirectoryListings(),
+                getReusedListings(), getAttributeReads(), getCallsPerNode());
+        if (getHeaderReads() + getCachedTypes() > 0) {
+            stats += String.format(" Types detected: %d read, %d cached.", getHeaderReads(), getCachedTypes());
+        }
+        if (getSampledOut() > 0) {
+            stats += String.format(" Directories left out by sampling: %d.", getSampledOut());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,173 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Reader which wraps another and sets the type of each file from its contents (see FileTypeSniffer) rather than
+ * its extension. The first bytes of a directory's files are read together on a pool of I/O threads, each reading
+ * into its own reused direct buffer. Types are kept in a FileTypeCache, so a file which has not changed since its
+ * type was detected is never read again.
+ *
+ * Only regular files are read: opening a named pipe with no writer, or a device, could block the scan for good.
+ * A read which still has not finished after READ_TIMEOUT_MILLIS is given up on, and the file keeps the type
+ * given by its extension. The type filters are applied here, once types are known, rather than by the reader
+ * doing the listing.
+ */
+class SniffingDirectoryReader implements DirectoryReader {
+
+    static final long READ_TIMEOUT_MILLIS = 5000;
+
+    private final DirectoryReader delegate;
+    private final ScanFilter filter;
+    private final ScanStatistics statistics;
+    private final FileTypeCache cache;
+    private final Path cachePath;
+    private final ExecutorService io;
+    private final ThreadLocal<ByteBuffer> buffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(FileTypeSniffer.HEADER_BYTES));
+
+    /**
+     *
+     * @param delegate the reader doing the listing, with no type filters of its own
+     * @param filter the filter whose type filters are applied to the detected types
+     * @param statistics the statistics to record header reads in
+     * @param cachePath where the type cache is kept between scans, null to keep it for this scan only
+     * @param threads the number of files read at once
+     */
+    SniffingDirectoryReader(DirectoryReader delegate, ScanFilter filter, ScanStatistics statistics, String cachePath,
+                            int threads) {
+        this.delegate = delegate;
+        this.filter = filter;
+        this.statistics = statistics;
+        this.cachePath = (cachePath == null) ? null : Paths.get(cachePath);
+        this.cache = (cachePath == null) ? new FileTypeCache() : FileTypeCache.load(this.cachePath);
+        this.io = Executors.newFixedThreadPool(threads, (r) -> {
+            Thread t = new Thread(r, "type-sniffer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public FileTreeNode readRoot(File rootFile) {
+        FileTreeNode root = delegate.readRoot(rootFile);
+        detectTypes(Collections.singletonList(root));
+        return root;
+    }
+
+    @Override
+    public FileTreeNode readNode(File file, FileTreeNode parent) {
+        FileTreeNode n = delegate.readNode(file, parent);
+        if (n == null) {
+            return null;
+        }
+        detectTypes(Collections.singletonList(n));
+        return filter.accepts(n) ? n : null;
+    }
+
+    @Override
+    public List<FileTreeNode> readChildren(FileTreeNode directory) {
+        List<FileTreeNode> children = delegate.readChildren(directory);
+        detectTypes(children);
+        List<FileTreeNode> accepted = new ArrayList<>(children.size());
+        for (FileTreeNode n : children) {
+            if (filter.accepts(n)) {
+                accepted.add(n);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Set the type of each file among the given nodes, from the cache where possible and otherwise by reading
+     * the files in parallel. Returns once every type is set.
+     */
+    private void detectTypes(List<FileTreeNode> nodes) {
+        List<FileTreeNode> read = new ArrayList<>();
+        List<Future<String>> types = new ArrayList<>();
+        for (FileTreeNode n : nodes) {
+            if (!n.isRegularFile()) {
+                continue;
+            }
+            String cached = cache.get(n.getPath(), n.getFileSize(), n.getLastModified());
+            if (cached != null) {
+                n.setFileType(cached);
+                statistics.recordCachedType();
+            } else {
+                read.add(n);
+                types.add(io.submit(() -> detectType(n)));
+            }
+        }
+
+        // Types are set here rather than on the I/O threads, so a read given up on cannot change a node later
+        for (int i = 0; i < types.size(); i++) {
+            FileTreeNode n = read.get(i);
+            try {
+                String type = types.get(i).get(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (type != null) {
+                    n.setFileType(type);
+                    cache.put(n.getPath(), n.getFileSize(), n.getLastModified(), type);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                System.err.println("Could not detect a file type: " + e.getCause().getMessage());
+            } catch (TimeoutException e) {
+                types.get(i).cancel(true);
+                System.err.println("Gave up reading: " + n.getPath() + ", typing it by its extension.");
+            }
+        }
+    }
+
+    /**
+     * Read the start of a file and work out its type.
+     * @return the type, or null if the file could not be read
+     */
+    private String detectType(FileTreeNode n) {
+        ByteBuffer header = buffers.get();
+        header.clear();
+        try (FileChannel channel = FileChannel.open(Paths.get(n.getPath()), StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the buffer is full or the file ends
+            }
+        } catch (IOException | InvalidPathException e) {
+            // Keep the type given by the extension
+            return null;
+        }
+        header.flip();
+        statistics.recordHeaderRead();
+        return FileTypeSniffer.sniff(header, n.getName());
+    }
+
+    @Override
+    public void finish() {
+        io.shutdown();
+        delegate.finish();
+        if (cachePath != null) {
+            try {
+                cache.save(cachePath);
+            } catch (IOException e) {
+                System.err.println("Could not save type cache: " + cachePath + ". " + e.getMessage());
+            }
+        }
+    }
+}
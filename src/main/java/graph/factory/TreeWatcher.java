@@ -0,0 +1,388 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+import graph.SubtreeRollup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps scanned trees up to date from filesystem events, in place of rescanning them. Every directory whose
+ * entries were listed is watched with a WatchService; events are gathered into batches, and each batch is applied
+ * by statting just the entries named in its events (a directory's events are coalesced, so an entry changed many
+ * times in a batch is read once). A directory whose events overflowed is listed again, on its own.
+ *
+ * Applying a batch builds new copies of the changed directories and the directories above them, sharing every
+ * other node with the old tree, and works out their subtree summaries from those of their children; the cost of a
+ * batch depends on the depth and width of the changed paths, not on the size of the tree.
+ *
+ * Readers need no locks. The only change made to a node already in a tree is to its parent link: once the whole
+ * batch is built and frozen, each shared node is moved under the new copy of its parent, so the old copies are
+ * not kept reachable from the new tree. The link is volatile and only ever points at a finished copy of the same
+ * directory, so a reader of either tree sees one complete parent or the other.
+ */
+public class TreeWatcher {
+
+    private final DirectoryReader reader;
+    private final ScanStatistics statistics;
+    private final ScanFilter filter;
+    private final int maxDepth;
+    private final WatchService service;
+
+    // The watched directories, by path and by their watch key
+    private final Map<String, WatchKey> keys = new HashMap<>();
+    private final Map<WatchKey, String> directories = new HashMap<>();
+
+    // Events gathered since the last batch was applied: names of changed entries by directory, the paths of
+    // entries which were created, and the directories whose events overflowed
+    private final Map<String, Set<String>> changed = new HashMap<>();
+    private final Set<String> created = new HashSet<>();
+    private final Set<String> overflowed = new HashSet<>();
+
+    // Unchanged nodes shared into the batch being applied, and the copies of their parents to move them under
+    private final Map<FileTreeNode, FileTreeNode> newParents = new IdentityHashMap<>();
+
+    private long events;
+    private long batches;
+    private long rescans;
+    private long failedWatches;
+    private long lastBatchMillis;
+
+    /**
+     *
+     * @param roots the trees to watch
+     * @param reader the reader to read changed entries with
+     * @param statistics the statistics the reader records its filesystem calls in
+     * @param filter the filter the trees were scanned with
+     * @param maxDepth the depth the trees were scanned to
+     * @throws IOException if the filesystem cannot be watched
+     */
+    TreeWatcher(List<FileTreeNode> roots, DirectoryReader reader, ScanStatistics statistics, ScanFilter filter,
+                int maxDepth) throws IOException {
+        this.reader = reader;
+        this.statistics = statistics;
+        this.filter = filter;
+        this.maxDepth = maxDepth;
+        this.service = FileSystems.getDefault().newWatchService();
+        watchAll(roots);
+    }
+
+    /**
+     * Watch every directory in the given trees whose entries were listed, e.g. after a full rescan has replaced
+     * the trees being kept up to date. Directories already watched keep their watch.
+     * @param roots the roots of the trees
+     */
+    public synchronized void watchAll(List<FileTreeNode> roots) {
+        Deque<FileTreeNode> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            FileTreeNode n = queue.pop();
+            if (n.isDirectory() && isListed(n)) {
+                watch(n.getPath());
+                queue.addAll(n.getChildren());
+            }
+        }
+    }
+
+    /**
+     * Wait for changes, then keep gathering them for the given time so they can be applied as one batch.
+     * @param batchMillis how long to gather changes for, from the first
+     * @return false if the watcher has been closed, and there will be no more changes
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitChanges(long batchMillis) throws InterruptedException {
+        try {
+            WatchKey key = service.take();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchMillis);
+            while (key != null) {
+                gather(key);
+                long remaining = deadline - System.nanoTime();
+                key = (remaining > 0) ? service.poll(remaining, TimeUnit.NANOSECONDS) : service.poll();
+            }
+            return true;
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Record the events waiting on a key, then reset it to receive more.
+     */
+    private synchronized void gather(WatchKey key) {
+        String directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            events++;
+            if (directory == null) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflowed.add(directory);
+                continue;
+            }
+            String name = event.context().toString();
+            changed.computeIfAbsent(directory, (d) -> new HashSet<>()).add(name);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                created.add(FileTreeNode.childPath(directory, name));
+            }
+        }
+        if (!key.reset() && directory != null) {
+            // The directory has gone; its parent's events remove it from the tree
+            keys.remove(directory, key);
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Apply the changes gathered so far to the given trees.
+     * @param roots the roots of the trees, as last returned by this or as scanned
+     * @return the roots of the changed trees; trees without changes are returned as they were
+     */
+    public synchronized List<FileTreeNode> apply(List<FileTreeNode> roots) {
+        if (changed.isEmpty() && overflowed.isEmpty()) {
+            return roots;
+        }
+        long start = System.nanoTime();
+
+        // Each changed directory, and each directory above one, is copied; everything else is shared
+        Set<String> dirty = new HashSet<>();
+        Set<String> touched = new HashSet<>(changed.keySet());
+        touched.addAll(overflowed);
+        for (String directory : touched) {
+            // Once a directory is found already marked, so is everything above it
+            Path p = Paths.get(directory);
+            while (p != null && dirty.add(p.toString())) {
+                p = p.getParent();
+            }
+        }
+
+        List<FileTreeNode> updated = new ArrayList<>(roots.size());
+        try {
+            for (FileTreeNode root : roots) {
+                updated.add((root.isDirectory() && dirty.contains(root.getPath())) ? copy(root, null, dirty) : root);
+            }
+            // Only now is every new copy finished, so readers following a parent link never see one half built
+            newParents.forEach(FileTreeNode::setParent);
+        } finally {
+            // Even if the batch could not be applied, its changes are not tried again
+            changed.clear();
+            created.clear();
+            overflowed.clear();
+            newParents.clear();
+        }
+        batches++;
+        lastBatchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * Copy a directory which has changed or is above a change, with its own details read again if its entries
+     * have changed (which moves its modified time on).
+     * @return the copy, or null if the directory has gone
+     */
+    private FileTreeNode copy(FileTreeNode old, FileTreeNode parent, Set<String> dirty) {
+        String path = old.getPath();
+        FileTreeNode directory;
+        if (changed.containsKey(path) || overflowed.contains(path)) {
+            directory = (parent == null) ? reader.readRoot(new File(path)) : reader.readNode(new File(path), parent);
+        } else {
+            directory = new FileTreeNode(path, true, old.getFileSize(), old.getLastModified(), old.isHidden(),
+                    parent);
+            directory.setFileType(old.getFileType());
+        }
+
+        if (directory == null || !directory.isDirectory()) {
+            forget(old);
+            return directory;
+        }
+        return rebuild(old, directory, dirty);
+    }
+
+    /**
+     * Fill in a new copy of a directory from its old copy and the changes to its entries, then freeze and
+     * summarise it.
+     * @param old the old copy
+     * @param directory the new copy, with no children yet
+     * @return the new copy
+     */
+    private FileTreeNode rebuild(FileTreeNode old, FileTreeNode directory, Set<String> dirty) {
+        String path = directory.getPath();
+        List<FileTreeNode> children = new ArrayList<>();
+
+        if (overflowed.contains(path)) {
+            // Changes were lost, so list the directory again and match the entries up with the old ones
+            rescans++;
+            Map<String, FileTreeNode> previous = new HashMap<>();
+            old.getChildren().forEach((child) -> previous.put(child.getName(), child));
+            for (FileTreeNode fresh : reader.readChildren(directory)) {
+                FileTreeNode before = previous.remove(fresh.getName());
+                boolean reused = before != null && before.isDirectory() && fresh.isDirectory() &&
+                        isStillWatched(before.getPath());
+                children.add(reused ? rebuild(before, fresh, dirty) : replace(before, fresh));
+            }
+            previous.values().forEach(this::forget);
+        } else {
+            Set<String> names = changed.getOrDefault(path, Collections.emptySet());
+            Set<String> seen = new HashSet<>();
+            for (FileTreeNode child : old.getChildren()) {
+                String name = child.getName();
+                FileTreeNode n;
+                if (names.contains(name)) {
+                    seen.add(name);
+                    FileTreeNode fresh = readEntry(directory, name);
+                    // A directory created in place of another is scanned afresh rather than built on the old
+                    boolean reused = fresh != null && fresh.isDirectory() && child.isDirectory() &&
+                            !created.contains(child.getPath());
+                    n = (fresh == null) ? forget(child) : reused ? rebuild(child, fresh, dirty) : replace(child, fresh);
+                } else if (child.isDirectory() && dirty.contains(child.getPath())) {
+                    n = copy(child, directory, dirty);
+                } else {
+                    newParents.put(child, directory);
+                    n = child;
+                }
+                if (n != null) {
+                    children.add(n);
+                }
+            }
+            for (String name : names) {
+                FileTreeNode fresh = seen.contains(name) ? null : readEntry(directory, name);
+                if (fresh != null) {
+                    children.add(replace(null, fresh));
+                }
+            }
+        }
+
+        directory.addChildren(children);
+        directory.freeze();
+        SubtreeRollup.summarise(directory);
+        return directory;
+    }
+
+    /**
+     * Read a single entry of a directory, unless the scan would have left it out.
+     * @return the entry's node, or null if it has gone or is filtered out
+     */
+    private FileTreeNode readEntry(FileTreeNode directory, String name) {
+        String path = FileTreeNode.childPath(directory.getPath(), name);
+        if (filter.isIgnored(name, path)) {
+            return null;
+        }
+        FileTreeNode n = reader.readNode(new File(path), directory);
+        return (n != null && filter.accepts(n)) ? n : null;
+    }
+
+    /**
+     * Put a freshly read entry in place of an old one, if any. A new directory is watched and then scanned, so
+     * nothing added to it while it is scanned is missed.
+     * @return the fresh node
+     */
+    private FileTreeNode replace(FileTreeNode old, FileTreeNode fresh) {
+        if (old != null) {
+            forget(old);
+        }
+        if (!fresh.isDirectory()) {
+            return fresh;
+        }
+
+        Deque<FileTreeNode> queue = new ArrayDeque<>();
+        queue.add(fresh);
+        while (!queue.isEmpty()) {
+            FileTreeNode n = queue.poll();
+            if (n.isDirectory() && isListed(n)) {
+                watch(n.getPath());
+                List<FileTreeNode> children = reader.readChildren(n);
+                n.addChildren(children);
+                queue.addAll(children);
+            }
+        }
+        List<FileTreeNode> tree = Collections.singletonList(fresh);
+        FileTreeNode.freezeAll(tree);
+        SubtreeRollup.computeAll(tree);
+        return fresh;
+    }
+
+    /**
+     * Stop watching the directories in a tree which has been removed.
+     * @return null, for the node's place in its parent
+     */
+    private FileTreeNode forget(FileTreeNode old) {
+        Deque<FileTreeNode> queue = new ArrayDeque<>();
+        queue.add(old);
+        while (!queue.isEmpty()) {
+            FileTreeNode n = queue.pop();
+            if (n.isDirectory()) {
+                WatchKey key = keys.remove(n.getPath());
+                if (key != null) {
+                    directories.remove(key);
+                    key.cancel();
+                }
+                queue.addAll(n.getChildren());
+            }
+        }
+        return null;
+    }
+
+    private void watch(String path) {
+        try {
+            WatchKey key = Paths.get(path).register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            keys.put(path, key);
+            directories.put(key, path);
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // Typically the limit on watches has been reached, so changes here are only seen by a rescan
+            if (failedWatches++ == 0) {
+                System.err.println("Could not watch: " + path + ", it will only be updated by a rescan. " + e);
+            }
+        }
+    }
+
+    private boolean isStillWatched(String path) {
+        WatchKey key = keys.get(path);
+        return key != null && key.isValid();
+    }
+
+    /**
+     * Whether a directory's entries were listed by the scan, rather than it being at the maximum depth.
+     */
+    private boolean isListed(FileTreeNode directory) {
+        return directory.getDepth() + 1 < maxDepth;
+    }
+
+    /**
+     * Stop watching, and release anything the reader holds.
+     */
+    public void close() {
+        try {
+            service.close();
+        } catch (IOException e) {
+            System.err.println("Could not close the watch service: " + e.getMessage());
+        }
+        reader.finish();
+    }
+
+    @Override
+    public synchronized String toString() {
+        String out = "Watching %d directories (%d could not be watched): %d events in %d batches, " +
+                "%d directories listed again after an overflow, last batch took %dms. " +
+                "Attribute reads: %d, directory listings: %d.";
+        return String.format(out, keys.size(), failedWatches, events, batches, rescans, lastBatchMillis,
+                statistics.getAttributeReads(), statistics.getDirectoryListings());
+    }
+}
@@ -0,0 +1,93 @@
+package graph.query;
+
+import graph.FileTreeNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A compiled where clause, or part of one: the predicate itself, alongside what is known about the nodes it can
+ * match without reading them. That knowledge is what gets pushed down into the scan, so it must only ever
+ * describe a superset of the matching nodes; when in doubt it is dropped.
+ *
+ * Combining conditions combines the knowledge: 'and' keeps the tighter of each bound, 'or' the looser, and 'not'
+ * loses it all.
+ */
+class Condition {
+
+    static final Condition ALL = new Condition((n) -> true, Integer.MAX_VALUE, null, null);
+
+    private final Predicate<FileTreeNode> predicate;
+    private final int maxDepth;
+    private final List<String> types;
+    private final List<String> pathPrefixes;
+
+    /**
+     * @param predicate the compiled test
+     * @param maxDepth the deepest a matching node can be, Integer.MAX_VALUE if unknown
+     * @param types the only types a matching node can have, null if unknown
+     * @param pathPrefixes paths a matching node must be under, null if unknown
+     */
+    Condition(Predicate<FileTreeNode> predicate, int maxDepth, List<String> types, List<String> pathPrefixes) {
+        this.predicate = predicate;
+        this.maxDepth = maxDepth;
+        this.types = types;
+        this.pathPrefixes = pathPrefixes;
+    }
+
+    /**
+     * A condition nothing is known about besides its test.
+     * @param predicate the compiled test
+     */
+    Condition(Predicate<FileTreeNode> predicate) {
+        this(predicate, Integer.MAX_VALUE, null, null);
+    }
+
+    Condition and(Condition other) {
+        List<String> bothTypes = types;
+        if (types == null) {
+            bothTypes = other.types;
+        } else if (other.types != null) {
+            bothTypes = new ArrayList<>(types);
+            bothTypes.retainAll(other.types);
+        }
+        // Either side's prefixes hold for the conjunction; intersecting sets of prefixes is not worth it
+        return new Condition(predicate.and(other.predicate), Math.min(maxDepth, other.maxDepth), bothTypes,
+                (pathPrefixes != null) ? pathPrefixes : other.pathPrefixes);
+    }
+
+    Condition or(Condition other) {
+        return new Condition(predicate.or(other.predicate), Math.max(maxDepth, other.maxDepth),
+                union(types, other.types), union(pathPrefixes, other.pathPrefixes));
+    }
+
+    Condition negate() {
+        return new Condition(predicate.negate());
+    }
+
+    private static List<String> union(List<String> a, List<String> b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        List<String> union = new ArrayList<>(a);
+        b.stream().filter((s) -> !union.contains(s)).forEach(union::add);
+        return union;
+    }
+
+    Predicate<FileTreeNode> getPredicate() {
+        return predicate;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    List<String> getTypes() {
+        return types;
+    }
+
+    List<String> getPathPrefixes() {
+        return pathPrefixes;
+    }
+}
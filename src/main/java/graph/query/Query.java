@@ -0,0 +1,123 @@
+package graph.query;
+
+import exceptions.QueryException;
+import graph.FileTreeNode;
+import graph.factory.ScanPushdown;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * An ad-hoc question about the files in a tree, asked in a small query language rather than by writing a new
+ * analyser. For example:
+ *
+ *   sum size group by type where mtime < 1y and depth <= 4
+ *   count, avg size where path under '/home' and not hidden limit 10
+ *   max size, count group by depth where type in ('jpg', 'png') or name like 'IMG_*'
+ *
+ * A query is a list of aggregates (count, or sum, min, max or avg of a numeric field), followed in any order by
+ * an optional 'group by' field, 'where' condition and 'limit' on the rows returned. The fields are path, name,
+ * type, size, mtime, depth and hidden. Conditions compare a field with a literal (=, !=, <>, <, <=, >, >=),
+ * test membership ('in'), match a glob ('like') or test a directory prefix ('under'), combined with 'and', 'or',
+ * 'not' and brackets. Sizes take units (10mb) and modification times either a date ('2026-01-31') or a duration,
+ * which compares the file's age: 'mtime < 1y' is every file modified within the last year.
+ *
+ * Queries count files only. The where clause is compiled into a predicate when the query is parsed, and what it
+ * says about the depth, type and path of matching files is offered as a ScanPushdown, so a scan made for the
+ * query can skip the parts of the filesystem which cannot match.
+ */
+public class Query implements ScanPushdown {
+
+    enum Function { COUNT, SUM, MIN, MAX, AVG }
+
+    /**
+     * One column of the result: a function, and the field it is applied to (null for count).
+     */
+    static final class Aggregate {
+        final Function function;
+        final QueryField field;
+
+        Aggregate(Function function, QueryField field) {
+            this.function = function;
+            this.field = field;
+        }
+
+        @Override
+        public String toString() {
+            return (field == null) ? "count" : function.name().toLowerCase() + "(" + field + ")";
+        }
+    }
+
+    private final String text;
+    private final List<Aggregate> aggregates;
+    private final QueryField groupBy;
+    private final Condition where;
+    private final int limit;
+
+    Query(String text, List<Aggregate> aggregates, QueryField groupBy, Condition where, int limit) {
+        this.text = text;
+        this.aggregates = aggregates;
+        this.groupBy = groupBy;
+        this.where = where;
+        this.limit = limit;
+    }
+
+    /**
+     * Parse and compile a query. Durations in the query are measured back from the time it is parsed.
+     * @param query the query text
+     * @return the compiled query
+     * @throws QueryException if the query is not valid
+     */
+    public static Query parse(String query) throws QueryException {
+        return new QueryParser(query, System.currentTimeMillis()).parse();
+    }
+
+    /**
+     * Create an executor for this query, to be walked over a tree or fed straight from a scan.
+     * @return a new executor, holding no results
+     */
+    public QueryExecutor newExecutor() {
+        return new QueryExecutor(this);
+    }
+
+    List<Aggregate> getAggregates() {
+        return aggregates;
+    }
+
+    QueryField getGroupBy() {
+        return groupBy;
+    }
+
+    Predicate<FileTreeNode> getPredicate() {
+        return where.getPredicate();
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public int getMaxNodeDepth() {
+        return where.getMaxDepth();
+    }
+
+    @Override
+    public List<String> getFileTypes() {
+        if (where.getTypes() == null) {
+            return Collections.emptyList();
+        }
+        // No type can match, but an empty list would allow any
+        return where.getTypes().isEmpty() ? Collections.singletonList("") : where.getTypes();
+    }
+
+    @Override
+    public List<String> getPathPrefixes() {
+        return (where.getPathPrefixes() == null) ? Collections.emptyList() : where.getPathPrefixes();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
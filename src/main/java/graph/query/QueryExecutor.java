@@ -0,0 +1,148 @@
+package graph.query;
+
+import graph.FileTreeNode;
+import graph.MergeableTreeVisitor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs a query over the nodes of a tree, as a visitor, so it can be walked over a tree in memory, split across
+ * threads with ParallelTreeWalker, or fed straight from a scan without building a tree at all.
+ *
+ * Each group's aggregates are kept in one long array: the count of matching files, then one running value per
+ * aggregate (the sum for sum and avg, else the min or max). Matching a file and updating its group allocates
+ * nothing, beyond the first time a group is seen.
+ */
+public class QueryExecutor implements MergeableTreeVisitor<QueryExecutor> {
+
+    private final Query query;
+    private final Predicate<FileTreeNode> predicate;
+    private final QueryField groupBy;
+    private final Query.Function[] functions;
+    private final ToLongFunction<FileTreeNode>[] values;
+
+    private final Map<Object, long[]> groups = new HashMap<>();
+    // Used in place of the map when the query is not grouped
+    private long[] ungrouped;
+
+    @SuppressWarnings("unchecked")
+    QueryExecutor(Query query) {
+        this.query = query;
+        this.predicate = query.getPredicate();
+        this.groupBy = query.getGroupBy();
+        this.functions = new Query.Function[query.getAggregates().size()];
+        this.values = new ToLongFunction[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            Query.Aggregate aggregate = query.getAggregates().get(i);
+            functions[i] = aggregate.function;
+            values[i] = (aggregate.field == null) ? null : aggregate.field.number();
+        }
+        if (groupBy == null) {
+            this.ungrouped = newAccumulator();
+        }
+    }
+
+    @Override
+    public void enterDirectory(FileTreeNode directory) {
+        // Only files are counted
+    }
+
+    @Override
+    public void visitFile(FileTreeNode file) {
+        if (!predicate.test(file)) {
+            return;
+        }
+        long[] accumulator = ungrouped;
+        if (accumulator == null) {
+            accumulator = groups.computeIfAbsent(groupBy.valueOf(file), (k) -> newAccumulator());
+        }
+        accumulator[0]++;
+        for (int i = 0; i < functions.length; i++) {
+            switch (functions[i]) {
+                case SUM:
+                case AVG:
+                    accumulator[i + 1] += values[i].applyAsLong(file);
+                    break;
+                case MIN:
+                    accumulator[i + 1] = Math.min(accumulator[i + 1], values[i].applyAsLong(file));
+                    break;
+                case MAX:
+                    accumulator[i + 1] = Math.max(accumulator[i + 1], values[i].applyAsLong(file));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void exitDirectory(FileTreeNode directory) {
+        // Only files are counted
+    }
+
+    @Override
+    public QueryExecutor fork() {
+        return new QueryExecutor(query);
+    }
+
+    @Override
+    public void merge(QueryExecutor partial) {
+        if (ungrouped != null) {
+            combine(ungrouped, partial.ungrouped);
+        } else {
+            partial.groups.forEach((key, accumulator) -> {
+                long[] existing = groups.putIfAbsent(key, accumulator);
+                if (existing != null) {
+                    combine(existing, accumulator);
+                }
+            });
+        }
+    }
+
+    /**
+     * Gather up the results so far. Rows are ordered on the first aggregate, largest first, and cut to the
+     * query's limit.
+     * @return the result
+     */
+    public QueryResult getResult() {
+        Map<Object, long[]> rows = (ungrouped != null) ? Collections.singletonMap(null, ungrouped) :
+                groups;
+        return new QueryResult(query, rows);
+    }
+
+    private long[] newAccumulator() {
+        long[] accumulator = new long[functions.length + 1];
+        for (int i = 0; i < functions.length; i++) {
+            if (functions[i] == Query.Function.MIN) {
+                accumulator[i + 1] = Long.MAX_VALUE;
+            } else if (functions[i] == Query.Function.MAX) {
+                accumulator[i + 1] = Long.MIN_VALUE;
+            }
+        }
+        return accumulator;
+    }
+
+    private void combine(long[] into, long[] from) {
+        into[0] += from[0];
+        for (int i = 0; i < functions.length; i++) {
+            switch (functions[i]) {
+                case SUM:
+                case AVG:
+                    into[i + 1] += from[i + 1];
+                    break;
+                case MIN:
+                    into[i + 1] = Math.min(into[i + 1], from[i + 1]);
+                    break;
+                case MAX:
+                    into[i + 1] = Math.max(into[i + 1], from[i + 1]);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package graph.query;
+
+import graph.FileTreeNode;
+
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * The node fields a query can refer to. Numeric fields are read as primitive longs and text fields as the
+ * strings already held by the node, so evaluating a field allocates nothing.
+ */
+enum QueryField {
+    PATH(FileTreeNode::getPath),
+    NAME(FileTreeNode::getName),
+    TYPE(FileTreeNode::getFileType),
+    SIZE(FileTreeNode::getFileSize),
+    MTIME(FileTreeNode::getLastModified),
+    DEPTH(FileTreeNode::getDepth),
+    HIDDEN((FileTreeNode n) -> n.isHidden() ? 1L : 0L);
+
+    private final Function<FileTreeNode, String> text;
+    private final ToLongFunction<FileTreeNode> number;
+
+    QueryField(Function<FileTreeNode, String> text) {
+        this.text = text;
+        this.number = null;
+    }
+
+    QueryField(ToLongFunction<FileTreeNode> number) {
+        this.text = null;
+        this.number = number;
+    }
+
+    /**
+     * Look up a field by the name used in queries.
+     * @param name the name, in any case
+     * @return the field, null if there is no such field
+     */
+    static QueryField forName(String name) {
+        for (QueryField field : values()) {
+            if (field.name().equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    boolean isNumeric() {
+        return number != null;
+    }
+
+    /**
+     * @return the reader of a text field's value
+     */
+    Function<FileTreeNode, String> text() {
+        return text;
+    }
+
+    /**
+     * @return the reader of a numeric field's value
+     */
+    ToLongFunction<FileTreeNode> number() {
+        return number;
+    }
+
+    /**
+     * Read the value of the field from a node, boxed, for grouping by.
+     * @param node the node
+     * @return the value
+     */
+    Object valueOf(FileTreeNode node) {
+        return isNumeric() ? (Object) number.applyAsLong(node) : text.apply(node);
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+}
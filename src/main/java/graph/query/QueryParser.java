@@ -0,0 +1,497 @@
+package graph.query;
+
+import exceptions.QueryException;
+import graph.FileTreeNode;
+import graph.factory.ScanFilter;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Recursive descent parser for the query language, see Query. The where clause is compiled as it is parsed:
+ * each comparison becomes a lambda specialised for its field, operator and literal, so nothing is interpreted
+ * per node.
+ */
+class QueryParser {
+
+    private static final List<String> OPERATORS = Arrays.asList("=", "!=", "<>", "<", "<=", ">", ">=");
+
+    private enum Kind { WORD, NUMBER, STRING, SYMBOL, END }
+
+    private static final class Token {
+        final Kind kind;
+        final String text;
+        final int position;
+
+        Token(Kind kind, String text, int position) {
+            this.kind = kind;
+            this.text = text;
+            this.position = position;
+        }
+
+        boolean is(String word) {
+            return (kind == Kind.WORD || kind == Kind.SYMBOL) && text.equalsIgnoreCase(word);
+        }
+    }
+
+    private final String query;
+    private final List<Token> tokens;
+    private final long now;
+    private int next;
+    // Whether the last number read was a duration rather than a timestamp
+    private boolean duration;
+
+    /**
+     * @param query the query text
+     * @param now the time ages are measured from, in milliseconds
+     */
+    QueryParser(String query, long now) throws QueryException {
+        this.query = query;
+        this.tokens = tokenize(query);
+        this.now = now;
+    }
+
+    /**
+     * query := aggregate (',' aggregate)* clause*
+     * clause := 'group' 'by' field | 'where' or | 'limit' number
+     */
+    Query parse() throws QueryException {
+        List<Query.Aggregate> aggregates = new ArrayList<>();
+        do {
+            aggregates.add(aggregate());
+        } while (accept(","));
+
+        QueryField groupBy = null;
+        Condition where = Condition.ALL;
+        int limit = Integer.MAX_VALUE;
+        while (peek().kind != Kind.END) {
+            if (accept("group")) {
+                expect("by");
+                groupBy = field();
+            } else if (accept("where")) {
+                where = or();
+            } else if (accept("limit")) {
+                Token token = take();
+                if (token.kind != Kind.NUMBER || !token.text.matches("\\d+")) {
+                    throw error(token, "expected a row count after 'limit'");
+                }
+                limit = Integer.parseInt(token.text);
+            } else {
+                throw error(peek(), "expected 'group by', 'where' or 'limit'");
+            }
+        }
+        return new Query(query, aggregates, groupBy, where, limit);
+    }
+
+    /**
+     * aggregate := 'count' ['(' '*' ')'] | ('sum' | 'min' | 'max' | 'avg') (field | '(' field ')')
+     */
+    private Query.Aggregate aggregate() throws QueryException {
+        Token token = take();
+        Query.Function function = null;
+        for (Query.Function f : Query.Function.values()) {
+            if (token.is(f.name())) {
+                function = f;
+            }
+        }
+        if (function == null) {
+            throw error(token, "expected one of count, sum, min, max or avg");
+        }
+        if (function == Query.Function.COUNT) {
+            if (accept("(")) {
+                expect("*");
+                expect(")");
+            }
+            return new Query.Aggregate(function, null);
+        }
+
+        boolean bracketed = accept("(");
+        Token fieldToken = peek();
+        QueryField field = field();
+        if (!field.isNumeric()) {
+            throw error(fieldToken, "cannot take the " + function.name().toLowerCase() + " of " + field + ", it is not numeric");
+        }
+        if (bracketed) {
+            expect(")");
+        }
+        return new Query.Aggregate(function, field);
+    }
+
+    /**
+     * or := and ('or' and)*
+     */
+    private Condition or() throws QueryException {
+        Condition condition = and();
+        while (accept("or")) {
+            condition = condition.or(and());
+        }
+        return condition;
+    }
+
+    /**
+     * and := not ('and' not)*
+     */
+    private Condition and() throws QueryException {
+        Condition condition = not();
+        while (accept("and")) {
+            condition = condition.and(not());
+        }
+        return condition;
+    }
+
+    /**
+     * not := 'not' not | '(' or ')' | comparison
+     */
+    private Condition not() throws QueryException {
+        if (accept("not")) {
+            return not().negate();
+        }
+        if (accept("(")) {
+            Condition condition = or();
+            expect(")");
+            return condition;
+        }
+        return comparison();
+    }
+
+    /**
+     * comparison := 'hidden'
+     *             | field ('=' | '!=' | '<>' | '<' | '<=' | '>' | '>=') literal
+     *             | field ['not'] 'in' '(' literal (',' literal)* ')'
+     *             | field 'like' string
+     *             | field 'under' string
+     */
+    private Condition comparison() throws QueryException {
+        Token fieldToken = peek();
+        QueryField field = field();
+
+        if (field == QueryField.HIDDEN && !isOperator(peek())) {
+            return new Condition(FileTreeNode::isHidden);
+        }
+        if (accept("like")) {
+            return like(field, fieldToken, string());
+        }
+        if (accept("under")) {
+            return under(field, fieldToken, string());
+        }
+        boolean negated = accept("not");
+        if (accept("in")) {
+            Condition in = in(field);
+            return negated ? in.negate() : in;
+        } else if (negated) {
+            throw error(peek(), "expected 'in' after 'not'");
+        }
+
+        Token operator = take();
+        if (!isOperator(operator)) {
+            throw error(operator, "expected a comparison after " + field);
+        }
+        String op = operator.text.equals("<>") ? "!=" : operator.text;
+        return field.isNumeric() ? compare(field, op, number(field)) : compare(field, op, string());
+    }
+
+    private Condition compare(QueryField field, String op, long value) {
+        ToLongFunction<FileTreeNode> get = field.number();
+        // A duration compares the age of the node, measured back from now, rather than its timestamp
+        if (duration) {
+            get = (n) -> now - n.getLastModified();
+        }
+        final long v = value;
+        final ToLongFunction<FileTreeNode> f = get;
+        Predicate<FileTreeNode> predicate;
+        switch (op) {
+            case "=": predicate = (n) -> f.applyAsLong(n) == v; break;
+            case "!=": predicate = (n) -> f.applyAsLong(n) != v; break;
+            case "<": predicate = (n) -> f.applyAsLong(n) < v; break;
+            case "<=": predicate = (n) -> f.applyAsLong(n) <= v; break;
+            case ">": predicate = (n) -> f.applyAsLong(n) > v; break;
+            default: predicate = (n) -> f.applyAsLong(n) >= v; break;
+        }
+        if (field == QueryField.DEPTH) {
+            int deepest = op.equals("=") || op.equals("<=") ? (int) v : op.equals("<") ? (int) v - 1 :
+                    Integer.MAX_VALUE;
+            return new Condition(predicate, deepest, null, null);
+        }
+        return new Condition(predicate);
+    }
+
+    private Condition compare(QueryField field, String op, String value) {
+        Function<FileTreeNode, String> f = field.text();
+        Predicate<FileTreeNode> predicate;
+        switch (op) {
+            case "=": predicate = (n) -> value.equals(f.apply(n)); break;
+            case "!=": predicate = (n) -> !value.equals(f.apply(n)); break;
+            case "<": predicate = (n) -> f.apply(n).compareTo(value) < 0; break;
+            case "<=": predicate = (n) -> f.apply(n).compareTo(value) <= 0; break;
+            case ">": predicate = (n) -> f.apply(n).compareTo(value) > 0; break;
+            default: predicate = (n) -> f.apply(n).compareTo(value) >= 0; break;
+        }
+        if (op.equals("=") && field == QueryField.TYPE) {
+            return new Condition(predicate, Integer.MAX_VALUE, Collections.singletonList(value), null);
+        }
+        if (op.equals("=") && field == QueryField.PATH) {
+            return new Condition(predicate, Integer.MAX_VALUE, null, Collections.singletonList(value));
+        }
+        return new Condition(predicate);
+    }
+
+    private Condition in(QueryField field) throws QueryException {
+        expect("(");
+        List<String> texts = new ArrayList<>();
+        Set<Long> numbers = new HashSet<>();
+        do {
+            if (field.isNumeric()) {
+                Token token = peek();
+                numbers.add(number(field));
+                if (duration) {
+                    throw error(token, "durations cannot be used with 'in'");
+                }
+            } else {
+                texts.add(string());
+            }
+        } while (accept(","));
+        expect(")");
+
+        if (field.isNumeric()) {
+            // Only the values listed can match, and the set is small: a scan beats boxing every node's value
+            long[] values = numbers.stream().mapToLong(Long::longValue).toArray();
+            ToLongFunction<FileTreeNode> f = field.number();
+            Predicate<FileTreeNode> predicate = (n) -> {
+                long value = f.applyAsLong(n);
+                for (long v : values) {
+                    if (v == value) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+            int deepest = field == QueryField.DEPTH ?
+                    (int) numbers.stream().mapToLong(Long::longValue).max().getAsLong() : Integer.MAX_VALUE;
+            return new Condition(predicate, deepest, null, null);
+        }
+
+        Set<String> values = new HashSet<>(texts);
+        Function<FileTreeNode, String> f = field.text();
+        return new Condition((n) -> values.contains(f.apply(n)), Integer.MAX_VALUE,
+                field == QueryField.TYPE ? texts : null, field == QueryField.PATH ? texts : null);
+    }
+
+    private Condition like(QueryField field, Token fieldToken, String glob) throws QueryException {
+        if (field.isNumeric()) {
+            throw error(fieldToken, "'like' needs a text field, not " + field);
+        }
+        Pattern pattern = Pattern.compile(ScanFilter.globToRegex(glob));
+        Function<FileTreeNode, String> f = field.text();
+        Predicate<FileTreeNode> predicate = (n) -> pattern.matcher(f.apply(n)).matches();
+
+        if (field == QueryField.PATH) {
+            // Everything matching lies under the directory holding the first wildcard
+            int wildcard = glob.indexOf('*') == -1 ? glob.indexOf('?') :
+                    glob.indexOf('?') == -1 ? glob.indexOf('*') : Math.min(glob.indexOf('*'), glob.indexOf('?'));
+            int directory = Math.max(glob.lastIndexOf('/', wildcard), glob.lastIndexOf('\\', wildcard));
+            if (wildcard == -1) {
+                return new Condition(predicate, Integer.MAX_VALUE, null, Collections.singletonList(glob));
+            } else if (directory > 0) {
+                return new Condition(predicate, Integer.MAX_VALUE, null,
+                        Collections.singletonList(glob.substring(0, directory)));
+            }
+        }
+        return new Condition(predicate);
+    }
+
+    private Condition under(QueryField field, Token fieldToken, String directory) throws QueryException {
+        if (field != QueryField.PATH) {
+            throw error(fieldToken, "'under' needs the path field, not " + field);
+        }
+        String prefix = (directory.endsWith("/") || directory.endsWith("\\")) && directory.length() > 1 ?
+                directory.substring(0, directory.length() - 1) : directory;
+        Predicate<FileTreeNode> predicate = (n) -> {
+            String path = n.getPath();
+            return path.startsWith(prefix) && (path.length() == prefix.length() || prefix.endsWith("/") ||
+                    path.charAt(prefix.length()) == '/' || path.charAt(prefix.length()) == '\\');
+        };
+        return new Condition(predicate, Integer.MAX_VALUE, null, Collections.singletonList(prefix));
+    }
+
+    private QueryField field() throws QueryException {
+        Token token = take();
+        QueryField field = token.kind == Kind.WORD ? QueryField.forName(token.text) : null;
+        if (field == null) {
+            throw error(token, "expected one of the fields path, name, type, size, mtime, depth or hidden");
+        }
+        return field;
+    }
+
+    private String string() throws QueryException {
+        Token token = take();
+        if (token.kind != Kind.STRING && token.kind != Kind.WORD) {
+            throw error(token, "expected a quoted string");
+        }
+        return token.text;
+    }
+
+    /**
+     * Read a numeric literal for the given field. Sizes may carry a unit (b, k, kb, m, mb, g, gb, t, tb) and
+     * modification times may be a date ('yyyy-MM-dd') or a duration (s, min, h, d, w, y).
+     */
+    private long number(QueryField field) throws QueryException {
+        Token token = take();
+        duration = false;
+        if (field == QueryField.HIDDEN && (token.is("true") || token.is("false"))) {
+            return token.is("true") ? 1 : 0;
+        }
+        if (field == QueryField.MTIME && token.kind == Kind.STRING) {
+            try {
+                return new SimpleDateFormat("yyyy-MM-dd").parse(token.text).getTime();
+            } catch (ParseException e) {
+                throw error(token, "expected a date as yyyy-MM-dd");
+            }
+        }
+        if (token.kind != Kind.NUMBER) {
+            throw error(token, "expected a number for " + field);
+        }
+
+        int unitStart = 0;
+        while (unitStart < token.text.length() &&
+                (Character.isDigit(token.text.charAt(unitStart)) || token.text.charAt(unitStart) == '.')) {
+            unitStart++;
+        }
+        double value;
+        try {
+            value = Double.parseDouble(token.text.substring(0, unitStart));
+        } catch (NumberFormatException e) {
+            throw error(token, "malformed number");
+        }
+        String unit = token.text.substring(unitStart).toLowerCase();
+        if (unit.isEmpty()) {
+            return (long) value;
+        }
+
+        long multiplier = 0;
+        if (field == QueryField.SIZE) {
+            switch (unit) {
+                case "b": multiplier = 1; break;
+                case "k": case "kb": multiplier = 1L << 10; break;
+                case "m": case "mb": multiplier = 1L << 20; break;
+                case "g": case "gb": multiplier = 1L << 30; break;
+                case "t": case "tb": multiplier = 1L << 40; break;
+                default: break;
+            }
+        } else if (field == QueryField.MTIME) {
+            switch (unit) {
+                case "s": multiplier = TimeUnit.SECONDS.toMillis(1); break;
+                case "min": multiplier = TimeUnit.MINUTES.toMillis(1); break;
+                case "h": multiplier = TimeUnit.HOURS.toMillis(1); break;
+                case "d": multiplier = TimeUnit.DAYS.toMillis(1); break;
+                case "w": multiplier = TimeUnit.DAYS.toMillis(7); break;
+                case "y": multiplier = TimeUnit.DAYS.toMillis(365); break;
+                default: break;
+            }
+        }
+        if (multiplier == 0) {
+            throw error(token, "unknown unit '" + unit + "' for " + field);
+        }
+        duration = field == QueryField.MTIME;
+        return (long) (value * multiplier);
+    }
+
+    private static boolean isOperator(Token token) {
+        return token.kind == Kind.SYMBOL && OPERATORS.contains(token.text);
+    }
+
+    private Token peek() {
+        return tokens.get(next);
+    }
+
+    private Token take() {
+        Token token = tokens.get(next);
+        if (token.kind != Kind.END) {
+            next++;
+        }
+        return token;
+    }
+
+    private boolean accept(String word) {
+        if (peek().is(word)) {
+            next++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String word) throws QueryException {
+        if (!accept(word)) {
+            throw error(peek(), "expected '" + word + "'");
+        }
+    }
+
+    private QueryException error(Token token, String message) {
+        String found = token.kind == Kind.END ? "the end of the query" : "'" + token.text + "'";
+        return new QueryException(message + ", found " + found + " at position " + (token.position + 1) +
+                " of: " + query);
+    }
+
+    private static List<Token> tokenize(String query) throws QueryException {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                while (i < query.length() && (Character.isLetterOrDigit(query.charAt(i)) || query.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(new Token(Kind.WORD, query.substring(start, i), start));
+            } else if (Character.isDigit(c)) {
+                while (i < query.length() && (Character.isLetterOrDigit(query.charAt(i)) || query.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(new Token(Kind.NUMBER, query.substring(start, i), start));
+            } else if (c == '\'' || c == '"') {
+                // Quotes are escaped by doubling them
+                StringBuilder text = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= query.length()) {
+                        throw new QueryException("Unterminated string at position " + (start + 1) + " of: " + query);
+                    }
+                    if (query.charAt(i) == c) {
+                        if (i + 1 < query.length() && query.charAt(i + 1) == c) {
+                            text.append(c);
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    text.append(query.charAt(i++));
+                }
+                tokens.add(new Token(Kind.STRING, text.toString(), start));
+            } else if ((c == '<' || c == '>' || c == '!') && i + 1 < query.length() &&
+                    (query.charAt(i + 1) == '=' || (c == '<' && query.charAt(i + 1) == '>'))) {
+                tokens.add(new Token(Kind.SYMBOL, query.substring(i, i + 2), start));
+                i += 2;
+            } else if ("=<>(),*".indexOf(c) != -1) {
+                tokens.add(new Token(Kind.SYMBOL, String.valueOf(c), start));
+                i++;
+            } else {
+                throw new QueryException("Unexpected '" + c + "' at position " + (start + 1) + " of: " + query);
+            }
+        }
+        tokens.add(new Token(Kind.END, "", query.length()));
+        return tokens;
+    }
+}
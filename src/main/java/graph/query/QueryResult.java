@@ -0,0 +1,133 @@
+package graph.query;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows returned by a query: one per group (or a single row if the query is not grouped), holding the group's
+ * value followed by each aggregate. Printed as a plain text table, with sizes and times made readable.
+ */
+public class QueryResult {
+
+    private static final String[] UNITS = {"B", "KB", "MB", "GB", "TB"};
+
+    private final Query query;
+    private final List<String> columns = new ArrayList<>();
+    private final List<Object[]> rows = new ArrayList<>();
+    private final int groupCount;
+
+    QueryResult(Query query, Map<Object, long[]> groups) {
+        this.query = query;
+        this.groupCount = groups.size();
+        List<Query.Aggregate> aggregates = query.getAggregates();
+        boolean grouped = query.getGroupBy() != null;
+
+        if (grouped) {
+            columns.add(query.getGroupBy().toString());
+        }
+        aggregates.forEach((a) -> columns.add(a.toString()));
+
+        List<Map.Entry<Object, long[]>> ordered = new ArrayList<>(groups.entrySet());
+        ordered.sort((a, b) -> Double.compare(value(aggregates, 0, b.getValue()), value(aggregates, 0, a.getValue())));
+        for (Map.Entry<Object, long[]> group : ordered.subList(0, Math.min(ordered.size(), query.getLimit()))) {
+            Object[] row = new Object[columns.size()];
+            int column = 0;
+            if (grouped) {
+                row[column++] = group.getKey();
+            }
+            for (int i = 0; i < aggregates.size(); i++) {
+                row[column++] = format(aggregates.get(i), value(aggregates, i, group.getValue()), group.getValue()[0]);
+            }
+            rows.add(row);
+        }
+    }
+
+    /**
+     * The value of an aggregate from a group's accumulator.
+     */
+    private static double value(List<Query.Aggregate> aggregates, int index, long[] accumulator) {
+        switch (aggregates.get(index).function) {
+            case COUNT:
+                return accumulator[0];
+            case AVG:
+                return (accumulator[0] == 0) ? 0 : (double) accumulator[index + 1] / accumulator[0];
+            default:
+                return accumulator[index + 1];
+        }
+    }
+
+    private static Object format(Query.Aggregate aggregate, double value, long count) {
+        if (aggregate.function == Query.Function.COUNT) {
+            return (long) value;
+        }
+        if (count == 0 && aggregate.function != Query.Function.SUM) {
+            return "-";
+        }
+        if (aggregate.field == QueryField.SIZE) {
+            return formatBytes(value);
+        }
+        if (aggregate.field == QueryField.MTIME && aggregate.function != Query.Function.SUM) {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date((long) value));
+        }
+        return (aggregate.function == Query.Function.AVG) ? String.format("%.2f", value) : (Object) (long) value;
+    }
+
+    private static String formatBytes(double bytes) {
+        int unit = 0;
+        while (bytes >= 1024 && unit < UNITS.length - 1) {
+            bytes /= 1024;
+            unit++;
+        }
+        return (unit == 0) ? String.format("%.0f B", bytes) : String.format("%.1f %s", bytes, UNITS[unit]);
+    }
+
+    /**
+     * @return the column names, the group field first if grouped
+     */
+    public List<String> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * @return the rows, each holding a value per column
+     */
+    public List<Object[]> getRows() {
+        return Collections.unmodifiableList(rows);
+    }
+
+    @Override
+    public String toString() {
+        int[] widths = new int[columns.size()];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = columns.get(i).length();
+            for (Object[] row : rows) {
+                widths[i] = Math.max(widths[i], String.valueOf(row[i]).length());
+            }
+        }
+
+        StringBuilder table = new StringBuilder(query.toString()).append(System.lineSeparator());
+        appendRow(table, columns.toArray(), widths);
+        StringBuilder rule = new StringBuilder();
+        for (int width : widths) {
+            rule.append(rule.length() == 0 ? "" : "-+-").append(String.join("", Collections.nCopies(width, "-")));
+        }
+        table.append(rule).append(System.lineSeparator());
+        rows.forEach((row) -> appendRow(table, row, widths));
+        table.append(rows.size()).append(" of ").append(groupCount).append(groupCount == 1 ? " row" : " rows");
+        return table.toString();
+    }
+
+    private static void appendRow(StringBuilder table, Object[] row, int[] widths) {
+        for (int i = 0; i < row.length; i++) {
+            String cell = String.valueOf(row[i]);
+            // Numbers are right aligned, text left aligned
+            String format = (row[i] instanceof String && i == 0) ? "%-" + widths[i] + "s" : "%" + widths[i] + "s";
+            table.append(i == 0 ? "" : " | ").append(String.format(format, cell));
+        }
+        table.append(System.lineSeparator());
+    }
+}
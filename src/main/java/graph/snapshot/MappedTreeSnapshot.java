@@ -0,0 +1,374 @@
+package graph.snapshot;
+
+import graph.FileTreeNode;
+import graph.SubtreeSummary;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static graph.snapshot.SnapshotFormat.*;
+
+/**
+ * A tree snapshot file mapped into memory and queried in place. Nodes are addressed by their record number;
+ * nothing is read until asked for, and the operating system pages in only the parts of the file that are used.
+ *
+ * Files larger than a single mapping allows are mapped in chunks. Each chunk overlaps the next by the longest
+ * possible read, so a record or name never has to be pieced together from two chunks.
+ */
+public class MappedTreeSnapshot {
+
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+    private final MappedByteBuffer[] chunks;
+    private final long scanStarted;
+    private final int optionsFingerprint;
+    private final int nodeCount;
+    private final long namesStart;
+    private final int[] roots;
+    private final String[] types;
+
+    private MappedTreeSnapshot(MappedByteBuffer[] chunks) throws IOException {
+        this.chunks = chunks;
+        if (getInt(HEADER_MAGIC) != MAGIC || getInt(HEADER_VERSION) != VERSION) {
+            throw new IOException("Not a supported tree snapshot");
+        }
+        this.scanStarted = getLong(HEADER_SCAN_STARTED);
+        this.optionsFingerprint = getInt(HEADER_OPTIONS_FINGERPRINT);
+        this.nodeCount = (int) getLong(HEADER_NODE_COUNT);
+        this.namesStart = getLong(HEADER_NAMES_START);
+
+        // Few enough to read in up front, so looking up a node's type is an array access
+        this.types = new String[getInt(HEADER_TYPE_COUNT)];
+        long typesStart = getLong(HEADER_TYPES_START);
+        for (int i = 0; i < types.length; i++) {
+            long entry = typesStart + (long) i * TYPE_ENTRY_SIZE;
+            types[i] = readName(namesStart + getLong(entry + TYPE_NAME_OFFSET), getInt(entry + TYPE_NAME_LENGTH));
+        }
+
+        // Each tree follows straight on from the end of the one before
+        this.roots = new int[getInt(HEADER_ROOT_COUNT)];
+        int next = 0;
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = next;
+            next = getSubtreeEnd(next);
+        }
+    }
+
+    /**
+     * Map the snapshot in the given file.
+     * @param file the snapshot file
+     * @return the mapped snapshot
+     * @throws IOException if the file could not be mapped or is not a snapshot
+     */
+    public static MappedTreeSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a supported tree snapshot: " + file);
+            }
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = i * CHUNK_SIZE;
+                long length = Math.min(size - start, CHUNK_SIZE + MAX_NAME_LENGTH);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+            return new MappedTreeSnapshot(chunks);
+        } catch (IOException e) {
+            throw new IOException("Could not open snapshot: " + file + ". " + e.getMessage(), e);
+        }
+    }
+
+    private int getInt(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].getInt((int) (position & (CHUNK_SIZE - 1)));
+    }
+
+    private long getLong(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].getLong((int) (position & (CHUNK_SIZE - 1)));
+    }
+
+    private int getRecordInt(int node, int field) {
+        return getInt(recordPosition(node) + field);
+    }
+
+    /**
+     * When the scan producing this snapshot started.
+     * @return time in milliseconds
+     */
+    public long getScanStarted() {
+        return scanStarted;
+    }
+
+    /**
+     * Fingerprint of the options the snapshot was scanned with.
+     * @return the options fingerprint
+     */
+    public int getOptionsFingerprint() {
+        return optionsFingerprint;
+    }
+
+    /**
+     * The number of nodes in the snapshot.
+     * @return node count
+     */
+    public int size() {
+        return nodeCount;
+    }
+
+    /**
+     * The record numbers of the nodes at the top of each tree.
+     * @return root record numbers
+     */
+    public int[] getRootIndexes() {
+        return roots.clone();
+    }
+
+    public int getParent(int node) {
+        return getRecordInt(node, RECORD_PARENT);
+    }
+
+    public int getChildCount(int node) {
+        return getRecordInt(node, RECORD_CHILD_COUNT);
+    }
+
+    /**
+     * The record number just past the last node under the given one. A node's subtree is every record from the
+     * node itself up to (not including) this.
+     * @param node the record number
+     * @return the end of the node's subtree
+     */
+    public int getSubtreeEnd(int node) {
+        return getRecordInt(node, RECORD_SUBTREE_END);
+    }
+
+    public int getDepth(int node) {
+        return getRecordInt(node, RECORD_DEPTH);
+    }
+
+    public boolean isDirectory(int node) {
+        return (getRecordInt(node, RECORD_FLAGS) & FLAG_DIRECTORY) != 0;
+    }
+
+    public boolean isHidden(int node) {
+        return (getRecordInt(node, RECORD_FLAGS) & FLAG_HIDDEN) != 0;
+    }
+
+    public long getFileSize(int node) {
+        return getLong(recordPosition(node) + RECORD_SIZE_BYTES);
+    }
+
+    public long getLastModified(int node) {
+        return getLong(recordPosition(node) + RECORD_LAST_MODIFIED);
+    }
+
+    /**
+     * Totals for everything beneath a node, as stored in its record when the snapshot was saved.
+     * @param node the record number
+     * @return the subtree summary
+     */
+    public SubtreeSummary getSubtreeSummary(int node) {
+        long position = recordPosition(node);
+        int files = getRecordInt(node, RECORD_SUBTREE_FILES);
+        int directories = isDirectory(node) ? getSubtreeEnd(node) - node - 1 - files : 0;
+        return new SubtreeSummary(getLong(position + RECORD_SUBTREE_BYTES), files, directories,
+                getRecordInt(node, RECORD_SUBTREE_MAX_DEPTH), getLong(position + RECORD_SUBTREE_NEWEST));
+    }
+
+    /**
+     * The stored name of a node: its file name, or the full path for a root.
+     * @param node the record number
+     * @return the name
+     */
+    public String getName(int node) {
+        return readName(namesStart + getLong(recordPosition(node) + RECORD_NAME_OFFSET),
+                getRecordInt(node, RECORD_NAME_LENGTH));
+    }
+
+    /**
+     * The file type of a node, as it was when the snapshot was saved: "directory" for a directory, otherwise
+     * the type given by the name or sniffed from the file's contents.
+     * @param node the record number
+     * @return the file type
+     */
+    public String getFileType(int node) {
+        return types[getRecordInt(node, RECORD_FLAGS) >>> TYPE_SHIFT];
+    }
+
+    private String readName(long position, int length) {
+        byte[] bytes = new byte[length];
+        MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+        int offset = (int) (position & (CHUNK_SIZE - 1));
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = chunk.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rebuild the full path of a node from the names of it and its ancestors.
+     * @param node the record number
+     * @return the path
+     */
+    public String getPath(int node) {
+        int parent = getParent(node);
+        return (parent == NO_NODE) ? getName(node) : FileTreeNode.childPath(getPath(parent), getName(node));
+    }
+
+    /**
+     * FileTreeNode views of the roots, so the existing analysers can run straight off the mapped file.
+     * @return root views
+     */
+    public List<FileTreeNode> getRoots() {
+        List<FileTreeNode> views = new ArrayList<>(roots.length);
+        for (int root : roots) {
+            views.add(new NodeView(root, null));
+        }
+        return views;
+    }
+
+    /**
+     * A FileTreeNode read from a record of the mapped file. Each view keeps its parent view, so paths are built
+     * up once per directory while walking rather than from the root for every node.
+     */
+    private class NodeView extends FileTreeNode {
+
+        private final int index;
+        private final NodeView parent;
+        private String path;
+
+        // Position of the last child looked up, as children can only be found by stepping over earlier siblings
+        private int cursorChild = -1;
+        private int cursorRecord;
+
+        NodeView(int index, NodeView parent) {
+            this.index = index;
+            this.parent = parent;
+        }
+
+        @Override
+        public int getDepth() {
+            return MappedTreeSnapshot.this.getDepth(index);
+        }
+
+        @Override
+        public String getId() {
+            return getPath();
+        }
+
+        @Override
+        public boolean isHidden() {
+            return MappedTreeSnapshot.this.isHidden(index);
+        }
+
+        @Override
+        public long getLastModified() {
+            return MappedTreeSnapshot.this.getLastModified(index);
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return MappedTreeSnapshot.this.isDirectory(index);
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return !isDirectory();
+        }
+
+        @Override
+        public void setPath(String path) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+
+        @Override
+        public SubtreeSummary getSubtreeSummary() {
+            return MappedTreeSnapshot.this.getSubtreeSummary(index);
+        }
+
+        @Override
+        public String getPath() {
+            if (path == null) {
+                String name = MappedTreeSnapshot.this.getName(index);
+                path = (parent == null) ? name : FileTreeNode.childPath(parent.getPath(), name);
+            }
+            return path;
+        }
+
+        @Override
+        public String getName() {
+            return (parent == null) ? super.getName() : MappedTreeSnapshot.this.getName(index);
+        }
+
+        @Override
+        public void setFileType(String fileType) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+
+        @Override
+        public String getFileType() {
+            return MappedTreeSnapshot.this.getFileType(index);
+        }
+
+        @Override
+        public void setFileSize(long fileSize) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+
+        @Override
+        public long getFileSize() {
+            return MappedTreeSnapshot.this.getFileSize(index);
+        }
+
+        @Override
+        public FileTreeNode getParent() {
+            return parent;
+        }
+
+        @Override
+        public int getChildCount() {
+            return MappedTreeSnapshot.this.getChildCount(index);
+        }
+
+        @Override
+        public synchronized FileTreeNode getChild(int child) {
+            if (child < 0 || child >= getChildCount()) {
+                throw new IndexOutOfBoundsException("Child " + child + " of " + getChildCount());
+            }
+            if (cursorChild < 0 || child < cursorChild) {
+                cursorChild = 0;
+                cursorRecord = index + 1;
+            }
+            while (cursorChild < child) {
+                cursorRecord = getSubtreeEnd(cursorRecord);
+                cursorChild++;
+            }
+            return new NodeView(cursorRecord, this);
+        }
+
+        @Override
+        public void addChildren(Collection<FileTreeNode> fileNodes) {
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof NodeView && ((NodeView) o).index == index && ((NodeView) o).snapshot() == snapshot();
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+
+        private MappedTreeSnapshot snapshot() {
+            return MappedTreeSnapshot.this;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package graph.snapshot;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Compares two snapshots of the same trees, taken at different times, without building either tree. Snapshot
+ * records are in depth first order with siblings sorted by name, so the two files can be merge-joined: both are
+ * walked in step, and at each directory the two sorted runs of children are merged by name like two sorted lists.
+ * Only the directories on the current path are held, so memory use depends on the depth of the trees and not
+ * their size; the mapped files are paged in and out by the operating system as the walk moves through them.
+ *
+ * Subtrees only in one snapshot are not merged at all, but read straight through. Byte deltas for directories
+ * come from the subtree totals stored in each record, so no sums are carried through the walk.
+ */
+public class SnapshotDiff {
+
+    /**
+     * Given in place of a record number for a directory missing from one of the snapshots.
+     */
+    public static final int NO_NODE = SnapshotFormat.NO_NODE;
+
+    /**
+     * Receives the differences found. Nodes are given as record numbers in the older or newer snapshot, so
+     * nothing (not even a path) is built unless the listener asks for it.
+     */
+    public interface Listener {
+
+        /**
+         * A file only in the newer snapshot.
+         * @param node the file's record in the newer snapshot
+         */
+        void fileAdded(int node);
+
+        /**
+         * A file only in the older snapshot.
+         * @param node the file's record in the older snapshot
+         */
+        void fileRemoved(int node);
+
+        /**
+         * A file in both snapshots, whose size has changed.
+         * @param older the file's record in the older snapshot
+         * @param newer the file's record in the newer snapshot
+         */
+        void fileResized(int older, int newer);
+
+        /**
+         * A directory whose contents total a different number of bytes. Called before any of the changes within
+         * it.
+         * @param older the directory's record in the older snapshot, NO_NODE if it was added
+         * @param newer the directory's record in the newer snapshot, NO_NODE if it was removed
+         * @param delta the change in bytes under the directory
+         */
+        void directoryChanged(int older, int newer, long delta);
+    }
+
+    private static final BooleanSupplier NEVER = () -> false;
+
+    private final MappedTreeSnapshot older;
+    private final MappedTreeSnapshot newer;
+
+    /**
+     * @param older the earlier snapshot
+     * @param newer the later snapshot
+     */
+    public SnapshotDiff(MappedTreeSnapshot older, MappedTreeSnapshot newer) {
+        this.older = older;
+        this.newer = newer;
+    }
+
+    public MappedTreeSnapshot getOlder() {
+        return older;
+    }
+
+    public MappedTreeSnapshot getNewer() {
+        return newer;
+    }
+
+    /**
+     * Walk both snapshots, passing every difference to the listener. Roots are paired by path; a root only in
+     * one snapshot counts as wholly added or removed.
+     * @param listener the listener
+     */
+    public void compare(Listener listener) {
+        compare(listener, NEVER);
+    }
+
+    /**
+     * Walk both snapshots, passing every difference to the listener, and stopping early once cancelled. The
+     * merge checks before each step; a subtree only in one snapshot is read straight through once started.
+     * @param listener the listener
+     * @param cancelled whether to stop comparing
+     * @return true if the snapshots were compared in full, false if cancelled
+     */
+    public boolean compare(Listener listener, BooleanSupplier cancelled) {
+        Map<String, Integer> olderRoots = new HashMap<>();
+        for (int root : older.getRootIndexes()) {
+            olderRoots.put(older.getName(root), root);
+        }
+        for (int root : newer.getRootIndexes()) {
+            Integer match = olderRoots.remove(newer.getName(root));
+            if (match == null) {
+                added(root, listener);
+            } else if (!compare(match, root, listener, cancelled)) {
+                return false;
+            }
+        }
+        olderRoots.values().forEach((root) -> removed(root, listener));
+        return true;
+    }
+
+    /**
+     * Compare a node present in both snapshots. Directories are merged child by child, using a stack of cursors
+     * into each snapshot's run of children rather than recursion, so deep trees cannot overflow the stack.
+     */
+    private boolean compare(int olderNode, int newerNode, Listener listener, BooleanSupplier cancelled) {
+        if (!matches(olderNode, newerNode, listener)) {
+            return true;
+        }
+
+        // For each directory open in both: the next child in each snapshot and how many are left in each
+        int[] olderNext = new int[16];
+        int[] olderLeft = new int[16];
+        int[] newerNext = new int[16];
+        int[] newerLeft = new int[16];
+        int open = 0;
+
+        olderNext[open] = olderNode + 1;
+        olderLeft[open] = older.getChildCount(olderNode);
+        newerNext[open] = newerNode + 1;
+        newerLeft[open] = newer.getChildCount(newerNode);
+        open++;
+
+        while (open > 0) {
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            int top = open - 1;
+            if (olderLeft[top] == 0 && newerLeft[top] == 0) {
+                open--;
+                continue;
+            }
+
+            int o = olderNext[top];
+            int n = newerNext[top];
+            int order = (olderLeft[top] == 0) ? 1 : (newerLeft[top] == 0) ? -1 :
+                    older.getName(o).compareTo(newer.getName(n));
+            if (order < 0) {
+                removed(o, listener);
+                olderNext[top] = older.getSubtreeEnd(o);
+                olderLeft[top]--;
+                continue;
+            }
+            if (order > 0) {
+                added(n, listener);
+                newerNext[top] = newer.getSubtreeEnd(n);
+                newerLeft[top]--;
+                continue;
+            }
+
+            olderNext[top] = older.getSubtreeEnd(o);
+            olderLeft[top]--;
+            newerNext[top] = newer.getSubtreeEnd(n);
+            newerLeft[top]--;
+            if (matches(o, n, listener)) {
+                if (open == olderNext.length) {
+                    olderNext = Arrays.copyOf(olderNext, open * 2);
+                    olderLeft = Arrays.copyOf(olderLeft, open * 2);
+                    newerNext = Arrays.copyOf(newerNext, open * 2);
+                    newerLeft = Arrays.copyOf(newerLeft, open * 2);
+                }
+                olderNext[open] = o + 1;
+                olderLeft[open] = older.getChildCount(o);
+                newerNext[open] = n + 1;
+                newerLeft[open] = newer.getChildCount(n);
+                open++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Report the difference between two nodes of the same name.
+     * @return whether both are directories, whose children must be merged in turn
+     */
+    private boolean matches(int o, int n, Listener listener) {
+        boolean olderDirectory = older.isDirectory(o);
+        boolean newerDirectory = newer.isDirectory(n);
+        if (olderDirectory != newerDirectory) {
+            // Replaced by something of another kind: nothing carries across
+            removed(o, listener);
+            added(n, listener);
+            return false;
+        }
+        if (!olderDirectory) {
+            if (older.getFileSize(o) != newer.getFileSize(n)) {
+                listener.fileResized(o, n);
+            }
+            return false;
+        }
+        long delta = newer.getSubtreeSummary(n).getTotalBytes() - older.getSubtreeSummary(o).getTotalBytes();
+        if (delta != 0) {
+            listener.directoryChanged(o, n, delta);
+        }
+        return true;
+    }
+
+    /**
+     * Report everything under a node only in the newer snapshot. A subtree is a contiguous run of records, so it
+     * is read straight through.
+     */
+    private void added(int node, Listener listener) {
+        int end = newer.getSubtreeEnd(node);
+        for (int n = node; n < end; n++) {
+            if (newer.isDirectory(n)) {
+                long bytes = newer.getSubtreeSummary(n).getTotalBytes();
+                if (bytes != 0) {
+                    listener.directoryChanged(NO_NODE, n, bytes);
+                }
+            } else {
+                listener.fileAdded(n);
+            }
+        }
+    }
+
+    /**
+     * Report everything under a node only in the older snapshot.
+     */
+    private void removed(int node, Listener listener) {
+        int end = older.getSubtreeEnd(node);
+        for (int o = node; o < end; o++) {
+            if (older.isDirectory(o)) {
+                long bytes = older.getSubtreeSummary(o).getTotalBytes();
+                if (bytes != 0) {
+                    listener.directoryChanged(o, NO_NODE, -bytes);
+                }
+            } else {
+                listener.fileRemoved(o);
+            }
+        }
+    }
+}
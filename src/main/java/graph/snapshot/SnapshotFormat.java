@@ -0,0 +1,72 @@
+package graph.snapshot;
+
+/**
+ * Layout of a tree snapshot file. Everything is big endian and fixed width, so the file can be memory mapped and
+ * read in place:
+ *
+ * - a header of HEADER_SIZE bytes, see the HEADER_ offsets
+ * - one record of RECORD_SIZE bytes per node, in depth first (pre) order with children in name order. A node's
+ *   first child is the record after it, each later child starts where the previous child's subtree ends.
+ *   Each record also carries the node's subtree totals (see SubtreeSummary); the directory count is not stored,
+ *   as it follows from the subtree end and the file count.
+ * - the name heap: UTF-8 names referenced by the records. Roots store their full path, other nodes their name.
+ *   The names of the file types follow the node names.
+ * - the type table: one entry of TYPE_ENTRY_SIZE bytes per distinct file type, giving where its name is in the
+ *   heap. A record's flags field keeps the FLAG_ bits in its low TYPE_SHIFT bits and the node's index into this
+ *   table above them, so types sniffed from contents survive a save and load rather than being guessed again
+ *   from the name.
+ */
+final class SnapshotFormat {
+
+    static final int MAGIC = 0x46534153; // "FSAS"
+    static final int VERSION = 4;
+
+    static final int HEADER_SIZE = 64;
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 4;
+    static final int HEADER_SCAN_STARTED = 8;
+    static final int HEADER_OPTIONS_FINGERPRINT = 16;
+    static final int HEADER_ROOT_COUNT = 20;
+    static final int HEADER_NODE_COUNT = 24;
+    static final int HEADER_NAMES_START = 32;
+    static final int HEADER_NAMES_LENGTH = 40;
+    static final int HEADER_TYPES_START = 48;
+    static final int HEADER_TYPE_COUNT = 56;
+
+    static final int RECORD_SIZE = 72;
+    static final int RECORD_PARENT = 0;
+    static final int RECORD_CHILD_COUNT = 4;
+    static final int RECORD_SUBTREE_END = 8;
+    static final int RECORD_FLAGS = 12;
+    static final int RECORD_NAME_OFFSET = 16;
+    static final int RECORD_NAME_LENGTH = 24;
+    static final int RECORD_DEPTH = 28;
+    static final int RECORD_SIZE_BYTES = 32;
+    static final int RECORD_LAST_MODIFIED = 40;
+    static final int RECORD_SUBTREE_BYTES = 48;
+    static final int RECORD_SUBTREE_NEWEST = 56;
+    static final int RECORD_SUBTREE_FILES = 64;
+    static final int RECORD_SUBTREE_MAX_DEPTH = 68;
+
+    static final int FLAG_DIRECTORY = 1;
+    static final int FLAG_HIDDEN = 2;
+    static final int TYPE_SHIFT = 8;
+    static final int MAX_TYPES = 1 << (32 - TYPE_SHIFT);
+
+    static final int TYPE_ENTRY_SIZE = 12;
+    static final int TYPE_NAME_OFFSET = 0;
+    static final int TYPE_NAME_LENGTH = 8;
+
+    // Longest name that can be stored, which also bounds any single read from the file
+    static final int MAX_NAME_LENGTH = 1 << 16;
+
+    static final int NO_NODE = -1;
+
+    private SnapshotFormat() {
+        // Prevents instantiation
+    }
+
+    static long recordPosition(int node) {
+        return HEADER_SIZE + (long) node * RECORD_SIZE;
+    }
+}
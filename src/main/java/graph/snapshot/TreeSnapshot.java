@@ -0,0 +1,296 @@
+package graph.snapshot;
+
+import graph.FileTreeNode;
+import graph.FileTypeDictionary;
+import graph.SubtreeSummary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static graph.snapshot.SnapshotFormat.*;
+
+/**
+ * A scanned tree saved to disk, so a later run can reuse it rather than scanning again.
+ *
+ * Snapshots are written in the fixed width layout described in SnapshotFormat. Loading one maps the file into
+ * memory and hands back views onto it, so even very large trees are available almost immediately, without being
+ * read in and rebuilt.
+ */
+public class TreeSnapshot {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final List<FileTreeNode> roots;
+    private final long scanStarted;
+    private final int optionsFingerprint;
+
+    /**
+     *
+     * @param roots the roots of the scanned trees
+     * @param scanStarted when the scan producing the trees started
+     * @param optionsFingerprint fingerprint of the options the trees were scanned with
+     */
+    public TreeSnapshot(List<FileTreeNode> roots, long scanStarted, int optionsFingerprint) {
+        this.roots = roots;
+        this.scanStarted = scanStarted;
+        this.optionsFingerprint = optionsFingerprint;
+    }
+
+    public List<FileTreeNode> getRoots() {
+        return roots;
+    }
+
+    /**
+     * When the scan producing this snapshot started. Anything changed after this may be missing from it.
+     * @return time in milliseconds
+     */
+    public long getScanStarted() {
+        return scanStarted;
+    }
+
+    /**
+     * Fingerprint of the options used to scan, as a snapshot only describes the tree for the same options.
+     * @return the options fingerprint
+     */
+    public int getOptionsFingerprint() {
+        return optionsFingerprint;
+    }
+
+    /**
+     * Write this snapshot to the given file. The file is replaced in one step, so an interrupted save leaves the
+     * previous snapshot in place.
+     * @param file the file to write to
+     * @throws IOException if the snapshot could not be written
+     */
+    public void save(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        long nodeCount = countNodes(roots);
+        if (nodeCount > Integer.MAX_VALUE) {
+            throw new IOException("Too many nodes for a snapshot: " + nodeCount);
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(channel, recordPosition((int) nodeCount));
+            for (FileTreeNode root : roots) {
+                writer.writeTree(root);
+            }
+            writer.finish();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(HEADER_MAGIC, MAGIC)
+                    .putInt(HEADER_VERSION, VERSION)
+                    .putLong(HEADER_SCAN_STARTED, scanStarted)
+                    .putInt(HEADER_OPTIONS_FINGERPRINT, optionsFingerprint)
+                    .putInt(HEADER_ROOT_COUNT, roots.size())
+                    .putLong(HEADER_NODE_COUNT, nodeCount)
+                    .putLong(HEADER_NAMES_START, recordPosition((int) nodeCount))
+                    .putLong(HEADER_NAMES_LENGTH, writer.namesLength)
+                    .putLong(HEADER_TYPES_START, writer.typesStart)
+                    .putInt(HEADER_TYPE_COUNT, writer.types.size());
+            writeFully(channel, header, 0);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Open a snapshot saved to the given file. The file is memory mapped and the roots returned are views onto
+     * it, so loading takes about the same time however large the tree is.
+     * @param file the file to read from
+     * @return the snapshot
+     * @throws IOException if the file could not be read or is not a snapshot
+     */
+    public static TreeSnapshot load(Path file) throws IOException {
+        MappedTreeSnapshot mapped = MappedTreeSnapshot.open(file);
+        return new TreeSnapshot(mapped.getRoots(), mapped.getScanStarted(), mapped.getOptionsFingerprint());
+    }
+
+    private static long countNodes(List<FileTreeNode> roots) {
+        long count = 0;
+        Deque<FileTreeNode> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            FileTreeNode n = queue.pop();
+            count++;
+            for (int i = 0; i < n.getChildCount(); i++) {
+                queue.push(n.getChild(i));
+            }
+        }
+        return count;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Writes records and names as two sequential streams into the one file, each through its own buffer. The
+     * end of a directory's subtree is only known once its children are written, so that field is filled in
+     * afterwards: in the buffer if the record is still there, otherwise with a small positioned write. Types are
+     * numbered as they are met, and their names and the type table written at the end.
+     */
+    private static class Writer {
+
+        private final FileChannel channel;
+        private final long namesStart;
+
+        private final ByteBuffer records = ByteBuffer.allocate(BUFFER_SIZE / RECORD_SIZE * RECORD_SIZE);
+        private final ByteBuffer names = ByteBuffer.allocate(BUFFER_SIZE);
+        private int firstBufferedRecord = 0;
+        private int nextRecord = 0;
+        private long namesLength = 0;
+        private long namesFlushed = 0;
+        private final FileTypeDictionary types = new FileTypeDictionary();
+        private long typesStart = 0;
+
+        Writer(FileChannel channel, long namesStart) {
+            this.channel = channel;
+            this.namesStart = namesStart;
+        }
+
+        void writeTree(FileTreeNode root) throws IOException {
+            // Directories still being written: their record, sorted children and the next child to write
+            Deque<Integer> records = new ArrayDeque<>();
+            Deque<FileTreeNode[]> children = new ArrayDeque<>();
+            Deque<int[]> nextChild = new ArrayDeque<>();
+
+            int rootRecord = writeRecord(root, root.getPath(), NO_NODE, 1);
+            if (root.getChildCount() == 0) {
+                patchSubtreeEnd(rootRecord, nextRecord);
+                return;
+            }
+            records.push(rootRecord);
+            children.push(sortedChildren(root));
+            nextChild.push(new int[]{0});
+
+            while (!records.isEmpty()) {
+                FileTreeNode[] siblings = children.peek();
+                int[] next = nextChild.peek();
+                if (next[0] == siblings.length) {
+                    patchSubtreeEnd(records.pop(), nextRecord);
+                    children.pop();
+                    nextChild.pop();
+                    continue;
+                }
+
+                FileTreeNode n = siblings[next[0]++];
+                int record = writeRecord(n, n.getName(), records.peek(), records.size() + 1);
+                if (n.getChildCount() == 0) {
+                    patchSubtreeEnd(record, nextRecord);
+                } else {
+                    records.push(record);
+                    children.push(sortedChildren(n));
+                    nextChild.push(new int[]{0});
+                }
+            }
+        }
+
+        private static FileTreeNode[] sortedChildren(FileTreeNode n) {
+            FileTreeNode[] sorted = n.getChildren().toArray(new FileTreeNode[n.getChildCount()]);
+            // Siblings share the path up to their name, so this is name order
+            Arrays.sort(sorted, Comparator.comparing(FileTreeNode::getPath));
+            return sorted;
+        }
+
+        private int writeRecord(FileTreeNode n, String name, int parent, int depth) throws IOException {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length > MAX_NAME_LENGTH) {
+                throw new IOException("Name too long for a snapshot: " + n.getPath());
+            }
+            if (!records.hasRemaining()) {
+                flushRecords();
+            }
+
+            int type = types.idOf(n.getFileType());
+            if (type >= MAX_TYPES) {
+                throw new IOException("Too many file types for a snapshot: " + types.size());
+            }
+            int flags = (n.isDirectory() ? FLAG_DIRECTORY : 0) | (n.isHidden() ? FLAG_HIDDEN : 0) |
+                    type << TYPE_SHIFT;
+            SubtreeSummary summary = n.getSubtreeSummary();
+            records.putInt(parent)
+                    .putInt(n.getChildCount())
+                    .putInt(0)
+                    .putInt(flags)
+                    .putLong(namesLength)
+                    .putInt(nameBytes.length)
+                    .putInt(depth)
+                    .putLong(n.getFileSize())
+                    .putLong(n.getLastModified())
+                    .putLong(summary.getTotalBytes())
+                    .putLong(summary.getNewestModified())
+                    .putInt((int) summary.getFileCount())
+                    .putInt(depth + summary.getMaxDepth() - n.getDepth());
+            writeName(nameBytes);
+            return nextRecord++;
+        }
+
+        private void writeName(byte[] nameBytes) throws IOException {
+            if (names.remaining() < nameBytes.length) {
+                flushNames();
+            }
+            names.put(nameBytes);
+            namesLength += nameBytes.length;
+        }
+
+        private void patchSubtreeEnd(int record, int end) throws IOException {
+            if (record >= firstBufferedRecord) {
+                records.putInt((record - firstBufferedRecord) * RECORD_SIZE + RECORD_SUBTREE_END, end);
+            } else {
+                ByteBuffer patch = ByteBuffer.allocate(4).putInt(0, end);
+                writeFully(channel, patch, recordPosition(record) + RECORD_SUBTREE_END);
+            }
+        }
+
+        private void flushRecords() throws IOException {
+            records.flip();
+            long position = recordPosition(firstBufferedRecord);
+            while (records.hasRemaining()) {
+                position += channel.write(records, position);
+            }
+            records.clear();
+            firstBufferedRecord = nextRecord;
+        }
+
+        private void flushNames() throws IOException {
+            names.flip();
+            long position = namesStart + namesFlushed;
+            while (names.hasRemaining()) {
+                position += channel.write(names, position);
+            }
+            namesFlushed += names.position();
+            names.clear();
+        }
+
+        void finish() throws IOException {
+            flushRecords();
+
+            ByteBuffer table = ByteBuffer.allocate(types.size() * TYPE_ENTRY_SIZE);
+            for (int i = 0; i < types.size(); i++) {
+                byte[] nameBytes = types.typeOf(i).getBytes(StandardCharsets.UTF_8);
+                if (nameBytes.length > MAX_NAME_LENGTH) {
+                    throw new IOException("File type too long for a snapshot: " + types.typeOf(i));
+                }
+                table.putLong(namesLength).putInt(nameBytes.length);
+                writeName(nameBytes);
+            }
+            flushNames();
+            typesStart = namesStart + namesLength;
+            writeFully(channel, table, typesStart);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package main;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import exceptions.QueryException;
+import graph.FileTreeNode;
+import graph.TreeFingerprint;
+import graph.TreeWalker;
+import graph.analysis.TreeAnalyser;
+import graph.factory.CustomGraphFactory;
+import graph.factory.ScanSample;
+import graph.factory.ScanStatistics;
+import graph.factory.TreeWatcher;
+import graph.query.Query;
+import graph.query.QueryExecutor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the scanned tree in memory between runs, and serves analyser runs, reports and queries over it on a local
+ * HTTP endpoint, so each request pays for the analysis alone rather than a fresh scan.
+ * <p>
+ * The tree is refreshed in the background, by a new scan (incremental, if a snapshotPath is configured) which is
+ * swapped in once complete. A request keeps reading the tree it started with while a refresh is under way, and any
+ * number of requests may read at once, without locks: a scanned tree is never changed once built, and the watcher
+ * below changes nothing but the parent links of shared nodes, which it only points at finished copies.
+ * <p>
+ * With watch set, the tree is instead kept up to date from filesystem events once it has been scanned (see
+ * TreeWatcher), and only rescanned if asked or if a refreshInterval is also set. Changes made between the scan
+ * and the watches being set up are only picked up by a rescan.
+ * <p>
+ * - GET /status shows the tree being served
+ * - GET /report returns the merged PDF report, of the configured analysers or those given as ?analysers=a,b
+ * - GET /query?q=... answers a query over the tree
+ * - POST /refresh starts a refresh straight away
+ */
+public class Daemon {
+
+    private final Map<String, Object> config;
+    private final List<String> paths;
+    private final CustomGraphFactory factory;
+    private final HttpServer server;
+    private final ExecutorService requests;
+    private final ScheduledExecutorService refresher;
+    private final AtomicReference<Tree> tree = new AtomicReference<>();
+    private TreeWatcher watcher;
+
+    /**
+     * A tree as built by one scan, possibly with changes since applied, along with what is known about it.
+     */
+    private static final class Tree {
+        final List<FileTreeNode> roots;
+        final ScanSample sample;
+        final ScanStatistics statistics;
+        final long scannedAt;
+        final long scanMillis;
+        // Worked out when first needed, as a tree kept up to date by watching may be replaced many times over
+        private volatile String fingerprint;
+
+        Tree(List<FileTreeNode> roots, ScanSample sample, ScanStatistics statistics, long scanMillis) {
+            this.roots = Collections.unmodifiableList(roots);
+            this.sample = sample;
+            this.statistics = statistics;
+            this.scannedAt = System.currentTimeMillis();
+            this.scanMillis = scanMillis;
+        }
+
+        /**
+         * The tree from the same scan, with changes applied.
+         */
+        Tree(Tree scanned, List<FileTreeNode> roots) {
+            this.roots = roots;
+            this.sample = scanned.sample;
+            this.statistics = scanned.statistics;
+            this.scannedAt = scanned.scannedAt;
+            this.scanMillis = scanned.scanMillis;
+        }
+
+        String fingerprint() {
+            String f = fingerprint;
+            if (f == null) {
+                f = TreeFingerprint.of(roots);
+                fingerprint = f;
+            }
+            return f;
+        }
+    }
+
+    /**
+     * Scans the configured paths, then starts serving on the loopback address only.
+     *
+     * @param config configuration for the daemon, as for a run, along with daemonPort and any daemonThreads,
+     *               refreshInterval (in seconds, 0 to refresh only when asked), watch and watchBatch (the time in
+     *               milliseconds over which changes are gathered into one batch)
+     * @throws IOException if the port cannot be bound
+     */
+    public Daemon(Map<String, Object> config) throws IOException {
+        this.config = config;
+        this.paths = (List<String>) config.get("paths");
+        this.factory = new CustomGraphFactory(Runner.optionsFrom(config).build());
+        this.refresher = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "daemon-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        refresh();
+        if (tree.get() == null) {
+            throw new IOException("Could not scan the paths to be served: " + paths);
+        }
+        if (Boolean.TRUE.equals(config.get("watch"))) {
+            startWatching(config.containsKey("watchBatch") ? ((Number) config.get("watchBatch")).longValue() : 500);
+        }
+
+        int port = (Integer) config.get("daemonPort");
+        int threads = config.containsKey("daemonThreads") ? (Integer) config.get("daemonThreads") : 4;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        AtomicInteger count = new AtomicInteger();
+        requests = Executors.newFixedThreadPool(threads,
+                (runnable) -> new Thread(runnable, "daemon-request-" + count.incrementAndGet()));
+        server.setExecutor(requests);
+        server.createContext("/status", this::status);
+        server.createContext("/report", this::report);
+        server.createContext("/query", this::query);
+        server.createContext("/refresh", this::requestRefresh);
+        server.start();
+
+        long interval = config.containsKey("refreshInterval") ?
+                ((Number) config.get("refreshInterval")).longValue() : 0;
+        if (interval > 0) {
+            refresher.scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.SECONDS);
+        }
+        System.out.println("Serving on http://" + server.getAddress().getHostString() + ":" +
+                server.getAddress().getPort() + "/");
+    }
+
+    /**
+     * Scan the paths again and swap in the new tree. Runs on the refresh thread only, bar the first scan, so the
+     * factory is never used by two scans at once.
+     */
+    private synchronized void refresh() {
+        try {
+            long start = System.nanoTime();
+            List<FileTreeNode> roots = (paths == null) ?
+                    factory.generateFsGraph(FileSystems.getDefault()) : factory.generateFsGraph(paths);
+            Tree next = new Tree(roots, factory.getLastScanSample(), factory.getLastScanStatistics(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            Tree previous = tree.getAndSet(next);
+            if (watcher != null) {
+                // Watch any directories the scan found which were missed
+                watcher.watchAll(next.roots);
+            }
+            System.out.println("Tree refreshed in " + next.scanMillis + "ms, fingerprint " + next.fingerprint() +
+                    ((previous != null && previous.fingerprint().equals(next.fingerprint())) ? " (unchanged)." : "."));
+        } catch (RuntimeException e) {
+            // Keep serving the tree from the last good scan
+            System.err.println("Could not refresh the tree, still serving the last one. " + e);
+        }
+    }
+
+    /**
+     * Watch the tree, and apply changes to it in batches as they happen, on a thread of its own.
+     *
+     * @param batchMillis the time over which changes are gathered into one batch
+     */
+    private void startWatching(long batchMillis) {
+        try {
+            watcher = factory.watch(tree.get().roots);
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Could not watch the tree, it will only be updated by a rescan. " + e.getMessage());
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                while (watcher.awaitChanges(batchMillis)) {
+                    applyChanges();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "daemon-watch");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("Watching the tree for changes, applied in batches of " + batchMillis + "ms.");
+    }
+
+    /**
+     * Apply the changes gathered by the watcher, and swap in the changed tree. Never runs alongside a refresh.
+     */
+    private synchronized void applyChanges() {
+        Tree current = tree.get();
+        try {
+            List<FileTreeNode> roots = watcher.apply(current.roots);
+            if (roots != current.roots) {
+                tree.set(new Tree(current, roots));
+            }
+        } catch (RuntimeException e) {
+            // The tree may have missed a change, so scan it again in full
+            System.err.println("Could not apply changes to the tree, rescanning. " + e);
+            refresher.execute(this::refresh);
+        }
+    }
+
+    /**
+     * Stop serving, giving requests under way the given time to finish.
+     *
+     * @param seconds how long to wait for requests under way
+     */
+    public void stop(int seconds) {
+        if (watcher != null) {
+            watcher.close();
+        }
+        refresher.shutdownNow();
+        server.stop(seconds);
+        requests.shutdown();
+    }
+
+    private void status(HttpExchange exchange) throws IOException {
+        if (!allow(exchange, "GET")) {
+            return;
+        }
+        Tree current = tree.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Paths: ").append(paths).append('\n');
+        sb.append("Fingerprint: ").append(current.fingerprint()).append('\n');
+        sb.append("Scanned: ").append(new Date(current.scannedAt))
+                .append(" in ").append(current.scanMillis).append("ms\n");
+        if (current.statistics != null) {
+            sb.append(current.statistics).append('\n');
+        }
+        if (current.sample != null) {
+            sb.append("Counts are estimated from a ").append(current.sample)
+                    .append(". Other results only cover the directories scanned.\n");
+        }
+        if (watcher != null) {
+            sb.append(watcher).append('\n');
+        }
+        respond(exchange, 200, "text/plain", text(sb.toString()));
+    }
+
+    private void report(HttpExchange exchange) throws IOException {
+        if (!allow(exchange, "GET")) {
+            return;
+        }
+        Tree current = tree.get();
+
+        // A runner per request, as it holds the state of the run
+        Runner runner = new Runner();
+        List<String> analyserNames = runner.readAnalyserConfig(config);
+        String requested = parameters(exchange).get("analysers");
+        if (requested != null) {
+            analyserNames = Arrays.asList(requested.split(","));
+        }
+        List<TreeAnalyser> tas = runner.resolveAnalysers(paths, analyserNames, current.roots);
+        if (tas.isEmpty()) {
+            respond(exchange, 400, "text/plain", text("No analysers could be run: " + analyserNames + "\n"));
+            return;
+        }
+        tas.forEach(ta -> ta.setSample(current.sample));
+
+        // Estimates from a sample are not cached, as the next sample will differ
+        List<TreeAnalyser> toRun = (config.get("resultCachePath") != null && current.sample == null) ?
+                runner.useResultCache(config, current.fingerprint(), tas) : tas;
+        ByteArrayOutputStream pdf = runner.mergePdfs(runner.runAnalysersInParallel(toRun));
+        if (pdf == null) {
+            respond(exchange, 500, "text/plain", text("The report could not be generated.\n"));
+        } else {
+            respond(exchange, 200, "application/pdf", pdf.toByteArray());
+        }
+    }
+
+    private void query(HttpExchange exchange) throws IOException {
+        if (!allow(exchange, "GET")) {
+            return;
+        }
+        String text = parameters(exchange).get("q");
+        if (text == null) {
+            respond(exchange, 400, "text/plain", text("Give the query as ?q=...\n"));
+            return;
+        }
+        try {
+            QueryExecutor executor = Query.parse(text).newExecutor();
+            TreeWalker.walk(tree.get().roots, executor);
+            respond(exchange, 200, "text/plain", text(executor.getResult() + "\n"));
+        } catch (QueryException e) {
+            respond(exchange, 400, "text/plain", text("Could not understand the query: " + e.getMessage() + "\n"));
+        }
+    }
+
+    private void requestRefresh(HttpExchange exchange) throws IOException {
+        if (!allow(exchange, "POST")) {
+            return;
+        }
+        refresher.execute(this::refresh);
+        respond(exchange, 202, "text/plain", text("Refresh started.\n"));
+    }
+
+    /**
+     * Turn away a request made with the wrong method.
+     *
+     * @return whether the request may go ahead
+     */
+    private boolean allow(HttpExchange exchange, String method) throws IOException {
+        if (method.equals(exchange.getRequestMethod())) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", method);
+        respond(exchange, 405, "text/plain", text("Use " + method + ".\n"));
+        return false;
+    }
+
+    private static void respond(HttpExchange exchange, int code, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] text(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The parameters of a request's query string.
+     */
+    private static Map<String, String> parameters(HttpExchange exchange) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw != null) {
+            for (String pair : raw.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                            URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                }
+            }
+        }
+        return parameters;
+    }
+}
@@ -2,12 +2,30 @@ package main;
 
 import exceptions.AnalysisException;
 import exceptions.PdfGenerationException;
+import exceptions.QueryException;
+import graph.CompactFileTree;
+import graph.CompositeTreeVisitor;
 import graph.FileTreeNode;
+import graph.TreeFingerprint;
+import graph.TreeVisitor;
+import graph.TreeWalker;
+import graph.analysis.AnalysisRun;
+import graph.analysis.AnalysisScheduler;
+import graph.analysis.CachedAnalyser;
+import graph.analysis.ResultCache;
+import graph.analysis.RootFeed;
+import graph.analysis.SnapshotDiffAnalyser;
 import graph.analysis.TreeAnalyser;
 import graph.analysis.TreeAnalyserCallable;
 import graph.factory.CustomGraphFactory;
 import graph.factory.Options;
+import graph.factory.ScanSample;
+import graph.query.Query;
+import graph.query.QueryExecutor;
+import graph.query.QueryResult;
+import graph.snapshot.MappedTreeSnapshot;
 import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.util.PDFMergerUtility;
 import utils.JsonFileLoadHelper;
 
@@ -17,10 +35,15 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.FileSystems;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
@@ -41,6 +64,22 @@ import java.util.stream.Collectors;
  */
 public class Runner {
 
+    // Time budgets in milliseconds for analysers, by class name, and for any analyser not listed
+    private final Map<String, Long> budgets = new HashMap<>();
+    private long defaultBudget;
+
+    // Config of each analyser other than its class name and budget, by class name, in a stable form
+    private final Map<String, String> analyserSettings = new HashMap<>();
+    // Results of the analysers which are run are cached under these keys, when a result cache is in use
+    private ResultCache resultCache;
+    private final Map<TreeAnalyser, String> cacheKeys = new IdentityHashMap<>();
+
+    /**
+     * For use by the daemon, which configures and runs each step itself.
+     */
+    Runner() {
+    }
+
     /**
      * Run with a config model, containing all the required information to run the analyses.
      *
@@ -49,28 +88,111 @@ public class Runner {
     public Runner(Map<String, Object> config) {
 
         // Set correct options & create a factory
-        Options options = new Options.Builder()
-                .ignoreList((List<String>) config.get("ignoreList"))
-                .typeFilters((List<String>) config.get("typeFilters"))
-                .maxDepth((Integer) config.get("maxDepth")).build();
-        CustomGraphFactory factory = new CustomGraphFactory(options);
+        Options.Builder optionsBuilder = optionsFrom(config);
 
-        // Use the factory to read in the FS and create a graph
         List<String> paths = (List<String>) config.get("paths");
         String logPath = (String) config.get("logPath");
+        String snapshot = (String) config.get("snapshot");
+        // Read in the 'analyser' tokens, along with any time budgets
+        List<String> analyserNames = readAnalyserConfig(config);
 
-        List<FileTreeNode> roots = (paths == null) ?
-                factory.generateFsGraph(FileSystems.getDefault()) : factory.generateFsGraph(paths);
+        // A query is answered on its own, in place of the analysers and their report
+        if (config.get("query") != null) {
+            Query query = parseQuery((String) config.get("query"));
+            // Query results are exact, so a sampling rate is not applied
+            CustomGraphFactory factory = new CustomGraphFactory(optionsBuilder.pushDown(query).sampleRate(1).build());
+            System.out.println(runQuery(factory, paths, snapshot, query));
+            return;
+        }
+        // Two snapshots are compared with each other, in place of the analysers
+        if (snapshot != null && config.get("baseSnapshot") != null) {
+            SnapshotDiffAnalyser diff = new SnapshotDiffAnalyser(openSnapshot((String) config.get("baseSnapshot")),
+                    openSnapshot(snapshot));
+            printMergedPdf(logPath, runAnalysersInParallel(Collections.singletonList(diff)));
+            System.out.println("Compared snapshots. " + diff.getSummary());
+            System.out.println("Finished! Your report is ready at path: " + logPath);
+            return;
+        }
+        Options options = optionsBuilder.build();
+        CustomGraphFactory factory = new CustomGraphFactory(options);
 
-        // Read in the 'analyser' tokens and create the analyser list
-        List<String> analyserNames = ((List<Object>) config.get("analysers")).stream()
-                .map(item -> (Map<String, String>) item)
-                .map(item -> item.get("className"))
-                .collect(Collectors.toList());
-        List<TreeAnalyser> tas = resolveAnalysers(paths, analyserNames, roots);
+        // Create the analyser list
+        List<TreeAnalyser> tas = resolveAnalysers(paths, analyserNames, new ArrayList<>());
 
-        // Run analysers to Get PDFs and then print them
-        printMergedPdf(logPath, runAnalysersInParallel(tas));
+        // Analysis and rendering overlap with the scan, and the report is merged as each analyser finishes
+        if (snapshot == null && !options.isSampling() && Boolean.TRUE.equals(config.get("pipelined"))) {
+            runPipelinedAnalysis(factory, paths, tas, logPath);
+            System.out.println("Finished! Your report is ready at path: " + logPath);
+            return;
+        }
+
+        List<ByteArrayOutputStream> pdfs;
+        // A sampled tree is built, as the analysers need to know the sample before the first node reaches them
+        if (snapshot == null && !options.isSampling() && Boolean.TRUE.equals(config.get("streaming")) &&
+                canStream(tas)) {
+            // Feed the analysers straight from the scan, no tree is held in memory
+            pdfs = runStreamingAnalysis(factory, paths, tas);
+        } else {
+            // Use the factory to read in the FS and create a graph, or reload one saved earlier
+            List<FileTreeNode> roots;
+            boolean compact = Boolean.TRUE.equals(config.get("compactTree"));
+            if (compact && snapshot != null) {
+                System.err.println("compactTree does not apply to a tree loaded from a snapshot, and is ignored.");
+            } else if (compact && options.getSnapshotPath() != null) {
+                System.err.println("compactTree streams the scan, so the snapshot at snapshotPath is neither " +
+                        "used nor updated by it.");
+            }
+            if (snapshot != null) {
+                roots = loadSnapshot(snapshot);
+                List<String> rootPaths = roots.stream().map(FileTreeNode::getPath).collect(Collectors.toList());
+                tas.forEach(ta -> ta.setPaths(rootPaths));
+            } else if (compact) {
+                roots = generateCompactGraph(factory, paths).getRoots();
+            } else {
+                roots = (paths == null) ?
+                        factory.generateFsGraph(FileSystems.getDefault()) : factory.generateFsGraph(paths);
+            }
+            if (factory.getLastScanStatistics() != null) {
+                System.out.println("Scan complete. " + factory.getLastScanStatistics());
+            }
+            ScanSample sample = factory.getLastScanSample();
+            if (sample != null) {
+                System.out.println("Counts are estimated from a " + sample + ".");
+                List<String> unscaled = tas.stream()
+                        .filter(ta -> !ta.scalesSample())
+                        .map(TreeAnalyser::getAnalysisName)
+                        .collect(Collectors.toList());
+                if (!unscaled.isEmpty()) {
+                    System.err.println("These analysers cannot scale a sample up, so their reports only cover the " +
+                            "directories scanned: " + unscaled);
+                }
+            }
+            tas.forEach(ta -> {
+                ta.setTree(roots);
+                ta.setSample(sample);
+            });
+
+            // Estimates from a sample are not cached, as the next sample will differ
+            List<TreeAnalyser> toRun = (config.get("resultCachePath") != null && sample == null) ?
+                    useResultCache(config, TreeFingerprint.of(roots), tas) : tas;
+
+            // Run analysers to Get PDFs
+            if (Boolean.TRUE.equals(config.get("fusedAnalysis"))) {
+                pdfs = runFusedAnalysis(roots, toRun);
+            } else if (config.containsKey("analysisThreads")) {
+                // Split each analysis across a pool shared by all analysers
+                ForkJoinPool pool = new ForkJoinPool((Integer) config.get("analysisThreads"));
+                try {
+                    pdfs = runAnalysersInParallel(toRun, pool);
+                } finally {
+                    pool.shutdown();
+                }
+            } else {
+                pdfs = runAnalysersInParallel(toRun);
+            }
+        }
+
+        printMergedPdf(logPath, pdfs);
 
         System.out.println("Finished! Your report is ready at path: " + logPath);
     }
@@ -100,6 +222,7 @@ public class Runner {
         // Use the configured factory to read in the filesystem & create a graph
         List<FileTreeNode> roots = (paths == null) ?
                 factory.generateFsGraph(FileSystems.getDefault()) : factory.generateFsGraph(paths);
+        System.out.println("Scan complete. " + factory.getLastScanStatistics());
 
         // Read in the 'analyser' tokens and create the analyser list
         List<TreeAnalyser> tas = resolveAnalysers(paths, Arrays.asList(analysers.split(",")), roots);
@@ -115,6 +238,8 @@ public class Runner {
      * <p>
      * run --path <path> --maxDepth <max> --ignore<commaseplist> --typeFilter<commaseplist> --logpath <path>
      * --analysers <comseplist>
+     * <p>
+     * run --path <path> --query <query>
      *
      * @param args command line args
      */
@@ -126,12 +251,18 @@ public class Runner {
         int maxDepth = 1000;
         List<String> ignores = null;
         List<String> typeFilters = null;
+        String query = null;
 
         // If a config has been passed in, use this.
         int index = Arrays.asList(args).indexOf("--config");
         if (index != -1 && index != args.length) {
             try {
                 Map<String, Object> config = JsonFileLoadHelper.loadJsonFile(args[index + 1]);
+                // Keep the tree in memory and serve reports until stopped, in place of a single run
+                if (config.get("daemonPort") != null) {
+                    startDaemon(config);
+                    return;
+                }
                 new Runner(config);
             } catch (FileNotFoundException e) {
                 System.err.println("Config file specified not found.");
@@ -165,46 +296,472 @@ public class Runner {
                     case "--analysers":
                         analysers = args[i + 1];
                         break;
+                    case "--query":
+                        query = args[i + 1];
+                        break;
                     default:
                         break;
                 }
             }
 
-            new Runner(Arrays.asList(path.split(",")), logPath, ignores, typeFilters, maxDepth, analysers);
+            if (query != null) {
+                Map<String, Object> config = new HashMap<>();
+                config.put("paths", (path == null) ? null : Arrays.asList(path.split(",")));
+                config.put("ignoreList", ignores);
+                config.put("typeFilters", typeFilters);
+                config.put("maxDepth", maxDepth);
+                config.put("query", query);
+                new Runner(config);
+            } else {
+                new Runner(Arrays.asList(path.split(",")), logPath, ignores, typeFilters, maxDepth, analysers);
+            }
         }
         System.out.println("Done!");
     }
 
     /**
-     * Given a number of analysers, wraps each in a callable, and runs it in a new thread.
-     * Return the generated PDFs
+     * Starts a daemon which serves the configured paths, exiting if it cannot.
+     *
+     * @param config configuration for the daemon
+     */
+    static void startDaemon(Map<String, Object> config) {
+        try {
+            Daemon daemon = new Daemon(config);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> daemon.stop(2)));
+        } catch (IOException e) {
+            System.err.println("Could not start the daemon: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the scan options from a config model.
+     *
+     * @param config the config
+     * @return a builder holding the options, ready to be adjusted or built
+     */
+    static Options.Builder optionsFrom(Map<String, Object> config) {
+        return new Options.Builder()
+                .ignoreList((List<String>) config.get("ignoreList"))
+                .typeFilters((List<String>) config.get("typeFilters"))
+                .maxDepth((Integer) config.get("maxDepth"))
+                .scanMode((String) config.get("scanMode"))
+                .threads(config.containsKey("threads") ? (Integer) config.get("threads") : 0)
+                .nio(!Boolean.FALSE.equals(config.get("nio")))
+                .maxInFlightListings(config.containsKey("maxInFlightListings") ?
+                        (Integer) config.get("maxInFlightListings") : 0)
+                .snapshotPath((String) config.get("snapshotPath"))
+                .fullRescan(Boolean.TRUE.equals(config.get("fullRescan")))
+                .sniffTypes(Boolean.TRUE.equals(config.get("sniffTypes")))
+                .typeCachePath((String) config.get("typeCachePath"))
+                .sampleRate(config.containsKey("sampleRate") ? ((Number) config.get("sampleRate")).doubleValue() : 1)
+                .sampleMode((String) config.get("sampleMode"))
+                .sampleDepth(config.containsKey("sampleDepth") ? (Integer) config.get("sampleDepth") : 0)
+                .sampleSeed(config.containsKey("sampleSeed") ? ((Number) config.get("sampleSeed")).longValue() : 0);
+    }
+
+    /**
+     * Reads the analysers' config from a config model: their class names, along with any time budgets and other
+     * settings, which are kept for the run.
+     *
+     * @param config the config
+     * @return the class names of the analysers, in order, empty if none are configured
+     */
+    List<String> readAnalyserConfig(Map<String, Object> config) {
+        defaultBudget = config.containsKey("analysisBudget") ?
+                ((Number) config.get("analysisBudget")).longValue() : 0;
+        List<Object> analysers = (List<Object>) config.get("analysers");
+        List<Map<String, Object>> analyserConfigs = (analysers == null) ? new ArrayList<>() : analysers.stream()
+                .map(item -> (Map<String, Object>) item)
+                .collect(Collectors.toList());
+        analyserConfigs.stream()
+                .filter(item -> item.get("className") != null && item.get("budget") != null)
+                .forEach(item -> budgets.put((String) item.get("className"),
+                        ((Number) item.get("budget")).longValue()));
+        analyserConfigs.stream()
+                .filter(item -> item.get("className") != null)
+                .forEach(item -> {
+                    Map<String, Object> settings = new TreeMap<>(item);
+                    settings.remove("className");
+                    settings.remove("budget");
+                    analyserSettings.put((String) item.get("className"), settings.toString());
+                });
+        return analyserConfigs.stream()
+                .map(item -> (String) item.get("className"))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Whether every analyser can be fed straight from a scan, i.e. is also a tree visitor.
      *
      * @param tas the analysers
+     * @return if the analysis can be streamed
+     */
+    boolean canStream(List<TreeAnalyser> tas) {
+        List<String> blocking = tas.stream()
+                .filter(ta -> !(ta instanceof TreeVisitor))
+                .map(TreeAnalyser::getAnalysisName)
+                .collect(Collectors.toList());
+        if (!blocking.isEmpty()) {
+            System.err.println("Cannot stream the analysis, these analysers need the whole tree: " + blocking +
+                    ". building the tree instead.");
+        }
+        return blocking.isEmpty();
+    }
+
+    /**
+     * Streams the scan of the given paths through every analyser at once, in a single pass, then generates the
+     * reports in parallel. Memory use no longer grows with the number of files scanned.
+     *
+     * @param factory the factory to scan with
+     * @param paths   the paths to scan, or null for the whole filesystem
+     * @param tas     the analysers, all of which must be tree visitors
      * @return pdfs as byte arrays list
      */
-    List<ByteArrayOutputStream> runAnalysersInParallel(List<TreeAnalyser> tas) {
-        List<ByteArrayOutputStream> pdfs = new ArrayList<>();
+    List<ByteArrayOutputStream> runStreamingAnalysis(CustomGraphFactory factory, List<String> paths,
+                                                     List<TreeAnalyser> tas) {
+        TreeVisitor visitor = new CompositeTreeVisitor(
+                tas.stream().map(ta -> (TreeVisitor) ta).collect(Collectors.toList()));
+        if (paths == null) {
+            factory.streamFsGraph(FileSystems.getDefault(), visitor);
+        } else {
+            factory.streamFsGraph(paths, visitor);
+        }
+        System.out.println("Streamed scan complete. " + factory.getLastScanStatistics());
+        return runAnalysersInParallel(tas, false);
+    }
+
+    /**
+     * Scans, analyses and renders in overlapping stages. Every analyser is queued on the scheduler before the scan
+     * starts, and gets each tree as soon as the scan completes it. Each analyser renders its report as soon as
+     * it is done, and the report is parsed on the same thread, so the main thread only has to append the parsed
+     * reports (in order, each as soon as it and those before it are ready) and write the result. The whole run
+     * then takes little more than its slowest stage.
+     * <p>
+     * A time budget here includes any time an analyser spends waiting for the scan.
+     *
+     * @param factory the factory to scan with
+     * @param paths   the paths to scan, or null for the whole filesystem
+     * @param tas     the analysers
+     * @param logPath the path to write the merged report to
+     */
+    void runPipelinedAnalysis(CustomGraphFactory factory, List<String> paths, List<TreeAnalyser> tas,
+                              String logPath) {
+        RootFeed feed = new RootFeed();
+        List<CompletableFuture<AnalysisRun>> runs = new ArrayList<>();
+        List<CompletableFuture<PDDocument>> reports = new ArrayList<>();
+        tas.forEach(ta -> {
+            CompletableFuture<AnalysisRun> run =
+                    AnalysisScheduler.shared().submit(new TreeAnalyserCallable(ta, feed), budgetFor(ta));
+            runs.add(run);
+            reports.add(run.thenApply(this::loadReport));
+        });
 
         try {
-            ExecutorService executorService = Executors.newFixedThreadPool(tas.size());
-            List<Future<ByteArrayOutputStream>> futures =
-                    executorService.invokeAll(tas.stream().map(TreeAnalyserCallable::new).collect(Collectors.toList()));
+            if (paths == null) {
+                factory.generateFsGraph(FileSystems.getDefault(), feed);
+            } else {
+                factory.generateFsGraph(paths, feed);
+            }
+        } finally {
+            feed.close();
+        }
+        System.out.println("Scan complete. " + factory.getLastScanStatistics());
 
-            // Wait for them to finish
-            futures.forEach(f -> {
-                try {
-                    pdfs.add(f.get());
-                } catch (InterruptedException e) {
-                    System.err.println("Interrupted running one of the threads");
-                } catch (ExecutionException e) {
-                    System.err.println("Execution problem with one of the threads");
+        PDDocument merged = null;
+        List<PDDocument> parts = new ArrayList<>();
+        try {
+            merged = new PDDocument();
+            PDFMergerUtility mergeUtil = new PDFMergerUtility();
+            for (CompletableFuture<PDDocument> report : reports) {
+                PDDocument part = report.join();
+                if (part != null) {
+                    parts.add(part);
+                    mergeUtil.appendDocument(merged, part);
                 }
-            });
-            executorService.shutdown();
-        } catch (InterruptedException e) {
-            System.err.println("Threading issue - interrupted exception");
+            }
+            merged.save(logPath);
+        } catch (COSVisitorException | IOException e) {
+            System.err.println("Error merging the document - sorry!");
+        } finally {
+            parts.add(merged);
+            parts.forEach(this::closeQuietly);
+        }
+        printRuns(runs.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    /**
+     * Parses the report of a finished analyser, ready to be merged.
+     *
+     * @param run how the analyser's run ended
+     * @return the parsed report, or null if there is none
+     */
+    PDDocument loadReport(AnalysisRun run) {
+        if (!run.isFinished()) {
+            return null;
+        }
+        try {
+            return PDDocument.load(new ByteArrayInputStream(run.getPdf().toByteArray()));
+        } catch (IOException e) {
+            System.err.println("Could not read the report of: " + run.getAnalysisName() + ", skipping.");
+            return null;
+        }
+    }
+
+    private void closeQuietly(PDDocument document) {
+        if (document != null) {
+            try {
+                document.close();
+            } catch (IOException e) {
+                System.err.println("Could not close a report: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Opens the result cache and looks up each analyser's results for the given tree. An analyser whose results
+     * are cached is replaced by a stand in which just gives back the cached report; the results of the others are
+     * cached once they are run. Analysers which are not cacheable are always run and never stored. Without a
+     * usable cache, the analysers are run as they are.
+     *
+     * @param config      configuration for this run
+     * @param fingerprint fingerprint of the tree to be analysed
+     * @param tas         the analysers
+     * @return the analysers to run, in the same order
+     */
+    List<TreeAnalyser> useResultCache(Map<String, Object> config, String fingerprint, List<TreeAnalyser> tas) {
+        long maxMegabytes = config.containsKey("resultCacheSize") ?
+                ((Number) config.get("resultCacheSize")).longValue() : 256;
+        try {
+            resultCache = new ResultCache(Paths.get((String) config.get("resultCachePath")),
+                    maxMegabytes * 1024 * 1024);
+        } catch (IOException e) {
+            System.err.println("Could not open the result cache, analysing without it. " + e.getMessage());
+            return tas;
+        }
+
+        List<TreeAnalyser> toRun = new ArrayList<>();
+        for (TreeAnalyser ta : tas) {
+            if (!ta.isCacheable()) {
+                toRun.add(ta);
+                continue;
+            }
+            String key = ResultCache.key(ta, analyserSettings.getOrDefault(ta.getClass().getName(), "{}"),
+                    fingerprint);
+            ByteArrayOutputStream cached = resultCache.load(key, ta);
+            if (cached != null) {
+                toRun.add(new CachedAnalyser(ta, cached));
+            } else {
+                cacheKeys.put(ta, key);
+                toRun.add(ta);
+            }
+        }
+        System.out.println("Tree fingerprint " + fingerprint + ": " + resultCache.getHits() + " of " + tas.size() +
+                " analysers served from the result cache.");
+        return toRun;
+    }
+
+    /**
+     * Walks the tree once, passing each node to every analyser which is also a tree visitor, rather than each
+     * analyser making its own pass. Any other analysers then run their own analysis as usual, and the reports are
+     * generated in parallel.
+     *
+     * @param roots the roots of the tree
+     * @param tas   the analysers
+     * @return pdfs as byte arrays list
+     */
+    List<ByteArrayOutputStream> runFusedAnalysis(List<FileTreeNode> roots, List<TreeAnalyser> tas) {
+        List<TreeVisitor> visitors = tas.stream()
+                .filter(ta -> ta instanceof TreeVisitor)
+                .map(ta -> (TreeVisitor) ta)
+                .collect(Collectors.toList());
+        TreeWalker.walk(roots, new CompositeTreeVisitor(visitors));
+        System.out.println("Single pass analysis complete for " + visitors.size() + " of " + tas.size() +
+                " analysers.");
+
+        return runCallablesInParallel(tas.stream()
+                .map(ta -> new TreeAnalyserCallable(ta, !(ta instanceof TreeVisitor)))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Parses a query, exiting if it is not valid as there is then nothing to run.
+     *
+     * @param text the query
+     * @return the compiled query
+     */
+    Query parseQuery(String text) {
+        try {
+            return Query.parse(text);
+        } catch (QueryException e) {
+            System.err.println("Could not understand the query: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Answers a query, from a snapshot if one is given, or else straight from a scan whose options the query has
+     * already been pushed down into. No tree is built for a scan.
+     *
+     * @param factory  the factory to scan with
+     * @param paths    the paths to scan, or null for the whole filesystem
+     * @param snapshot path of a snapshot to query instead of scanning, or null
+     * @param query    the query
+     * @return the query's result
+     */
+    QueryResult runQuery(CustomGraphFactory factory, List<String> paths, String snapshot, Query query) {
+        QueryExecutor executor = query.newExecutor();
+        if (snapshot != null) {
+            TreeWalker.walk(loadSnapshot(snapshot), executor);
+        } else {
+            if (paths == null) {
+                factory.streamFsGraph(FileSystems.getDefault(), executor);
+            } else {
+                factory.streamFsGraph(paths, executor);
+            }
+            System.out.println("Streamed scan complete. " + factory.getLastScanStatistics());
+        }
+        return executor.getResult();
+    }
+
+    /**
+     * Maps a tree snapshot saved by an earlier scan, in place of scanning the filesystem. Exits if the snapshot
+     * cannot be read, as there is then nothing to analyse.
+     *
+     * @param snapshot path of the snapshot file
+     * @return views onto the trees in the snapshot
+     */
+    List<FileTreeNode> loadSnapshot(String snapshot) {
+        return openSnapshot(snapshot).getRoots();
+    }
+
+    /**
+     * Maps a tree snapshot saved by an earlier scan. Exits if the snapshot cannot be read.
+     *
+     * @param snapshot path of the snapshot file
+     * @return the mapped snapshot
+     */
+    MappedTreeSnapshot openSnapshot(String snapshot) {
+        try {
+            MappedTreeSnapshot mapped = MappedTreeSnapshot.open(Paths.get(snapshot));
+            System.out.println("Loaded " + mapped.size() + " nodes from snapshot: " + snapshot);
+            return mapped;
+        } catch (IOException e) {
+            System.err.println("Could not load the snapshot: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Streams the scan of the given paths into a compact, column oriented tree, rather than a tree of objects.
+     * Reports the memory used per node by the compact tree, against an estimate for the same tree as objects.
+     *
+     * @param factory the factory to scan with
+     * @param paths   the paths to scan, or null for the whole filesystem
+     * @return the compact tree
+     */
+    CompactFileTree generateCompactGraph(CustomGraphFactory factory, List<String> paths) {
+        CompactFileTree.Builder builder = new CompactFileTree.Builder();
+        if (paths == null) {
+            factory.streamFsGraph(FileSystems.getDefault(), builder);
+        } else {
+            factory.streamFsGraph(paths, builder);
+        }
+        CompactFileTree tree = builder.build();
+        System.out.println(String.format("Compact tree holds %d nodes at %.1f bytes per node, against an estimated " +
+                "%.1f as objects.", tree.size(), tree.bytesPerNode(), tree.estimateObjectBytesPerNode()));
+        return tree;
+    }
+
+    /**
+     * Given a number of analysers, wraps each in a callable, and runs it on the shared scheduler.
+     * Return the generated PDFs of those which finished
+     *
+     * @param tas the analysers
+     * @return pdfs as byte arrays list
+     */
+    List<ByteArrayOutputStream> runAnalysersInParallel(List<TreeAnalyser> tas) {
+        return runAnalysersInParallel(tas, true);
+    }
+
+    /**
+     * Given a number of analysers, wraps each in a callable, and runs it on the shared scheduler.
+     * Return the generated PDFs of those which finished
+     *
+     * @param tas     the analysers
+     * @param analyse whether to run each analysis first, false if they already hold their results
+     * @return pdfs as byte arrays list
+     */
+    List<ByteArrayOutputStream> runAnalysersInParallel(List<TreeAnalyser> tas, boolean analyse) {
+        return runCallablesInParallel(tas.stream()
+                .map(ta -> new TreeAnalyserCallable(ta, analyse))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Given a number of analysers, runs each on the shared scheduler, with each analysis split across the given
+     * pool. Return the generated PDFs of those which finished
+     *
+     * @param tas  the analysers
+     * @param pool the pool to split each analysis across
+     * @return pdfs as byte arrays list
+     */
+    List<ByteArrayOutputStream> runAnalysersInParallel(List<TreeAnalyser> tas, ForkJoinPool pool) {
+        return runCallablesInParallel(tas.stream()
+                .map(ta -> new TreeAnalyserCallable(ta, pool))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Runs each analyser callable on the shared scheduler, within its time budget, returning the PDFs of those
+     * which finished in order. The others are left out of the report, and the time taken by each is printed.
+     * Reports of analysers given a key by useResultCache are stored in the result cache.
+     *
+     * @param callables the wrapped analysers
+     * @return pdfs as byte arrays list
+     */
+    List<ByteArrayOutputStream> runCallablesInParallel(List<TreeAnalyserCallable> callables) {
+        List<AnalysisRun> runs = AnalysisScheduler.shared().run(callables, this::budgetFor);
+        printRuns(runs);
+        for (int i = 0; i < runs.size(); i++) {
+            String key = cacheKeys.get(callables.get(i).getAnalyser());
+            if (key != null && runs.get(i).isFinished()) {
+                resultCache.store(key, callables.get(i).getAnalyser(), runs.get(i).getPdf());
+            }
+        }
+        return runs.stream()
+                .filter(AnalysisRun::isFinished)
+                .map(AnalysisRun::getPdf)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Prints the time taken by each analyser, and lists any left out of the report.
+     *
+     * @param runs how each analyser's run ended
+     */
+    void printRuns(List<AnalysisRun> runs) {
+        System.out.println("Analysis times:");
+        runs.forEach(run -> System.out.println("    " + run));
+        List<String> unfinished = runs.stream()
+                .filter(run -> !run.isFinished())
+                .map(AnalysisRun::getAnalysisName)
+                .collect(Collectors.toList());
+        if (!unfinished.isEmpty()) {
+            System.err.println("The report leaves out these analysers, which did not finish: " + unfinished);
         }
-        return pdfs;
+    }
+
+    /**
+     * The time budget of an analyser, as configured for its class or else the default.
+     *
+     * @param ta the analyser
+     * @return budget in milliseconds, 0 for none
+     */
+    long budgetFor(TreeAnalyser ta) {
+        return budgets.getOrDefault(ta.getClass().getName(), defaultBudget);
     }
 
     /**
@@ -227,6 +784,27 @@ public class Runner {
         }
     }
 
+    /**
+     * Merges a number of PDF streams into one PDF, held in memory.
+     *
+     * @param pdfStreams the PDF streams
+     * @return the merged PDF, or null if it could not be merged
+     */
+    ByteArrayOutputStream mergePdfs(List<ByteArrayOutputStream> pdfStreams) {
+        PDFMergerUtility mergeUtil = new PDFMergerUtility();
+        pdfStreams.forEach((pdfStream) -> mergeUtil.addSource(new ByteArrayInputStream(pdfStream.toByteArray())));
+
+        ByteArrayOutputStream merged = new ByteArrayOutputStream();
+        try {
+            mergeUtil.setDestinationStream(merged);
+            mergeUtil.mergeDocuments();
+            return merged;
+        } catch (COSVisitorException | IOException e) {
+            System.err.println("Error merging the document - sorry!");
+            return null;
+        }
+    }
+
     /**
      * Given a list of strings representing java classes, uses java reflection to load the specified classes, and
      * instantiates these as tree analysers. Adds these to a list, which is then returned.
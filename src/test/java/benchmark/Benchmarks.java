@@ -0,0 +1,224 @@
+package benchmark;
+
+import graph.FileTreeNode;
+import graph.SubtreeRollup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Timing and fixtures shared by the benchmarks. Each benchmark is a main class on the test classpath, run with
+ * the benchmark profile, e.g.
+ *
+ *   mvn -Pbenchmark test-compile exec:java -Dbenchmark=ScanModeBenchmark -Dexec.args="/usr 2"
+ *
+ * Every task is run a number of times to warm up, then timed over a number of runs, and the best and median times
+ * are reported. Results are kept in a sink so the work cannot be optimised away.
+ */
+public final class Benchmarks {
+
+    private static final String[] EXTENSIONS = {"txt", "jpg", "png", "java", "class", "so", "log", "xml", "json",
+            "md", "gz", "html"};
+
+    // Somewhere for results to go, so the work producing them is not eliminated
+    private static volatile Object sink;
+
+    private Benchmarks() {
+    }
+
+    /**
+     * The best and median time of a task, in milliseconds.
+     */
+    public static class Timing {
+        private final double best;
+        private final double median;
+
+        Timing(double best, double median) {
+            this.best = best;
+            this.median = median;
+        }
+
+        public double getBest() {
+            return best;
+        }
+
+        public double getMedian() {
+            return median;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("best %.2f ms, median %.2f ms", best, median);
+        }
+    }
+
+    /**
+     * Time a task, and print the result.
+     * @param label what is being timed
+     * @param warmups how many untimed runs to make first
+     * @param runs how many timed runs to make
+     * @param task the task, whose result is kept in the sink
+     * @return the timing
+     */
+    public static Timing time(String label, int warmups, int runs, Callable<?> task) throws Exception {
+        for (int i = 0; i < warmups; i++) {
+            sink = task.call();
+        }
+        double[] millis = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            sink = task.call();
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+        Timing timing = new Timing(millis[0], millis[runs / 2]);
+        System.out.printf("%-50s %s%n", label, timing);
+        return timing;
+    }
+
+    /**
+     * Run a task once on the calling thread and measure the heap it allocates, where the JVM can report it.
+     * @param task the task, whose result is kept in the sink
+     * @return bytes allocated, or -1 if the JVM cannot tell
+     */
+    public static long allocatedBytes(Callable<?> task) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            sink = task.call();
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(thread);
+        sink = task.call();
+        return allocations.getThreadAllocatedBytes(thread) - before;
+    }
+
+    /**
+     * Build a frozen, summarised tree in memory, without touching the filesystem.
+     * @param directories how many directories to build, including the root
+     * @param filesPerDirectory how many files each directory holds
+     * @param types how many distinct file types to spread the files over
+     * @param seed the seed for the shape of the tree
+     * @return the root of the tree
+     */
+    public static FileTreeNode memoryTree(int directories, int filesPerDirectory, int types, long seed) {
+        Random random = new Random(seed);
+        FileTreeNode root = new FileTreeNode(File.separator + "bench", true, 0, 0, false, null);
+        List<FileTreeNode> all = new ArrayList<>();
+        all.add(root);
+        for (int i = 1; i < directories; i++) {
+            FileTreeNode parent = all.get(random.nextInt(all.size()));
+            FileTreeNode directory = new FileTreeNode(FileTreeNode.childPath(parent.getPath(), "d" + i), true, 0,
+                    0, false, parent);
+            parent.addChild(directory);
+            all.add(directory);
+        }
+        for (FileTreeNode directory : all) {
+            for (int i = 0; i < filesPerDirectory; i++) {
+                int type = (random.nextInt(4) == 0) ? random.nextInt(types) : random.nextInt(Math.min(types, 12));
+                String extension = (type < EXTENSIONS.length) ? EXTENSIONS[type] : "t" + type;
+                FileTreeNode file = new FileTreeNode(FileTreeNode.childPath(directory.getPath(), "f" + i + "." +
+                        extension), false, random.nextInt(1 << 20), random.nextInt(1 << 30), false, directory);
+                directory.addChild(file);
+            }
+        }
+        List<FileTreeNode> roots = Collections.singletonList(root);
+        FileTreeNode.freezeAll(roots);
+        SubtreeRollup.computeAll(roots);
+        return root;
+    }
+
+    /**
+     * Create a tree of directories and (sparse) files on disk under a new temporary directory, each directory
+     * holding up to 8 subdirectories.
+     * @see #diskTree(int, int, double, boolean, long)
+     */
+    public static Path diskTree(int directories, double meanFiles, boolean skewed, long seed) throws IOException {
+        return diskTree(directories, 8, meanFiles, skewed, seed);
+    }
+
+    /**
+     * Create a tree of directories and (sparse) files on disk under a new temporary directory.
+     * @param directories how many directories to create, including the root
+     * @param maxSubdirectories the most subdirectories a directory is given
+     * @param meanFiles the mean number of files in each directory
+     * @param skewed whether file counts follow a heavy tailed (Pareto) distribution, as real trees do, rather than
+     *               being spread evenly
+     * @param seed the seed for the shape of the tree
+     * @return the root of the tree, to be removed with {@link #delete(Path)}
+     * @throws IOException if the tree could not be created
+     */
+    public static Path diskTree(int directories, int maxSubdirectories, double meanFiles, boolean skewed, long seed)
+            throws IOException {
+        Random random = new Random(seed);
+        Path root = Files.createTempDirectory("bench-tree");
+        List<Path> all = new ArrayList<>();
+        all.add(root);
+        Deque<Path> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (all.size() < directories) {
+            Path parent = queue.poll();
+            int children = 1 + random.nextInt(maxSubdirectories);
+            for (int i = 0; i < children && all.size() < directories; i++) {
+                Path directory = Files.createDirectory(parent.resolve("d" + i));
+                all.add(directory);
+                queue.add(directory);
+            }
+        }
+        for (Path directory : all) {
+            // A Pareto distribution with shape 1.5 has mean 3 * its scale
+            long files = skewed ? Math.round(meanFiles / 3 / Math.pow(1 - random.nextDouble(), 1 / 1.5)) :
+                    Math.round(meanFiles);
+            for (int i = 0; i < files; i++) {
+                Path file = directory.resolve("f" + i + "." + EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+                try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+                    out.setLength(random.nextInt(1 << 16));
+                }
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Remove a tree created by {@link #diskTree(int, int, double, boolean, long)}.
+     */
+    public static void delete(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * The argument at the given position, or a default if there are not that many.
+     */
+    public static String argument(String[] args, int i, String otherwise) {
+        return (args.length > i) ? args[i] : otherwise;
+    }
+}
@@ -0,0 +1,67 @@
+package benchmark;
+
+import graph.CompositeTreeVisitor;
+import graph.FileTreeNode;
+import graph.TreeVisitor;
+import graph.TreeWalker;
+import graph.analysis.FileCountAnalyser;
+import graph.analysis.FileInfoAnalyser;
+import graph.analysis.FileTypeCountAnalyser;
+import graph.analysis.TreeAnalyser;
+import graph.snapshot.TreeSnapshot;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Compares running each analyser's own walk of a tree against a single walk feeding every analyser at once, as
+ * with fusedAnalysis. Both are run over a tree of objects and over the same tree mapped from a snapshot, where
+ * each walk reads records and rebuilds paths.
+ *
+ * Arguments: [directories, default 20000] [files per directory, default 20]
+ */
+public class FusedAnalysisBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int directories = Integer.parseInt(Benchmarks.argument(args, 0, "20000"));
+        int files = Integer.parseInt(Benchmarks.argument(args, 1, "20"));
+
+        List<FileTreeNode> tree = Collections.singletonList(Benchmarks.memoryTree(directories, files, 200, 1));
+        Path snapshot = Files.createTempFile("bench", ".snapshot");
+        try {
+            new TreeSnapshot(tree, 0, 0).save(snapshot);
+            List<FileTreeNode> mapped = TreeSnapshot.load(snapshot).getRoots();
+            compare("Object tree", tree);
+            compare("Mapped snapshot", mapped);
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    private static void compare(String label, List<FileTreeNode> tree) throws Exception {
+        int analysers = analysers(tree).size();
+        Benchmarks.time(label + ", " + analysers + " passes", 2, 10, () -> {
+            List<TreeAnalyser> tas = analysers(tree);
+            for (TreeAnalyser ta : tas) {
+                ta.doAnalyse();
+            }
+            return tas;
+        });
+        Benchmarks.time(label + ", one fused pass", 2, 10, () -> {
+            List<TreeAnalyser> tas = analysers(tree);
+            TreeWalker.walk(tree, new CompositeTreeVisitor(
+                    tas.stream().map(ta -> (TreeVisitor) ta).collect(Collectors.toList())));
+            return tas;
+        });
+    }
+
+    private static List<TreeAnalyser> analysers(List<FileTreeNode> tree) {
+        List<String> paths = Collections.singletonList(tree.get(0).getPath());
+        return Arrays.asList(new FileTypeCountAnalyser(tree, paths), new FileCountAnalyser(tree, paths),
+                new FileInfoAnalyser(tree, paths));
+    }
+}
@@ -0,0 +1,82 @@
+package benchmark;
+
+import graph.FileTreeNode;
+import graph.analysis.FileCountAnalyser;
+import graph.factory.CustomGraphFactory;
+import graph.factory.Options;
+import graph.factory.SampleMode;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares sampling scans against a full scan of the same tree, in time, directory listings and the accuracy of
+ * the estimated file count. Each sampling setting is run with a number of seeds, giving the mean error and how
+ * many of the 95% intervals hold the true count.
+ *
+ * Arguments: [path to scan, or a synthetic tree of 20000 widely fanned out directories if "-"] [seeds per
+ * setting, default 10] [sample depth, default 3]
+ */
+public class SamplingBenchmark {
+
+    private static final double[] RATES = {0.01, 0.05, 0.1};
+
+    public static void main(String[] args) throws Exception {
+        String path = Benchmarks.argument(args, 0, "-");
+        int seeds = Integer.parseInt(Benchmarks.argument(args, 1, "10"));
+        int depth = Integer.parseInt(Benchmarks.argument(args, 2, "3"));
+
+        Path synthetic = path.equals("-") ? Benchmarks.diskTree(20000, 40, 5, true, 1) : null;
+        List<String> roots = Collections.singletonList((synthetic != null) ? synthetic.toString() : path);
+        try {
+            CustomGraphFactory full = new CustomGraphFactory(new Options.Builder().build());
+            Benchmarks.time("Full scan", 1, 5, () -> full.generateFsGraph(roots));
+            List<FileTreeNode> tree = full.generateFsGraph(roots);
+            long files = tree.get(0).getSubtreeSummary().getFileCount();
+            System.out.printf("  %d files, %d directory listings%n", files,
+                    full.getLastScanStatistics().getDirectoryListings());
+
+            System.out.println("mode        depth rate   mean ms  listings  mean err  total in CI");
+            for (SampleMode mode : SampleMode.values()) {
+                for (double rate : RATES) {
+                    run(roots, mode, depth, rate, seeds, files);
+                }
+            }
+        } finally {
+            if (synthetic != null) {
+                Benchmarks.delete(synthetic);
+            }
+        }
+    }
+
+    private static void run(List<String> roots, SampleMode mode, int depth, double rate, int seeds, long files)
+            throws Exception {
+        double millis = 0;
+        long listings = 0;
+        double error = 0;
+        int covered = 0;
+        for (int seed = 1; seed <= seeds; seed++) {
+            Options options = new Options.Builder().sampleRate(rate).sampleMode(mode).sampleDepth(depth)
+                    .sampleSeed(seed).build();
+            CustomGraphFactory factory = new CustomGraphFactory(options);
+            long start = System.nanoTime();
+            List<FileTreeNode> tree = factory.generateFsGraph(roots);
+            millis += (System.nanoTime() - start) / 1e6;
+            listings += factory.getLastScanStatistics().getDirectoryListings();
+
+            FileCountAnalyser analyser = new FileCountAnalyser(tree, roots);
+            analyser.setSample(factory.getLastScanSample());
+            analyser.doAnalyse();
+            long estimate = analyser.getFileCount(roots.get(0));
+            double margin = analyser.getMargin(roots.get(0));
+            error += Math.abs(estimate - files) / (double) files;
+            if (Math.abs(estimate - files) <= margin) {
+                covered++;
+            }
+        }
+        System.out.printf("%-11s %-5d %-5s %8.1f %9d %8.1f%% %8d/%d%n", mode.name().toLowerCase(), depth,
+                Math.round(rate * 100) + "%", millis / seeds, listings / seeds, 100 * error / seeds, covered,
+                seeds);
+    }
+}
@@ -0,0 +1,28 @@
+package benchmark;
+
+import graph.factory.CustomGraphFactory;
+import graph.factory.Options;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares a warm scan with and without an ignore list, in time and in directory listings.
+ *
+ * Arguments: [path to scan, default /usr/lib] [ignore rules..., default node_modules python3* *.so jvm/**]
+ */
+public class ScanFilterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        List<String> roots = Collections.singletonList(Benchmarks.argument(args, 0, "/usr/lib"));
+        List<String> ignores = (args.length > 1) ? Arrays.asList(args).subList(1, args.length) :
+                Arrays.asList("node_modules", "python3*", "*.so", "jvm/**");
+
+        for (List<String> ignoreList : Arrays.asList(Collections.<String>emptyList(), ignores)) {
+            CustomGraphFactory factory = new CustomGraphFactory(new Options.Builder().ignoreList(ignoreList).build());
+            Benchmarks.time("Ignoring " + ignoreList, 3, 10, () -> factory.generateFsGraph(roots));
+            System.out.println("  " + factory.getLastScanStatistics());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package benchmark;
+
+import graph.factory.CustomGraphFactory;
+import graph.factory.LatencyGraphFactory;
+import graph.factory.Options;
+import graph.factory.ScanMode;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the scan modes over a mount with the given latency per directory listing, simulated on a local disk.
+ *
+ * Arguments: [path to scan, or a synthetic tree of ~900 directories if "-"] [latency per listing in ms, default 2]
+ * [maxInFlightListings, default 256]
+ */
+public class ScanModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String path = Benchmarks.argument(args, 0, "-");
+        long latency = Long.parseLong(Benchmarks.argument(args, 1, "2"));
+        int inFlight = Integer.parseInt(Benchmarks.argument(args, 2, "256"));
+
+        Path synthetic = path.equals("-") ? Benchmarks.diskTree(900, 5, false, 1) : null;
+        List<String> roots = Collections.singletonList((synthetic != null) ? synthetic.toString() : path);
+        try {
+            for (ScanMode mode : ScanMode.values()) {
+                Options options = new Options.Builder().scanMode(mode).maxInFlightListings(inFlight).build();
+                CustomGraphFactory factory = new LatencyGraphFactory(options, latency);
+                Benchmarks.time(mode + ", " + latency + "ms per listing", 1, 5, () -> factory.generateFsGraph(roots));
+                System.out.println("  " + factory.getLastScanStatistics());
+            }
+        } finally {
+            if (synthetic != null) {
+                Benchmarks.delete(synthetic);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package benchmark;
+
+import graph.FileTreeNode;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Builds and reads a single very wide directory. Appending each entry with addChild is compared against the
+ * copy on write list children used to be kept in, and reading the frozen children by index against reading them
+ * through getChildren().
+ *
+ * Arguments: [entries in the directory, default 200000] [entries for the copy on write list, default 50000, 0 to
+ * skip it]
+ */
+public class WideDirectoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int entries = Integer.parseInt(Benchmarks.argument(args, 0, "200000"));
+        int copyOnWriteEntries = Integer.parseInt(Benchmarks.argument(args, 1, "50000"));
+
+        Benchmarks.time("addChild, " + entries + " entries", 1, 5,
+                () -> Benchmarks.memoryTree(1, entries, 12, 1));
+
+        if (copyOnWriteEntries > 0) {
+            // What every append used to cost: a copy of the whole list so far
+            FileTreeNode parent = new FileTreeNode(File.separator + "bench", true, 0, 0, false, null);
+            Benchmarks.time("CopyOnWriteArrayList add, " + copyOnWriteEntries + " entries", 0, 1, () -> {
+                List<FileTreeNode> children = new CopyOnWriteArrayList<>();
+                for (int i = 0; i < copyOnWriteEntries; i++) {
+                    children.add(new FileTreeNode(FileTreeNode.childPath(parent.getPath(), "f" + i), false, i, 0,
+                            false, parent));
+                }
+                return children;
+            });
+        }
+
+        FileTreeNode wide = Benchmarks.memoryTree(1, entries, 12, 1);
+        Benchmarks.time("Read " + entries + " children by index", 5, 20, () -> {
+            long bytes = 0;
+            for (int i = 0; i < wide.getChildCount(); i++) {
+                bytes += wide.getChild(i).getFileSize();
+            }
+            return bytes;
+        });
+        Benchmarks.time("Read " + entries + " children through getChildren()", 5, 20, () -> {
+            long bytes = 0;
+            for (FileTreeNode child : wide.getChildren()) {
+                bytes += child.getFileSize();
+            }
+            return bytes;
+        });
+    }
+}
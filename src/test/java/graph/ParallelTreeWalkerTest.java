@@ -0,0 +1,148 @@
+package graph;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelTreeWalkerTest {
+
+    @Test
+    public void mergedTotalsMatchASequentialWalk() {
+        // Large enough that several subtrees are split off, with some nested inside split subtrees
+        List<FileTreeNode> roots = Collections.singletonList(tree(4, 4, 200));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TotalsVisitor sequential = new TotalsVisitor();
+            TreeWalker.walk(roots, sequential);
+            TotalsVisitor parallel = new TotalsVisitor();
+            assertTrue(ParallelTreeWalker.walk(roots, parallel, pool, () -> false));
+
+            assertEquals(sequential.files, parallel.files);
+            assertEquals(sequential.bytes, parallel.bytes);
+            assertEquals(sequential.subtreeFiles, parallel.subtreeFiles);
+            assertEquals(roots.get(0).getSubtreeSummary().getFileCount(),
+                    (long) parallel.subtreeFiles.get(roots.get(0).getPath()));
+            assertTrue("no subtree was split off", parallel.merges > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void smallTreesAreWalkedWithoutSplitting() {
+        List<FileTreeNode> roots = Collections.singletonList(tree(2, 2, 10));
+        TotalsVisitor parallel = new TotalsVisitor();
+        ParallelTreeWalker.walk(roots, parallel, ForkJoinPool.commonPool());
+        assertEquals(0, parallel.merges);
+        assertEquals(70, parallel.files);
+    }
+
+    @Test
+    public void cancelledWalkVisitsNothingMore() {
+        List<FileTreeNode> roots = Collections.singletonList(tree(4, 4, 200));
+        TotalsVisitor parallel = new TotalsVisitor();
+        assertFalse(ParallelTreeWalker.walk(roots, parallel, ForkJoinPool.commonPool(), () -> true));
+        assertEquals(0, parallel.files);
+    }
+
+    /**
+     * Build a tree of the given fan out and depth below the root, with the given number of files in every
+     * directory, and roll up its subtree summaries so the walker can decide where to split.
+     */
+    private static FileTreeNode tree(int fanOut, int depth, int filesPerDirectory) {
+        FileTreeNode root = new FileTreeNode(File.separator + "walk", true, 0, 0, false, null);
+        fill(root, fanOut, depth, filesPerDirectory);
+        List<FileTreeNode> roots = Collections.singletonList(root);
+        FileTreeNode.freezeAll(roots);
+        SubtreeRollup.computeAll(roots);
+        return root;
+    }
+
+    private static void fill(FileTreeNode directory, int fanOut, int depth, int filesPerDirectory) {
+        for (int i = 0; i < filesPerDirectory; i++) {
+            directory.addChild(new FileTreeNode(FileTreeNode.childPath(directory.getPath(), "f" + i + ".txt"),
+                    false, i, 0, false, directory));
+        }
+        if (depth == 0) {
+            return;
+        }
+        for (int i = 0; i < fanOut; i++) {
+            FileTreeNode child = new FileTreeNode(FileTreeNode.childPath(directory.getPath(), "d" + i), true, 0, 0,
+                    false, directory);
+            directory.addChild(child);
+            fill(child, fanOut, depth - 1, filesPerDirectory);
+        }
+    }
+
+    /**
+     * Counts files and bytes, and the files beneath each directory, checking that every event arrives inside the
+     * directory it belongs to.
+     */
+    private static class TotalsVisitor implements MergeableTreeVisitor<TotalsVisitor> {
+
+        private final Deque<FileTreeNode> open = new ArrayDeque<>();
+        private final Deque<long[]> counts = new ArrayDeque<>();
+        private final Map<String, Long> subtreeFiles = new HashMap<>();
+        // Files beneath the last directory exited once none are open, handed up on merge
+        private long finished;
+        private long files;
+        private long bytes;
+        private int merges;
+
+        @Override
+        public void enterDirectory(FileTreeNode directory) {
+            if (!open.isEmpty()) {
+                assertSame(open.peek(), directory.getParent());
+            }
+            open.push(directory);
+            counts.push(new long[1]);
+        }
+
+        @Override
+        public void visitFile(FileTreeNode file) {
+            assertSame(open.peek(), file.getParent());
+            files++;
+            bytes += file.getFileSize();
+            counts.peek()[0]++;
+        }
+
+        @Override
+        public void exitDirectory(FileTreeNode directory) {
+            assertSame(open.pop(), directory);
+            long count = counts.pop()[0];
+            subtreeFiles.put(directory.getPath(), count);
+            if (counts.isEmpty()) {
+                finished = count;
+            } else {
+                counts.peek()[0] += count;
+            }
+        }
+
+        @Override
+        public TotalsVisitor fork() {
+            return new TotalsVisitor();
+        }
+
+        @Override
+        public void merge(TotalsVisitor partial) {
+            assertTrue(partial.open.isEmpty());
+            files += partial.files;
+            bytes += partial.bytes;
+            merges += partial.merges + 1;
+            subtreeFiles.putAll(partial.subtreeFiles);
+            counts.peek()[0] += partial.finished;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package graph.analysis;
+
+import graph.FileTreeNode;
+import graph.factory.CustomGraphFactory;
+import graph.factory.Options;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class DuplicateFilesAnalyserTest {
+
+    private static final int LARGE = 5 * DuplicateFilesAnalyser.SAMPLE_BYTES;
+
+    private Path directory;
+
+    @Before
+    public void createFiles() throws IOException {
+        directory = Files.createTempDirectory("duplicates-test");
+        // Small files: covered by the samples, so never hashed in full
+        Files.write(directory.resolve("small-1"), filled(100, 1));
+        Files.write(directory.resolve("small-2"), filled(100, 1));
+        Files.write(directory.resolve("small-other"), filled(100, 2));
+        // Large files: two copies, and two more which only differ between the samples
+        Files.write(directory.resolve("large-1"), filled(LARGE, 3));
+        Files.createDirectory(directory.resolve("sub"));
+        Files.write(directory.resolve("sub").resolve("large-2"), filled(LARGE, 3));
+        byte[] middle = filled(LARGE, 4);
+        Files.write(directory.resolve("middle-1"), middle);
+        middle[LARGE / 2] = 5;
+        Files.write(directory.resolve("middle-2"), middle);
+        // A size no other file has, so never read
+        Files.write(directory.resolve("unique"), filled(50, 1));
+        Files.write(directory.resolve("empty-1"), new byte[0]);
+        Files.write(directory.resolve("empty-2"), new byte[0]);
+    }
+
+    @After
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void findsIdenticalFilesInStages() throws Exception {
+        DuplicateFilesAnalyser analyser = analyse();
+
+        List<List<String>> groups = namesOf(analyser.getDuplicates());
+        assertEquals(Arrays.asList(Arrays.asList("large-1", "large-2"), Arrays.asList("small-1", "small-2")),
+                groups);
+        // Samples of the three small files and the four large ones, then the four large ones in full
+        long sampled = 3 * 100 + 4 * 2 * DuplicateFilesAnalyser.SAMPLE_BYTES;
+        assertEquals(sampled + 4L * LARGE, analyser.getBytesRead());
+    }
+
+    @Test
+    public void linksToTheSameFileAreNotDuplicates() throws Exception {
+        Files.createLink(directory.resolve("small-link"), directory.resolve("small-1"));
+        DuplicateFilesAnalyser analyser = analyse();
+
+        List<List<String>> groups = namesOf(analyser.getDuplicates());
+        assertEquals(2, groups.size());
+        assertEquals(2, groups.get(1).size());
+    }
+
+    private DuplicateFilesAnalyser analyse() throws Exception {
+        List<String> paths = Collections.singletonList(directory.toString());
+        List<FileTreeNode> tree = new CustomGraphFactory(new Options.Builder().build()).generateFsGraph(paths);
+        DuplicateFilesAnalyser analyser = new DuplicateFilesAnalyser(tree, paths);
+        analyser.doAnalyse();
+        return analyser;
+    }
+
+    private static List<List<String>> namesOf(List<List<FileTreeNode>> groups) {
+        List<List<String>> names = new ArrayList<>();
+        for (List<FileTreeNode> group : groups) {
+            names.add(group.stream().map(FileTreeNode::getName).sorted().collect(Collectors.toList()));
+        }
+        return names;
+    }
+
+    private static byte[] filled(int length, int value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+}
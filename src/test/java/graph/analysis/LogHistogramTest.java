@@ -0,0 +1,107 @@
+package graph.analysis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogHistogramTest {
+
+    @Test
+    public void bucketsHoldTheirValuesToWithinOneSubBucket() {
+        Random random = new Random(7);
+        List<Long> values = new ArrayList<>(Arrays.asList(0L, 1L, 7L, 8L, 9L, 15L, 16L, 1023L, 1024L,
+                Long.MAX_VALUE - 1, Long.MAX_VALUE));
+        for (int i = 0; i < 10000; i++) {
+            values.add((random.nextLong() >>> 1) >>> random.nextInt(63));
+        }
+        for (long value : values) {
+            int bucket = LogHistogram.bucketOf(value);
+            assertTrue(bucket >= 0 && bucket < LogHistogram.BUCKETS);
+            long lower = LogHistogram.lowerBound(bucket);
+            long upper = LogHistogram.upperBound(bucket);
+            assertTrue(value + " below bucket " + bucket, value >= lower);
+            assertTrue(value + " above bucket " + bucket, value < upper || value == Long.MAX_VALUE);
+            assertTrue(value + " in too wide a bucket",
+                    upper - lower <= Math.max(1, lower / LogHistogram.SUB_BUCKETS));
+        }
+        assertEquals(LogHistogram.BUCKETS - 1, LogHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreWithinTheirBucket() {
+        LogHistogram histogram = new LogHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value, value);
+        }
+        assertEquals(1000, histogram.getTotalCount());
+        assertEquals(500500, histogram.getTotalWeight());
+        assertWithin(500, histogram.valueAtPercentile(50));
+        assertWithin(990, histogram.valueAtPercentile(99));
+        assertWithin(1000, histogram.valueAtPercentile(100));
+        assertEquals(0, new LogHistogram().valueAtPercentile(50));
+    }
+
+    @Test
+    public void negativeValuesAreCountedAsZero() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(-5, 3);
+        assertEquals(0, histogram.valueAtPercentile(100));
+        assertEquals(3, histogram.getTotalWeight());
+    }
+
+    @Test
+    public void addAllMatchesRecordingIntoOne() {
+        LogHistogram whole = new LogHistogram();
+        LogHistogram first = new LogHistogram();
+        LogHistogram second = new LogHistogram();
+        Random random = new Random(11);
+        for (int i = 0; i < 5000; i++) {
+            long value = random.nextInt(1 << 20);
+            whole.record(value, 1);
+            (i % 2 == 0 ? first : second).record(value, 1);
+        }
+        first.addAll(second);
+        assertEquals(whole.getTotalCount(), first.getTotalCount());
+        assertEquals(ranges(whole), ranges(first));
+        for (double percentile : new double[] {1, 25, 50, 90, 99.9}) {
+            assertEquals(whole.valueAtPercentile(percentile), first.valueAtPercentile(percentile));
+        }
+    }
+
+    @Test
+    public void powersOfTwoCoverEveryRangeBetweenTheFirstAndLast() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(0, 10);
+        histogram.record(3, 20);
+        histogram.record(100, 30);
+        histogram.record(127, 40);
+
+        assertEquals(Arrays.asList(
+                "0-1: 1 weighing 10",
+                "1-2: 0 weighing 0",
+                "2-4: 1 weighing 20",
+                "4-8: 0 weighing 0",
+                "8-16: 0 weighing 0",
+                "16-32: 0 weighing 0",
+                "32-64: 0 weighing 0",
+                "64-128: 2 weighing 70"), ranges(histogram));
+    }
+
+    private static List<String> ranges(LogHistogram histogram) {
+        List<String> ranges = new ArrayList<>();
+        histogram.forEachPowerOfTwo((from, to, count, weight) ->
+                ranges.add(from + "-" + to + ": " + count + " weighing " + weight));
+        return ranges;
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / LogHistogram.SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,170 @@
+package graph.analysis;
+
+import graph.FileTreeNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultCacheTest {
+
+    private static final int REPORT_BYTES = 1000;
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("result-cache-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void restoresResultsAndReport() throws IOException {
+        ResultCache cache = new ResultCache(directory, 1 << 20);
+        cache.store("a", new ValueAnalyser(42), report(1));
+
+        ValueAnalyser restored = new ValueAnalyser(0);
+        ByteArrayOutputStream pdf = cache.load("a", restored);
+        assertArrayEquals(report(1).toByteArray(), pdf.toByteArray());
+        assertEquals(42, restored.value);
+        assertNull(cache.load("b", new ValueAnalyser(0)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntries() throws IOException {
+        // Room for two entries but not three
+        ResultCache cache = new ResultCache(directory, 5 * REPORT_BYTES / 2);
+        cache.store("a", new ValueAnalyser(1), report(1));
+        cache.store("b", new ValueAnalyser(2), report(2));
+        Files.setLastModifiedTime(directory.resolve("a.result"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(directory.resolve("b.result"), FileTime.fromMillis(2000));
+
+        // Using a makes b the least recently used, so b goes when c is added
+        assertTrue(cache.load("a", new ValueAnalyser(0)) != null);
+        cache.store("c", new ValueAnalyser(3), report(3));
+
+        assertEquals(Arrays.asList("a.result", "c.result"), entries());
+        assertNull(cache.load("b", new ValueAnalyser(0)));
+    }
+
+    @Test
+    public void unreadableResultsAreAMiss() throws IOException {
+        ResultCache cache = new ResultCache(directory, 1 << 20);
+        cache.store("a", new ValueAnalyser(42), report(1));
+
+        ValueAnalyser damaged = new ValueAnalyser(7) {
+            @Override
+            public void readResults(DataInputStream in) throws IOException {
+                throw new IOException("damaged");
+            }
+        };
+        assertNull(cache.load("a", damaged));
+        assertEquals(7, damaged.value);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void timeDependentAnalysersAreNotCacheable() {
+        List<FileTreeNode> tree = Collections.emptyList();
+        List<String> paths = Collections.emptyList();
+        assertFalse(new SizeAgeHistogramAnalyser(tree, paths).isCacheable());
+        assertTrue(new FileTypeCountAnalyser(tree, paths).isCacheable());
+    }
+
+    private List<String> entries() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.map((p) -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static ByteArrayOutputStream report(int fill) {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        byte[] bytes = new byte[REPORT_BYTES];
+        Arrays.fill(bytes, (byte) fill);
+        pdf.write(bytes, 0, bytes.length);
+        return pdf;
+    }
+
+    /**
+     * Caches a single number as its results.
+     */
+    private static class ValueAnalyser extends TreeAnalyser {
+
+        long value;
+
+        ValueAnalyser(long value) {
+            super(null, null);
+            this.value = value;
+        }
+
+        @Override
+        public String getAnalysisName() {
+            return "Value";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Holds a value";
+        }
+
+        @Override
+        public void setTree(List<FileTreeNode> tree) {
+            // No tree needed
+        }
+
+        @Override
+        public void setPaths(List<String> paths) {
+            // No paths needed
+        }
+
+        @Override
+        public void doAnalyse() {
+            // Nothing to analyse
+        }
+
+        @Override
+        public void writeResults(DataOutputStream out) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public void readResults(DataInputStream in) throws IOException {
+            value = in.readLong();
+        }
+
+        @Override
+        public ByteArrayOutputStream generatePdfReport() {
+            return new ByteArrayOutputStream();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package graph.analysis;
+
+import graph.FileTreeNode;
+import graph.TreeVisitor;
+import graph.TreeWalker;
+import graph.factory.CustomGraphFactory;
+import graph.factory.Options;
+import graph.factory.SampleMode;
+import graph.factory.ScanSample;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SampleEstimatorTest {
+
+    private static final int DIRECTORIES = 20;
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("sample-test");
+        // Scanned in full above the sampling depth, so counted exactly
+        Files.write(directory.resolve("top.txt"), new byte[0]);
+        Files.write(directory.resolve("top.log"), new byte[0]);
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void evenUnitsGiveTheExactTotal() throws IOException {
+        createSubdirectories(false);
+        Estimate estimate = estimate(SampleMode.STRATIFIED, 0.25);
+
+        assertEquals(5, estimate.sample.getUnitCount());
+        assertEquals(2 + DIRECTORIES * 3, estimate.estimator.estimate("files"));
+        assertEquals(0, estimate.estimator.margin("files"), 1e-9);
+    }
+
+    @Test
+    public void scalesEachUnitByItsWeight() throws IOException {
+        createSubdirectories(true);
+        Estimate estimate = estimate(SampleMode.STRATIFIED, 0.25);
+
+        // Work the estimate and its variance out by hand from the units picked
+        double sampled = 0;
+        double squares = 0;
+        for (FileTreeNode sub : estimate.tree.get(0).getChildren()) {
+            if (estimate.sample.isUnit(sub)) {
+                double z = sub.getChildCount() * estimate.sample.getWeight(sub);
+                sampled += z;
+                squares += z * z;
+            }
+        }
+        long n = estimate.sample.getUnitCount();
+        double variance = (n * squares - sampled * sampled) / (n - 1);
+        assertEquals(Math.round(2 + sampled), estimate.estimator.estimate("files"));
+        assertEquals(1.96 * Math.sqrt(variance), estimate.estimator.margin("files"), 1e-6);
+        assertTrue(estimate.estimator.margin("files") > 0);
+    }
+
+    @Test
+    public void sumsTheVarianceOfEachStratum() throws IOException {
+        // Too few to sample from at the top, so each of these is a stratum of its own
+        for (String name : new String[]{"p", "q"}) {
+            Path parent = Files.createDirectory(directory.resolve(name));
+            for (int i = 0; i < DIRECTORIES; i++) {
+                Path sub = Files.createDirectory(parent.resolve("d" + i));
+                for (int j = 0; j < (name.equals("p") ? i + 1 : 2 * (DIRECTORIES - i)); j++) {
+                    Files.write(sub.resolve("f" + j + ".txt"), new byte[0]);
+                }
+            }
+        }
+        Estimate estimate = estimate(SampleMode.STRATIFIED, 0.25);
+
+        double sampled = 0;
+        double variance = 0;
+        for (FileTreeNode parent : estimate.tree.get(0).getChildren()) {
+            if (!parent.isDirectory()) {
+                continue;
+            }
+            int n = 0;
+            double sum = 0;
+            double squares = 0;
+            for (FileTreeNode sub : parent.getChildren()) {
+                if (estimate.sample.isUnit(sub)) {
+                    double z = sub.getChildCount() * estimate.sample.getWeight(sub);
+                    n++;
+                    sum += z;
+                    squares += z * z;
+                }
+            }
+            assertEquals(5, n);
+            sampled += sum;
+            variance += (n * squares - sum * sum) / (n - 1);
+        }
+        assertEquals(10, estimate.sample.getUnitCount());
+        assertEquals(Math.round(2 + sampled), estimate.estimator.estimate("files"));
+        assertEquals(1.96 * Math.sqrt(variance), estimate.estimator.margin("files"), 1e-6);
+    }
+
+    @Test
+    public void randomPicksUseTheInverseOfTheRate() throws IOException {
+        createSubdirectories(true);
+        Estimate estimate = estimate(SampleMode.RANDOM, 0.5);
+        assertTrue(estimate.sample.getUnitCount() >= 2);
+
+        double sampled = 0;
+        double squares = 0;
+        for (FileTreeNode sub : estimate.tree.get(0).getChildren()) {
+            if (estimate.sample.isUnit(sub)) {
+                assertEquals(2, estimate.sample.getWeight(sub), 1e-9);
+                sampled += sub.getChildCount() * 2;
+                squares += Math.pow(sub.getChildCount() * 2, 2);
+            }
+        }
+        assertEquals(Math.round(2 + sampled), estimate.estimator.estimate("files"));
+        assertEquals(1.96 * Math.sqrt(0.5 * squares), estimate.estimator.margin("files"), 1e-6);
+    }
+
+    @Test
+    public void oneUnitIsTooFewForAnInterval() throws IOException {
+        createSubdirectories(true);
+        Estimate estimate = estimate(SampleMode.STRATIFIED, 0.05);
+
+        assertEquals(1, estimate.sample.getUnitCount());
+        assertTrue(Double.isNaN(estimate.estimator.margin("files")));
+        assertEquals("unknown", estimate.estimator.formatMargin("files"));
+        assertEquals(0, estimate.estimator.estimate("missing"));
+        assertEquals(0, estimate.estimator.margin("missing"), 0);
+    }
+
+    /**
+     * Give the root DIRECTORIES subdirectories, each holding three files or, if uneven, one to DIRECTORIES files.
+     */
+    private void createSubdirectories(boolean uneven) throws IOException {
+        for (int i = 0; i < DIRECTORIES; i++) {
+            Path sub = Files.createDirectory(directory.resolve("d" + i));
+            for (int j = 0; j < (uneven ? i + 1 : 3); j++) {
+                Files.write(sub.resolve("f" + j + ".txt"), new byte[0]);
+            }
+        }
+    }
+
+    /**
+     * Sample the root's subdirectories at the given rate, then count the files in the sampled tree.
+     */
+    private Estimate estimate(SampleMode mode, double rate) {
+        Options options = new Options.Builder().sampleMode(mode).sampleRate(rate).sampleDepth(2).sampleSeed(3)
+                .build();
+        CustomGraphFactory factory = new CustomGraphFactory(options);
+        List<FileTreeNode> tree = factory.generateFsGraph(Collections.singletonList(directory.toString()));
+        Estimate estimate = new Estimate(tree, factory.getLastScanSample());
+        TreeWalker.walk(tree, estimate);
+        return estimate;
+    }
+
+    private static class Estimate implements TreeVisitor {
+
+        private final List<FileTreeNode> tree;
+        private final ScanSample sample;
+        private final SampleEstimator estimator;
+
+        Estimate(List<FileTreeNode> tree, ScanSample sample) {
+            this.tree = tree;
+            this.sample = sample;
+            this.estimator = new SampleEstimator(sample);
+        }
+
+        @Override
+        public void enterDirectory(FileTreeNode directory) {
+            estimator.enterDirectory(directory);
+        }
+
+        @Override
+        public void visitFile(FileTreeNode file) {
+            estimator.add("files", 1);
+        }
+
+        @Override
+        public void exitDirectory(FileTreeNode directory) {
+            estimator.exitDirectory(directory);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package graph.analysis;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TypeCounterTest {
+
+    @Test
+    public void keepsCountsAcrossGrowth() {
+        TypeCounter counter = new TypeCounter();
+        Map<String, Long> expected = new HashMap<>();
+        // Enough types to grow the table several times, each counted a different number of times
+        for (int i = 0; i < 1000; i++) {
+            String type = "t" + (i % 300);
+            counter.increment(type);
+            expected.merge(type, 1L, Long::sum);
+        }
+        assertEquals(300, counter.size());
+        expected.forEach((type, count) -> assertEquals((long) count, counter.get(type)));
+        assertEquals(0, counter.get("missing"));
+    }
+
+    @Test
+    public void separatesTypesWithTheSameHash() {
+        // "Aa" and "BB" share a hash code, so land in the same slot and must be probed past
+        TypeCounter counter = new TypeCounter();
+        counter.increment("Aa");
+        counter.increment("BB");
+        counter.increment("BB");
+        assertEquals(2, counter.size());
+        assertEquals(1, counter.get("Aa"));
+        assertEquals(2, counter.get("BB"));
+    }
+
+    @Test
+    public void matchesEqualTypesWhichAreNotTheSameString() {
+        TypeCounter counter = new TypeCounter();
+        counter.increment(new String("txt"));
+        counter.increment(new String("txt"));
+        assertEquals(1, counter.size());
+        assertEquals(2, counter.get("txt"));
+    }
+
+    @Test
+    public void countsPastIntegerRange() {
+        TypeCounter counter = new TypeCounter();
+        counter.add("log", Integer.MAX_VALUE);
+        counter.add("log", Integer.MAX_VALUE);
+        assertEquals(2L * Integer.MAX_VALUE, counter.get("log"));
+    }
+
+    @Test
+    public void addAllSumsBothCounters() {
+        TypeCounter first = new TypeCounter();
+        TypeCounter second = new TypeCounter();
+        for (int i = 0; i < 100; i++) {
+            first.add("t" + i, i);
+            second.add("t" + (i + 50), 1);
+        }
+        first.addAll(second);
+
+        assertEquals(150, first.size());
+        assertEquals(10, first.get("t10"));
+        assertEquals(61, first.get("t60"));
+        assertEquals(1, first.get("t149"));
+        long[] total = new long[1];
+        first.forEach((type, count) -> total[0] += count);
+        assertEquals(4950 + 100, total[0]);
+    }
+}
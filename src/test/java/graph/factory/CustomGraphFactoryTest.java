@@ -0,0 +1,90 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class CustomGraphFactoryTest {
+
+    private Path directory;
+
+    @Before
+    public void createTree() throws IOException {
+        directory = Files.createTempDirectory("factory-test");
+        for (int i = 0; i < 4; i++) {
+            Path sub = Files.createDirectories(directory.resolve("d" + i).resolve("inner"));
+            for (int j = 0; j <= i; j++) {
+                Files.write(sub.getParent().resolve("f" + j + ".txt"), new byte[10 * j]);
+                Files.write(sub.resolve("g" + j + ".log"), new byte[j]);
+            }
+        }
+        Files.write(directory.resolve("top.md"), new byte[7]);
+    }
+
+    @After
+    public void deleteTree() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void forkJoinBuildsTheSameTreeAsSequential() {
+        assertSameTrees(scan(ScanMode.SEQUENTIAL, 1000), scan(ScanMode.FORK_JOIN, 1000));
+    }
+
+    @Test
+    public void forkJoinStopsAtTheSameDepthAsSequential() {
+        List<FileTreeNode> forkJoin = scan(ScanMode.FORK_JOIN, 3);
+        assertSameTrees(scan(ScanMode.SEQUENTIAL, 3), forkJoin);
+        assertEquals(5, forkJoin.get(0).getChildren().size());
+        for (FileTreeNode child : forkJoin.get(0).getChildren()) {
+            assertEquals(0, child.getChildren().size());
+        }
+    }
+
+    private List<FileTreeNode> scan(ScanMode mode, int maxDepth) {
+        Options options = new Options.Builder().scanMode(mode).threads(4).maxDepth(maxDepth).build();
+        return new CustomGraphFactory(options).generateFsGraph(Collections.singletonList(directory.toString()));
+    }
+
+    private static void assertSameTrees(List<FileTreeNode> expected, List<FileTreeNode> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameTree(expected.get(i), actual.get(i));
+        }
+    }
+
+    private static void assertSameTree(FileTreeNode expected, FileTreeNode actual) {
+        assertEquals(expected.getPath(), actual.getPath());
+        assertEquals(expected.isDirectory(), actual.isDirectory());
+        assertEquals(expected.getFileSize(), actual.getFileSize());
+        assertEquals(expected.getFileType(), actual.getFileType());
+        assertEquals(expected.getDepth(), actual.getDepth());
+        // Children may be added in any order by the scanning threads
+        List<FileTreeNode> expectedChildren = byPath(expected.getChildren());
+        List<FileTreeNode> actualChildren = byPath(actual.getChildren());
+        assertEquals(expected.getPath(), expectedChildren.size(), actualChildren.size());
+        for (int i = 0; i < expectedChildren.size(); i++) {
+            assertSameTree(expectedChildren.get(i), actualChildren.get(i));
+        }
+    }
+
+    private static List<FileTreeNode> byPath(List<FileTreeNode> nodes) {
+        return nodes.stream().sorted(Comparator.comparing(FileTreeNode::getPath)).collect(Collectors.toList());
+    }
+}
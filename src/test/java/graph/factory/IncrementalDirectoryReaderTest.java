@@ -0,0 +1,106 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class IncrementalDirectoryReaderTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private Path directory;
+    private Path tree;
+
+    @Before
+    public void createTree() throws IOException {
+        directory = Files.createTempDirectory("incremental-test");
+        tree = Files.createDirectory(directory.resolve("tree"));
+        Files.createDirectories(tree.resolve("b").resolve("c"));
+        Files.createDirectories(tree.resolve("a"));
+        Files.write(tree.resolve("a").resolve("x.txt"), new byte[1]);
+        Files.write(tree.resolve("b").resolve("y.txt"), new byte[2]);
+        Files.write(tree.resolve("b").resolve("c").resolve("z.txt"), new byte[3]);
+        for (String dir : new String[]{"", "a", "b", "b/c"}) {
+            age(tree.resolve(dir), 2 * HOUR);
+        }
+    }
+
+    @After
+    public void deleteTree() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void relistsOnlyChangedDirectories() throws IOException {
+        factory(false).generateFsGraph(roots());
+        Files.write(tree.resolve("b").resolve("new.txt"), new byte[4]);
+        age(tree.resolve("b"), HOUR);
+
+        CustomGraphFactory factory = factory(false);
+        List<FileTreeNode> incremental = factory.generateFsGraph(roots());
+        assertEquals(3, factory.getLastScanStatistics().getReusedListings());
+        assertEquals(paths(factory(true).generateFsGraph(roots())), paths(incremental));
+    }
+
+    @Test
+    public void listsDirectoriesMissingFromTheSnapshot() throws IOException {
+        factory(false).generateFsGraph(roots());
+        Files.createDirectory(tree.resolve("a").resolve("d"));
+        Files.write(tree.resolve("a").resolve("d").resolve("w.txt"), new byte[5]);
+        age(tree.resolve("a").resolve("d"), 2 * HOUR);
+        age(tree.resolve("a"), HOUR);
+
+        CustomGraphFactory factory = factory(false);
+        List<FileTreeNode> incremental = factory.generateFsGraph(roots());
+        // The root, b and c are unchanged; a has changed and d is new
+        assertEquals(3, factory.getLastScanStatistics().getReusedListings());
+        assertEquals(paths(factory(true).generateFsGraph(roots())), paths(incremental));
+    }
+
+    /**
+     * A factory keeping its snapshot next to the tree.
+     */
+    private CustomGraphFactory factory(boolean fullRescan) {
+        Options options = new Options.Builder().snapshotPath(directory.resolve("tree.snapshot").toString())
+                .fullRescan(fullRescan).build();
+        return new CustomGraphFactory(options);
+    }
+
+    private List<String> roots() {
+        return Collections.singletonList(tree.toString());
+    }
+
+    private static void age(Path path, long millis) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - millis));
+    }
+
+    private static List<String> paths(List<FileTreeNode> roots) {
+        List<String> paths = new ArrayList<>();
+        List<FileTreeNode> queue = new ArrayList<>(roots);
+        while (!queue.isEmpty()) {
+            FileTreeNode n = queue.remove(queue.size() - 1);
+            paths.add(n.getPath() + " " + n.getFileSize());
+            queue.addAll(n.getChildren());
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+}
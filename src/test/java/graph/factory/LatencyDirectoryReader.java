@@ -0,0 +1,51 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Reader which wraps another and sleeps before every directory listing, simulating a network mount on a local
+ * disk. Lets the gain from the concurrent scan modes be measured without access to a slow filesystem.
+ */
+class LatencyDirectoryReader implements DirectoryReader {
+
+    private final DirectoryReader delegate;
+    private final long latencyMillis;
+
+    /**
+     *
+     * @param delegate the reader doing the actual filesystem access
+     * @param latencyMillis the delay added to each directory listing
+     */
+    LatencyDirectoryReader(DirectoryReader delegate, long latencyMillis) {
+        this.delegate = delegate;
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public FileTreeNode readRoot(File rootFile) {
+        return delegate.readRoot(rootFile);
+    }
+
+    @Override
+    public FileTreeNode readNode(File file, FileTreeNode parent) {
+        return delegate.readNode(file, parent);
+    }
+
+    @Override
+    public List<FileTreeNode> readChildren(FileTreeNode directory) {
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return delegate.readChildren(directory);
+    }
+
+    @Override
+    public void finish() {
+        delegate.finish();
+    }
+}
@@ -0,0 +1,25 @@
+package graph.factory;
+
+/**
+ * Factory whose scans read through a LatencyDirectoryReader, for benchmarking the scan modes against a slow mount.
+ */
+public class LatencyGraphFactory extends CustomGraphFactory {
+
+    private final long latencyMillis;
+
+    /**
+     *
+     * @param options the options
+     * @param latencyMillis the delay added to each directory listing
+     */
+    public LatencyGraphFactory(Options options, long latencyMillis) {
+        super(options);
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    DirectoryReader createReader(ScanStatistics statistics) {
+        DirectoryReader reader = super.createReader(statistics);
+        return (latencyMillis > 0) ? new LatencyDirectoryReader(reader, latencyMillis) : reader;
+    }
+}
@@ -0,0 +1,88 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScanFilterTest {
+
+    @Test
+    public void ignoresPlainNames() {
+        ScanFilter filter = filter("node_modules", ".git");
+        assertTrue(filter.isIgnored("node_modules", "/src/app/node_modules"));
+        assertTrue(filter.isIgnored(".git", "/src/.git"));
+        assertFalse(filter.isIgnored("node_modules2", "/src/node_modules2"));
+    }
+
+    @Test
+    public void ignoresExtensions() {
+        ScanFilter filter = filter("*.bak");
+        assertTrue(filter.isIgnored("notes.bak", "/home/notes.bak"));
+        assertTrue(filter.isIgnored("archive.tar.bak", "/home/archive.tar.bak"));
+        assertFalse(filter.isIgnored("notes.txt", "/home/notes.txt"));
+        assertFalse(filter.isIgnored("bak", "/home/bak"));
+
+        ScanFilter multiPart = filter("*.tar.gz", "*.log");
+        assertTrue(multiPart.isIgnored("backup.tar.gz", "/home/backup.tar.gz"));
+        assertTrue(multiPart.isIgnored("site.2024.tar.gz", "/home/site.2024.tar.gz"));
+        assertTrue(multiPart.isIgnored("app.log", "/var/app.log"));
+        assertFalse(multiPart.isIgnored("notes.gz", "/home/notes.gz"));
+        assertFalse(multiPart.isIgnored("tar.gz.txt", "/home/tar.gz.txt"));
+    }
+
+    @Test
+    public void matchesNameGlobsAgainstTheNameOnly() {
+        ScanFilter filter = filter("python3*", "backup-?");
+        assertTrue(filter.isIgnored("python3.11", "/usr/lib/python3.11"));
+        assertTrue(filter.isIgnored("backup-1", "/var/backup-1"));
+        assertFalse(filter.isIgnored("backup-12", "/var/backup-12"));
+        assertFalse(filter.isIgnored("lib", "/usr/python3/lib"));
+    }
+
+    @Test
+    public void matchesRelativePathGlobsAtAnyDepth() {
+        ScanFilter filter = filter("jvm/**");
+        assertTrue(filter.isIgnored("jvm", "/usr/lib/jvm"));
+        assertTrue(filter.isIgnored("java-17", "/usr/lib/jvm/java-17"));
+        assertTrue(filter.isIgnored("rt.jar", "/usr/lib/jvm/java-17/lib/rt.jar"));
+        assertFalse(filter.isIgnored("jvmstat", "/usr/lib/jvmstat"));
+        assertFalse(filter.isIgnored("lib", "/usr/lib"));
+    }
+
+    @Test
+    public void matchesAbsolutePathGlobsFromTheRoot() {
+        ScanFilter filter = filter("/mnt/snapshots/**", "/var/*/cache");
+        assertTrue(filter.isIgnored("snapshots", "/mnt/snapshots"));
+        assertTrue(filter.isIgnored("daily", "/mnt/snapshots/daily"));
+        assertFalse(filter.isIgnored("snapshots", "/backup/mnt/snapshots"));
+        assertTrue(filter.isIgnored("cache", "/var/apt/cache"));
+        assertFalse(filter.isIgnored("cache", "/var/apt/deb/cache"));
+    }
+
+    @Test
+    public void keepsOnlyPathsOnTheWayToIncludedPaths() {
+        ScanFilter filter = new ScanFilter(new Options.Builder()
+                .includedPaths(Collections.singletonList("/usr/lib")).build());
+        assertFalse(filter.isIgnored("usr", "/usr"));
+        assertFalse(filter.isIgnored("jvm", "/usr/lib/jvm"));
+        assertTrue(filter.isIgnored("share", "/usr/share"));
+        assertTrue(filter.isIgnored("lib64", "/usr/lib64"));
+    }
+
+    @Test
+    public void acceptsOnlyFilteredTypesButAllDirectories() {
+        ScanFilter filter = new ScanFilter(new Options.Builder().typeFilters("jpg").build());
+        assertTrue(filter.accepts(new FileTreeNode(new File("/a/b.jpg"), null)));
+        assertFalse(filter.accepts(new FileTreeNode(new File("/a/b.png"), null)));
+        assertTrue(filter.accepts(new FileTreeNode(new File(System.getProperty("java.io.tmpdir")), null)));
+    }
+
+    private static ScanFilter filter(String... ignores) {
+        return new ScanFilter(new Options.Builder().ignoreList(ignores).build());
+    }
+}
@@ -0,0 +1,116 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class SniffingDirectoryReaderTest {
+
+    private static final byte[] PDF = "%PDF-1.4\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ZIP = {'P', 'K', 3, 4, 0, 0, 0, 0};
+
+    private Path directory;
+    private Path tree;
+
+    @Before
+    public void createTree() throws IOException {
+        directory = Files.createTempDirectory("sniffing-test");
+        tree = Files.createDirectory(directory.resolve("tree"));
+        Files.write(tree.resolve("report.pdf"), PDF);
+        Files.write(tree.resolve("archive.pdf"), ZIP);
+        Files.write(tree.resolve("scan"), PDF);
+        Files.write(tree.resolve("notes.txt"), "notes".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @After
+    public void deleteTree() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void typesFilesByTheirContents() {
+        Map<String, String> types = types(scan(new Options.Builder().sniffTypes(true).build()));
+        assertEquals("pdf", types.get("report.pdf"));
+        assertEquals("zip", types.get("archive.pdf"));
+        assertEquals("pdf", types.get("scan"));
+        assertEquals("txt", types.get("notes.txt"));
+    }
+
+    @Test
+    public void filtersOnTheSniffedTypes() {
+        for (boolean nio : new boolean[]{true, false}) {
+            Options options = new Options.Builder().sniffTypes(true).typeFilters("pdf").nio(nio).build();
+            Map<String, String> types = types(scan(options));
+            assertEquals(Arrays.asList("report.pdf", "scan"), new ArrayList<>(types.keySet()));
+        }
+    }
+
+    @Test
+    public void doesNotOpenNamedPipes() throws Exception {
+        Path pipe = tree.resolve("pipe.log");
+        assumeTrue(new ProcessBuilder("mkfifo", pipe.toString()).start().waitFor() == 0);
+
+        ExecutorService scanner = Executors.newSingleThreadExecutor();
+        try {
+            for (boolean nio : new boolean[]{true, false}) {
+                Options options = new Options.Builder().sniffTypes(true).nio(nio).build();
+                // Opening the pipe would block with no writer, so a scan which finishes never opened it
+                List<FileTreeNode> roots = scanner.submit(() -> scan(options)).get(10, TimeUnit.SECONDS);
+                assertEquals("log", types(roots).get("pipe.log"));
+            }
+        } finally {
+            scanner.shutdownNow();
+        }
+    }
+
+    @Test
+    public void keepsTheTypesOfUnchangedDirectoriesWithoutReading() throws IOException {
+        Files.setLastModifiedTime(tree, FileTime.fromMillis(System.currentTimeMillis() - 60 * 60 * 1000));
+        Options options = new Options.Builder().sniffTypes(true)
+                .snapshotPath(directory.resolve("tree.snapshot").toString()).build();
+        new CustomGraphFactory(options).generateFsGraph(Collections.singletonList(tree.toString()));
+
+        CustomGraphFactory factory = new CustomGraphFactory(options);
+        List<FileTreeNode> roots = factory.generateFsGraph(Collections.singletonList(tree.toString()));
+        assertEquals(1, factory.getLastScanStatistics().getReusedListings());
+        assertEquals(0, factory.getLastScanStatistics().getHeaderReads());
+        assertEquals("zip", types(roots).get("archive.pdf"));
+        assertEquals("pdf", types(roots).get("scan"));
+    }
+
+    private List<FileTreeNode> scan(Options options) {
+        return new CustomGraphFactory(options).generateFsGraph(Collections.singletonList(tree.toString()));
+    }
+
+    private static Map<String, String> types(List<FileTreeNode> roots) {
+        Map<String, String> types = new TreeMap<>();
+        roots.get(0).getChildren().forEach((n) -> types.put(n.getName(), n.getFileType()));
+        return types;
+    }
+}
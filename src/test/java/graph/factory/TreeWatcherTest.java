@@ -0,0 +1,136 @@
+package graph.factory;
+
+import graph.FileTreeNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TreeWatcherTest {
+
+    private Path directory;
+    private CustomGraphFactory factory;
+    private List<FileTreeNode> roots;
+    private TreeWatcher watcher;
+    private final ExecutorService waiter = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void createTree() throws IOException {
+        directory = Files.createTempDirectory("watcher-test");
+        Files.createDirectories(directory.resolve("a"));
+        Files.createDirectories(directory.resolve("b").resolve("c"));
+        Files.write(directory.resolve("a").resolve("x.txt"), new byte[1]);
+        Files.write(directory.resolve("b").resolve("y.txt"), new byte[2]);
+        Files.write(directory.resolve("b").resolve("c").resolve("z.txt"), new byte[3]);
+        Files.write(directory.resolve("top.txt"), new byte[4]);
+
+        factory = new CustomGraphFactory(new Options.Builder().build());
+        roots = factory.generateFsGraph(Collections.singletonList(directory.toString()));
+        watcher = factory.watch(roots);
+    }
+
+    @After
+    public void deleteTree() throws IOException {
+        watcher.close();
+        waiter.shutdownNow();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Test
+    public void copiesOnlyThePathToAChange() throws Exception {
+        Files.write(directory.resolve("a").resolve("new.txt"), new byte[10]);
+        List<FileTreeNode> updated = applyNextBatch();
+
+        FileTreeNode oldRoot = roots.get(0);
+        FileTreeNode newRoot = updated.get(0);
+        assertNotSame(oldRoot, newRoot);
+        assertEquals(2, child(newRoot, "a").getChildCount());
+        assertEquals(5, newRoot.getSubtreeSummary().getFileCount());
+        assertEquals(20, newRoot.getSubtreeSummary().getTotalBytes());
+
+        // The old tree is left as it was
+        assertEquals(1, child(oldRoot, "a").getChildCount());
+        assertEquals(4, oldRoot.getSubtreeSummary().getFileCount());
+
+        // Unchanged nodes are shared, and moved under the new copy of their parent
+        FileTreeNode b = child(newRoot, "b");
+        assertSame(child(oldRoot, "b"), b);
+        assertSame(child(oldRoot, "top.txt"), child(newRoot, "top.txt"));
+        assertSame(newRoot, b.getParent());
+        assertSame(newRoot, child(newRoot, "top.txt").getParent());
+        assertSame(b, child(b, "y.txt").getParent());
+        assertSame(child(newRoot, "a"), child(child(newRoot, "a"), "x.txt").getParent());
+    }
+
+    @Test
+    public void removesDeletedDirectories() throws Exception {
+        Files.delete(directory.resolve("b").resolve("c").resolve("z.txt"));
+        Files.delete(directory.resolve("b").resolve("c"));
+        List<FileTreeNode> updated = applyNextBatch();
+
+        FileTreeNode b = child(updated.get(0), "b");
+        assertNull(child(b, "c"));
+        assertEquals(1, b.getChildCount());
+        assertEquals(3, updated.get(0).getSubtreeSummary().getFileCount());
+        assertSame(child(roots.get(0), "a"), child(updated.get(0), "a"));
+    }
+
+    @Test
+    public void filtersNewFilesOnTheirSniffedTypes() throws Exception {
+        watcher.close();
+        factory = new CustomGraphFactory(new Options.Builder().sniffTypes(true).typeFilters("pdf").build());
+        roots = factory.generateFsGraph(Collections.singletonList(directory.toString()));
+        watcher = factory.watch(roots);
+
+        Files.write(directory.resolve("scan"), "%PDF-1.4\n".getBytes(StandardCharsets.US_ASCII));
+        Files.write(directory.resolve("fake.pdf"), new byte[]{'P', 'K', 3, 4, 0, 0, 0, 0});
+        List<FileTreeNode> updated = applyNextBatch();
+
+        assertEquals("pdf", child(updated.get(0), "scan").getFileType());
+        assertNull(child(updated.get(0), "fake.pdf"));
+    }
+
+    @Test
+    public void treeWithoutChangesIsReturnedAsItWas() {
+        assertSame(roots, watcher.apply(roots));
+    }
+
+    /**
+     * Wait for the events of the changes just made, without hanging the test if none come.
+     */
+    private List<FileTreeNode> applyNextBatch() throws Exception {
+        assertTrue(waiter.submit(() -> watcher.awaitChanges(300)).get(10, TimeUnit.SECONDS));
+        return watcher.apply(roots);
+    }
+
+    private static FileTreeNode child(FileTreeNode directory, String name) {
+        for (FileTreeNode n : directory.getChildren()) {
+            if (n.getName().equals(name)) {
+                return n;
+            }
+        }
+        return null;
+    }
+}
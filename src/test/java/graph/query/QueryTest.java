@@ -0,0 +1,122 @@
+package graph.query;
+
+import exceptions.QueryException;
+import graph.FileTreeNode;
+import graph.TreeWalker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryTest {
+
+    private static final long NOW = System.currentTimeMillis();
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private FileTreeNode root;
+
+    @Before
+    public void buildTree() {
+        String base = File.separator + "data";
+        root = directory(base, null);
+        FileTreeNode photos = directory(base + File.separator + "photos", root);
+        FileTreeNode old = directory(photos.getPath() + File.separator + "old", photos);
+        file(base + File.separator + "notes.txt", 100, NOW - DAY, root);
+        file(base + File.separator + ".hidden.txt", 50, NOW - DAY, root);
+        file(photos.getPath() + File.separator + "IMG_1.jpg", 2048, NOW - 2 * DAY, photos);
+        file(photos.getPath() + File.separator + "IMG_2.jpg", 4096, NOW - 3 * DAY, photos);
+        file(old.getPath() + File.separator + "scan.png", 1024 * 1024, NOW - 800 * DAY, old);
+        FileTreeNode.freezeAll(Collections.singletonList(root));
+    }
+
+    @Test
+    public void countsEveryFile() throws QueryException {
+        List<Object[]> rows = run("count").getRows();
+        assertEquals(1, rows.size());
+        assertEquals(5L, rows.get(0)[0]);
+    }
+
+    @Test
+    public void groupsAndOrdersByTheFirstAggregate() throws QueryException {
+        QueryResult result = run("count, sum size group by type");
+        assertEquals(Arrays.asList("type", "count", "sum(size)"), result.getColumns());
+        assertEquals(3, result.getRows().size());
+        assertEquals("jpg", result.getRows().get(0)[0]);
+        assertEquals(2L, result.getRows().get(0)[1]);
+        assertEquals("6.0 KB", result.getRows().get(0)[2]);
+    }
+
+    @Test
+    public void groupsByNumericFields() throws QueryException {
+        QueryResult result = run("count group by depth");
+        assertEquals(3, result.getRows().size());
+        assertEquals(2L, result.getRows().get(0)[1]);
+    }
+
+    @Test
+    public void filtersWithConditions() throws QueryException {
+        assertEquals(2L, run("count where type in ('jpg', 'png') and size < 1mb").getRows().get(0)[0]);
+        assertEquals(2L, run("count where name like 'IMG_*'").getRows().get(0)[0]);
+        assertEquals(4L, run("count where not hidden").getRows().get(0)[0]);
+        assertEquals(4L, run("count where mtime < 1y").getRows().get(0)[0]);
+        assertEquals(1L, run("count where size >= 1mb or (depth > 3)").getRows().get(0)[0]);
+        assertEquals(3L, run("count where path under '" + root.getPath() + File.separator + "photos'")
+                .getRows().get(0)[0]);
+    }
+
+    @Test
+    public void limitsTheRows() throws QueryException {
+        assertEquals(1, run("count group by type limit 1").getRows().size());
+    }
+
+    @Test
+    public void offersWhatItKnowsForPushdown() throws QueryException {
+        Query query = Query.parse("count where depth <= 2 and type = 'jpg' and path under '/data/photos'");
+        assertEquals(2, query.getMaxNodeDepth());
+        assertEquals(Collections.singletonList("jpg"), query.getFileTypes());
+        assertEquals(Collections.singletonList("/data/photos"), query.getPathPrefixes());
+
+        Query either = Query.parse("count where type = 'jpg' or size > 10");
+        assertTrue(either.getFileTypes().isEmpty());
+    }
+
+    @Test(expected = QueryException.class)
+    public void rejectsUnknownFields() throws QueryException {
+        Query.parse("sum colour");
+    }
+
+    @Test(expected = QueryException.class)
+    public void rejectsTextComparedWithNumbers() throws QueryException {
+        Query.parse("count where size = 'big'");
+    }
+
+    @Test(expected = QueryException.class)
+    public void rejectsUnterminatedStrings() throws QueryException {
+        Query.parse("count where name = 'abc");
+    }
+
+    private QueryResult run(String text) throws QueryException {
+        QueryExecutor executor = Query.parse(text).newExecutor();
+        TreeWalker.walk(Collections.singletonList(root), executor);
+        return executor.getResult();
+    }
+
+    private static FileTreeNode directory(String path, FileTreeNode parent) {
+        FileTreeNode n = new FileTreeNode(path, true, 0, NOW, false, parent);
+        if (parent != null) {
+            parent.addChild(n);
+        }
+        return n;
+    }
+
+    private static void file(String path, long size, long modified, FileTreeNode parent) {
+        String name = path.substring(path.lastIndexOf(File.separatorChar) + 1);
+        parent.addChild(new FileTreeNode(path, false, size, modified, name.startsWith("."), parent));
+    }
+}
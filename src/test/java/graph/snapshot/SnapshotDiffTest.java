@@ -0,0 +1,110 @@
+package graph.snapshot;
+
+import graph.FileTreeNode;
+import graph.SubtreeRollup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotDiffTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("snapshot-diff-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        for (String name : Arrays.asList("older.snapshot", "newer.snapshot")) {
+            Files.deleteIfExists(directory.resolve(name));
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void findsNothingBetweenEqualTrees() throws IOException {
+        List<String> changes = diff(TreeSnapshotTest.tree(new long[]{1, 2, 3}),
+                TreeSnapshotTest.tree(new long[]{1, 2, 3}));
+        assertTrue(changes.toString(), changes.isEmpty());
+    }
+
+    @Test
+    public void reportsResizedFilesAndTheirDirectories() throws IOException {
+        List<String> changes = diff(TreeSnapshotTest.tree(new long[]{1, 2, 3}),
+                TreeSnapshotTest.tree(new long[]{1, 2, 13}));
+        String sub = TreeSnapshotTest.BASE + File.separator + "sub";
+        assertEquals(Arrays.asList(
+                "changed " + TreeSnapshotTest.BASE + " 10",
+                "changed " + sub + " 10",
+                "resized " + sub + File.separator + "c.txt"), changes);
+    }
+
+    @Test
+    public void reportsAddedAndRemovedFiles() throws IOException {
+        FileTreeNode older = TreeSnapshotTest.tree(new long[]{1, 2, 3});
+        FileTreeNode newer = new FileTreeNode(TreeSnapshotTest.BASE, true, 0, 1000, false, null);
+        newer.addChildren(Arrays.asList(
+                new FileTreeNode(TreeSnapshotTest.BASE + File.separator + "a.txt", false, 1, 1000, false, newer),
+                new FileTreeNode(TreeSnapshotTest.BASE + File.separator + "d.txt", false, 7, 1000, false, newer)));
+        List<FileTreeNode> roots = Collections.singletonList(newer);
+        FileTreeNode.freezeAll(roots);
+        SubtreeRollup.computeAll(roots);
+
+        List<String> changes = diff(older, newer);
+        String sub = TreeSnapshotTest.BASE + File.separator + "sub";
+        assertTrue(changes.toString(), changes.contains("changed " + TreeSnapshotTest.BASE + " 2"));
+        assertTrue(changes.toString(), changes.contains("removed " + TreeSnapshotTest.BASE + File.separator + "b.txt"));
+        assertTrue(changes.toString(), changes.contains("added " + TreeSnapshotTest.BASE + File.separator + "d.txt"));
+        assertTrue(changes.toString(), changes.contains("changed " + sub + " -3"));
+        assertTrue(changes.toString(), changes.contains("removed " + sub + File.separator + "c.txt"));
+        assertEquals(changes.toString(), 5, changes.size());
+    }
+
+    private List<String> diff(FileTreeNode older, FileTreeNode newer) throws IOException {
+        Path olderFile = directory.resolve("older.snapshot");
+        Path newerFile = directory.resolve("newer.snapshot");
+        new TreeSnapshot(Collections.singletonList(older), 1L, 0).save(olderFile);
+        new TreeSnapshot(Collections.singletonList(newer), 2L, 0).save(newerFile);
+        MappedTreeSnapshot o = MappedTreeSnapshot.open(olderFile);
+        MappedTreeSnapshot n = MappedTreeSnapshot.open(newerFile);
+
+        List<String> changes = new ArrayList<>();
+        new SnapshotDiff(o, n).compare(new SnapshotDiff.Listener() {
+            @Override
+            public void fileAdded(int node) {
+                changes.add("added " + n.getPath(node));
+            }
+
+            @Override
+            public void fileRemoved(int node) {
+                changes.add("removed " + o.getPath(node));
+            }
+
+            @Override
+            public void fileResized(int olderNode, int newerNode) {
+                changes.add("resized " + n.getPath(newerNode));
+            }
+
+            @Override
+            public void directoryChanged(int olderNode, int newerNode, long delta) {
+                String path = (newerNode == SnapshotDiff.NO_NODE) ? o.getPath(olderNode) : n.getPath(newerNode);
+                changes.add("changed " + path + " " + delta);
+            }
+        });
+        return changes;
+    }
+}
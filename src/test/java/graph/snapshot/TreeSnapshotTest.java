@@ -0,0 +1,148 @@
+package graph.snapshot;
+
+import graph.FileTreeNode;
+import graph.SubtreeRollup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TreeSnapshotTest {
+
+    static final String BASE = File.separator + "data";
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("snapshot-test");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void roundTripsTheTree() throws IOException {
+        FileTreeNode root = tree(new long[]{100, 200, 300});
+        Path file = directory.resolve("tree.snapshot");
+        new TreeSnapshot(Collections.singletonList(root), 1234L, 42).save(file);
+
+        TreeSnapshot loaded = TreeSnapshot.load(file);
+        assertEquals(1234L, loaded.getScanStarted());
+        assertEquals(42, loaded.getOptionsFingerprint());
+        assertEquals(1, loaded.getRoots().size());
+        assertSameTree(root, loaded.getRoots().get(0));
+        assertEquals(root.getSubtreeSummary().getTotalBytes(),
+                loaded.getRoots().get(0).getSubtreeSummary().getTotalBytes());
+        assertEquals(root.getSubtreeSummary().getFileCount(),
+                loaded.getRoots().get(0).getSubtreeSummary().getFileCount());
+    }
+
+    @Test
+    public void replacesAnEarlierSnapshot() throws IOException {
+        Path file = directory.resolve("tree.snapshot");
+        new TreeSnapshot(Collections.singletonList(tree(new long[]{1, 2, 3})), 1L, 0).save(file);
+        FileTreeNode second = tree(new long[]{4, 5, 6});
+        new TreeSnapshot(Collections.singletonList(second), 2L, 0).save(file);
+
+        MappedTreeSnapshot mapped = MappedTreeSnapshot.open(file);
+        assertEquals(2L, mapped.getScanStarted());
+        assertSameTree(second, mapped.getRoots().get(0));
+        assertFalse(Files.exists(directory.resolve("tree.snapshot.tmp")));
+    }
+
+    @Test
+    public void mapsRecordsByIndex() throws IOException {
+        FileTreeNode root = tree(new long[]{100, 200, 300});
+        Path file = directory.resolve("tree.snapshot");
+        new TreeSnapshot(Collections.singletonList(root), 0L, 0).save(file);
+
+        MappedTreeSnapshot mapped = MappedTreeSnapshot.open(file);
+        assertEquals(5, mapped.size());
+        int rootIndex = mapped.getRootIndexes()[0];
+        assertEquals(BASE, mapped.getPath(rootIndex));
+        assertTrue(mapped.isDirectory(rootIndex));
+        assertEquals(mapped.size(), mapped.getSubtreeEnd(rootIndex));
+    }
+
+    @Test
+    public void keepsTypesWhichDoNotComeFromTheName() throws IOException {
+        FileTreeNode root = new FileTreeNode(BASE, true, 0, 1000, false, null);
+        FileTreeNode photo = new FileTreeNode(BASE + File.separator + "photo", false, 10, 1000, false, root);
+        FileTreeNode archive = new FileTreeNode(BASE + File.separator + "archive.dat", false, 20, 1000, false, root);
+        FileTreeNode notes = new FileTreeNode(BASE + File.separator + "notes.txt", false, 30, 1000, false, root);
+        // As if sniffed from their contents
+        photo.setFileType("jpg");
+        archive.setFileType("zip");
+        root.addChildren(Arrays.asList(archive, notes, photo));
+        List<FileTreeNode> roots = Collections.singletonList(root);
+        FileTreeNode.freezeAll(roots);
+        SubtreeRollup.computeAll(roots);
+        Path file = directory.resolve("tree.snapshot");
+        new TreeSnapshot(roots, 0L, 0).save(file);
+
+        MappedTreeSnapshot mapped = MappedTreeSnapshot.open(file);
+        assertSameTree(root, mapped.getRoots().get(0));
+        assertEquals("directory", mapped.getFileType(0));
+        // Children are stored in name order: archive.dat, notes.txt, photo
+        assertEquals("zip", mapped.getFileType(1));
+        assertEquals("txt", mapped.getFileType(2));
+        assertEquals("jpg", mapped.getFileType(3));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        Path file = directory.resolve("not.snapshot");
+        Files.write(file, Arrays.asList("not a snapshot"));
+        MappedTreeSnapshot.open(file);
+    }
+
+    /**
+     * A root holding a.txt and b.txt, and a directory sub holding c.txt, with the given sizes.
+     */
+    static FileTreeNode tree(long[] sizes) {
+        FileTreeNode root = new FileTreeNode(BASE, true, 0, 1000, false, null);
+        FileTreeNode sub = new FileTreeNode(BASE + File.separator + "sub", true, 0, 1000, false, root);
+        root.addChildren(Arrays.asList(
+                new FileTreeNode(BASE + File.separator + "a.txt", false, sizes[0], 1000, false, root),
+                new FileTreeNode(BASE + File.separator + "b.txt", false, sizes[1], 1000, false, root),
+                sub));
+        sub.addChildren(Collections.singletonList(
+                new FileTreeNode(sub.getPath() + File.separator + "c.txt", false, sizes[2], 1000, false, sub)));
+        List<FileTreeNode> roots = Collections.singletonList(root);
+        FileTreeNode.freezeAll(roots);
+        SubtreeRollup.computeAll(roots);
+        return root;
+    }
+
+    private static void assertSameTree(FileTreeNode expected, FileTreeNode actual) {
+        assertEquals(expected.getPath(), actual.getPath());
+        assertEquals(expected.isDirectory(), actual.isDirectory());
+        assertEquals(expected.getFileType(), actual.getFileType());
+        assertEquals(expected.getFileSize(), actual.getFileSize());
+        assertEquals(expected.getLastModified(), actual.getLastModified());
+        assertEquals(expected.getChildCount(), actual.getChildCount());
+        for (int i = 0; i < expected.getChildCount(); i++) {
+            assertSameTree(expected.getChild(i), actual.getChild(i));
+        }
+    }
+}